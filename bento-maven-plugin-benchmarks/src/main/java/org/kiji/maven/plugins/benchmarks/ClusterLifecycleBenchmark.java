@@ -0,0 +1,81 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.kiji.maven.plugins.BentoCluster;
+import org.kiji.maven.plugins.BentoClusterRegistry;
+
+/**
+ * Measures a full start and stop cycle of a cluster of the fake installation. Since the stub
+ * cluster is up as soon as it is created, this is the overhead the plugin adds to a real cluster
+ * boot: shell commands, readiness probes and the waits between them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ClusterLifecycleBenchmark {
+  /** The fake bento-cluster installation. */
+  private StubBentoEnvironment mEnvironment;
+
+  /**
+   * Create the fake bento-cluster installation.
+   *
+   * @throws IOException if the fake installation can not be created.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    mEnvironment = new StubBentoEnvironment();
+  }
+
+  /**
+   * Delete the fake bento-cluster installation.
+   *
+   * @throws IOException if the fake installation can not be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    mEnvironment.close();
+  }
+
+  /**
+   * Start and stop a cluster.
+   *
+   * @throws Exception if the cluster can not be started or stopped.
+   */
+  @Benchmark
+  public void startStop() throws Exception {
+    final BentoCluster cluster =
+        mEnvironment.newCluster(BentoClusterRegistry.generateBentoName());
+    cluster.start();
+    cluster.stop();
+  }
+}
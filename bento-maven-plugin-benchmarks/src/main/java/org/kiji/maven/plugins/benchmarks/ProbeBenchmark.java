@@ -0,0 +1,95 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.kiji.maven.plugins.BentoCluster;
+import org.kiji.maven.plugins.SupervisorClient;
+
+/**
+ * Measures one readiness probe of a running cluster, {@link BentoCluster#isRunning()}, and the
+ * supervisor query it makes on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProbeBenchmark {
+  /** The fake bento-cluster installation. */
+  private StubBentoEnvironment mEnvironment;
+
+  /** A running cluster of the fake installation. */
+  private BentoCluster mCluster;
+
+  /**
+   * Create the fake bento-cluster installation and start a cluster in it.
+   *
+   * @throws Exception if the cluster can not be started.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    mEnvironment = new StubBentoEnvironment();
+    mCluster = mEnvironment.newCluster("probe");
+    mCluster.start();
+  }
+
+  /**
+   * Stop the cluster and delete the fake bento-cluster installation.
+   *
+   * @throws Exception if the cluster can not be stopped.
+   */
+  @TearDown
+  public void tearDown() throws Exception {
+    mCluster.stop();
+    mEnvironment.close();
+  }
+
+  /**
+   * Probe whether the cluster is running.
+   *
+   * @return the probe outcome.
+   * @throws Exception if the probe fails.
+   */
+  @Benchmark
+  public boolean isRunning() throws Exception {
+    return mCluster.isRunning();
+  }
+
+  /**
+   * Query the stub supervisor for all process states.
+   *
+   * @return the process states.
+   * @throws Exception if the query fails.
+   */
+  @Benchmark
+  public List<SupervisorClient.ProcessInfo> getAllProcessInfo() throws Exception {
+    return mEnvironment.getSupervisor().getAllProcessInfo();
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A maven log which discards everything, so that benchmarks do not measure console output.
+ */
+public final class QuietLog implements Log {
+  /** {@inheritDoc} */
+  @Override
+  public boolean isDebugEnabled() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void debug(CharSequence content) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void debug(CharSequence content, Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void debug(Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isInfoEnabled() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void info(CharSequence content) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void info(CharSequence content, Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void info(Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isWarnEnabled() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void warn(CharSequence content) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void warn(CharSequence content, Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void warn(Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean isErrorEnabled() {
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void error(CharSequence content) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void error(CharSequence content, Throwable error) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public void error(Throwable error) {}
+}
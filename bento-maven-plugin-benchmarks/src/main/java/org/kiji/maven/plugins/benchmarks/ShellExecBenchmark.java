@@ -0,0 +1,93 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.kiji.maven.plugins.ShellExecUtil;
+import org.kiji.maven.plugins.ShellResult;
+
+/**
+ * Measures the cost of running a shell command through {@link ShellExecUtil}: a trivial command,
+ * and the stub bento status command that every readiness probe runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShellExecBenchmark {
+  /** The fake bento-cluster installation. */
+  private StubBentoEnvironment mEnvironment;
+
+  /** The stub bento status command. */
+  private String mStatusCommand;
+
+  /**
+   * Create the fake bento-cluster installation.
+   *
+   * @throws IOException if the fake installation can not be created.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    mEnvironment = new StubBentoEnvironment();
+    mStatusCommand = mEnvironment.getBentoScript().getAbsolutePath() + " status -n benchmark";
+  }
+
+  /**
+   * Delete the fake bento-cluster installation.
+   *
+   * @throws IOException if the fake installation can not be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    mEnvironment.close();
+  }
+
+  /**
+   * Run a trivial command.
+   *
+   * @return the command output.
+   * @throws IOException if the command fails to run.
+   */
+  @Benchmark
+  public String executeTrueCommand() throws IOException {
+    return ShellExecUtil.executeCommand("true");
+  }
+
+  /**
+   * Run the stub bento status command.
+   *
+   * @return the command result.
+   * @throws IOException if the command fails to run.
+   */
+  @Benchmark
+  public ShellResult executeBentoStatus() throws IOException {
+    return ShellExecUtil.execute(mStatusCommand, null);
+  }
+}
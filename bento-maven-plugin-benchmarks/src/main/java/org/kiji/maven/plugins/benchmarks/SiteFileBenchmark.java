@@ -0,0 +1,90 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.kiji.maven.plugins.SiteFilePublisher;
+
+/**
+ * Measures publishing the site files generated by the bento script, as the 'start' goal does
+ * once the cluster is up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SiteFileBenchmark {
+  /** The fake bento-cluster installation. */
+  private StubBentoEnvironment mEnvironment;
+
+  /** Directory the site files are published to. */
+  private File mOutputDir;
+
+  /** Publisher of the site files of the fake installation. */
+  private SiteFilePublisher mPublisher;
+
+  /**
+   * Create the fake bento-cluster installation and let it generate site files.
+   *
+   * @throws Exception if the site files can not be generated.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    mEnvironment = new StubBentoEnvironment();
+    mEnvironment.newCluster("site-files").start();
+    mOutputDir = Files.createTempDir();
+    mPublisher =
+        new SiteFilePublisher(new QuietLog(), mEnvironment.getBentoDirPath(), mOutputDir);
+  }
+
+  /**
+   * Delete the fake bento-cluster installation and the published site files.
+   *
+   * @throws IOException if the files can not be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    mEnvironment.close();
+    FileUtils.deleteDirectory(mOutputDir);
+  }
+
+  /**
+   * Publish all site files.
+   *
+   * @throws IOException if the site files can not be published.
+   */
+  @Benchmark
+  public void publishAll() throws IOException {
+    mPublisher.publishAll();
+  }
+}
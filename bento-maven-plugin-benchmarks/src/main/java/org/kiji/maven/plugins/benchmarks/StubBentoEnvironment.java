@@ -0,0 +1,140 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+
+import org.kiji.maven.plugins.BentoCluster;
+import org.kiji.maven.plugins.ServiceRequirement;
+import org.kiji.maven.plugins.SupervisorClient;
+
+/**
+ * A fake bento-cluster installation: a temporary directory holding a stub bin/bento script, and a
+ * stub supervisor XML-RPC endpoint on localhost which reports every cluster as up.
+ */
+public final class StubBentoEnvironment {
+  /** Response of the stub supervisor to every call: hdfs-init has exited. */
+  private static final String ALL_PROCESS_INFO_RESPONSE =
+      "<?xml version='1.0'?><methodResponse><params><param><value><array><data><value><struct>"
+      + "<member><name>name</name><value><string>hdfs-init</string></value></member>"
+      + "<member><name>statename</name><value><string>EXITED</string></value></member>"
+      + "<member><name>exitstatus</name><value><int>0</int></value></member>"
+      + "<member><name>description</name><value><string>stub</string></value></member>"
+      + "</struct></value></data></array></value></param></params></methodResponse>";
+
+  /** The fake bento-cluster installation directory. */
+  private final File mBentoDirPath;
+
+  /** The stub supervisor. */
+  private final HttpServer mSupervisorServer;
+
+  /** Client for the stub supervisor. */
+  private final SupervisorClient mSupervisor;
+
+  /**
+   * Create the fake installation and start the stub supervisor.
+   *
+   * @throws IOException if the stub script can not be written or the stub supervisor started.
+   */
+  public StubBentoEnvironment() throws IOException {
+    mBentoDirPath = Files.createTempDir();
+    final File binDir = new File(mBentoDirPath, "bin");
+    FileUtils.forceMkdir(binDir);
+    final File bentoScript = new File(binDir, "bento");
+    final InputStream script = StubBentoEnvironment.class.getResourceAsStream("bento");
+    try {
+      FileUtils.copyInputStreamToFile(script, bentoScript);
+    } finally {
+      script.close();
+    }
+    if (!bentoScript.setExecutable(true)) {
+      throw new IOException("Unable to make the stub bento script executable: " + bentoScript);
+    }
+
+    mSupervisorServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    mSupervisorServer.createContext("/RPC2", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        ByteStreams.toByteArray(exchange.getRequestBody());
+        final byte[] body = ALL_PROCESS_INFO_RESPONSE.getBytes(Charsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    mSupervisorServer.start();
+    mSupervisor = new SupervisorClient(new URL(String.format(
+        "http://localhost:%d/RPC2", mSupervisorServer.getAddress().getPort())));
+  }
+
+  /** @return the fake bento-cluster installation directory. */
+  public File getBentoDirPath() {
+    return mBentoDirPath;
+  }
+
+  /** @return the path of the stub bento script. */
+  public File getBentoScript() {
+    return new File(new File(mBentoDirPath, "bin"), "bento");
+  }
+
+  /** @return a client for the stub supervisor. */
+  public SupervisorClient getSupervisor() {
+    return mSupervisor;
+  }
+
+  /**
+   * Create a handle on a cluster of the fake installation.
+   *
+   * @param bentoName name of the cluster.
+   * @return a handle on the cluster, whose supervisor is the stub supervisor.
+   */
+  public BentoCluster newCluster(String bentoName) {
+    return new BentoCluster(
+        new QuietLog(),
+        mBentoDirPath,
+        bentoName,
+        ServiceRequirement.DEFAULT_REQUIREMENTS,
+        mSupervisor);
+  }
+
+  /**
+   * Stop the stub supervisor and delete the fake installation.
+   *
+   * @throws IOException if the fake installation can not be deleted.
+   */
+  public void close() throws IOException {
+    mSupervisorServer.stop(0);
+    FileUtils.deleteDirectory(mBentoDirPath);
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.junit;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+
+/**
+ * Hadoop and HBase clients for a Bento cluster, each created on first use from the site files
+ * listed in the conf index and then reused. {@link #shared()} holds the clients shared by all
+ * tests in a JVM, so that the site files are parsed and the connections opened only once.
+ *
+ * This class is thread-safe. The shared configuration must not be modified; tests which need a
+ * modified configuration should modify a copy made by {@link #newConf()}.
+ */
+public final class BentoClients {
+  /** The clients shared by all tests in this JVM. */
+  private static final BentoClients SHARED = new BentoClients();
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread("bento-clients-shutdown") {
+      @Override
+      public void run() {
+        SHARED.close();
+      }
+    });
+  }
+
+  /** Configuration of the cluster, or null until first used. */
+  private Configuration mConf = null;
+
+  /** File system of the cluster, or null until first used. */
+  private FileSystem mFileSystem = null;
+
+  /** Connection to the HBase cluster, or null until first used. */
+  private HConnection mHBaseConnection = null;
+
+  /** @return the clients shared by all tests in this JVM. */
+  public static BentoClients shared() {
+    return SHARED;
+  }
+
+  /**
+   * Get the configuration of the cluster: the Hadoop and HBase defaults overridden by the site
+   * files listed in the conf index. Do not modify it.
+   *
+   * @return the configuration of the cluster.
+   * @throws IOException if the conf index can not be read.
+   */
+  public synchronized Configuration getConf() throws IOException {
+    if (null == mConf) {
+      final Configuration conf = HBaseConfiguration.create();
+      for (File siteFile : BentoConfIndex.read(BentoConfIndex.locate())) {
+        conf.addResource(new Path(siteFile.toURI()));
+      }
+      // Parse the site files now, once, rather than on the first lookup of every test.
+      conf.size();
+      mConf = conf;
+    }
+    return mConf;
+  }
+
+  /**
+   * Make a copy of the configuration of the cluster, which can be modified. Copying does not
+   * parse the site files again.
+   *
+   * @return a new configuration of the cluster.
+   * @throws IOException if the conf index can not be read.
+   */
+  public Configuration newConf() throws IOException {
+    return new Configuration(getConf());
+  }
+
+  /**
+   * Get the file system of the cluster. Do not close it.
+   *
+   * @return the file system of the cluster.
+   * @throws IOException if the file system can not be reached.
+   */
+  public synchronized FileSystem getFileSystem() throws IOException {
+    if (null == mFileSystem) {
+      mFileSystem = FileSystem.get(getConf());
+    }
+    return mFileSystem;
+  }
+
+  /**
+   * Get a connection to the HBase cluster. Do not close it.
+   *
+   * @return a connection to the HBase cluster.
+   * @throws IOException if the connection can not be created.
+   */
+  public synchronized HConnection getHBaseConnection() throws IOException {
+    if (null == mHBaseConnection) {
+      mHBaseConnection = HConnectionManager.createConnection(getConf());
+    }
+    return mHBaseConnection;
+  }
+
+  /** Close the connections opened so far. Failing to close them is ignored. */
+  public synchronized void close() {
+    if (null != mHBaseConnection) {
+      try {
+        mHBaseConnection.close();
+      } catch (IOException ioe) {
+        // Closing at JVM exit: nothing left to do about it.
+      }
+      mHBaseConnection = null;
+    }
+    mFileSystem = null;
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.junit;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.junit.rules.ExternalResource;
+
+/**
+ * JUnit rule giving tests the Hadoop and HBase clients of the Bento cluster started by the
+ * bento-maven-plugin. The clients are shared by every test in the JVM, see {@link BentoClients},
+ * so the rule is equally cheap as a class rule or a per-test rule. The rule fails a test once the
+ * watchdog reported the cluster unhealthy, see {@link BentoHealth}: before each test when it is a
+ * per-test rule, and whenever a test asks it for a client either way:
+ *
+ * <pre>
+ *   &#64;ClassRule
+ *   public static final BentoClusterResource BENTO = new BentoClusterResource();
+ *
+ *   &#64;Test
+ *   public void testHDFS() throws Exception {
+ *     BENTO.getFileSystem().listStatus(new Path("/"));
+ *   }
+ * </pre>
+ */
+public final class BentoClusterResource extends ExternalResource {
+  /** The clients handed to tests. */
+  private final BentoClients mClients;
+
+  /** Construct a rule handing out the clients shared by all tests in this JVM. */
+  public BentoClusterResource() {
+    this(BentoClients.shared());
+  }
+
+  /**
+   * Construct a rule handing out given clients.
+   *
+   * @param clients to hand out.
+   */
+  public BentoClusterResource(BentoClients clients) {
+    mClients = clients;
+  }
+
+  /**
+   * Load the cluster configuration before the tests run, so that a missing conf index fails them
+   * right away, as does a cluster the watchdog reported unhealthy; see {@link BentoHealth}.
+   *
+   * @throws IOException if the conf index can not be read.
+   */
+  @Override
+  protected void before() throws IOException {
+    BentoHealth.checkHealthy();
+    mClients.getConf();
+  }
+
+  /**
+   * @return the configuration of the cluster. Do not modify it.
+   * @throws IOException if the conf index can not be read.
+   * @throws IllegalStateException if the cluster was reported unhealthy.
+   */
+  public Configuration getConf() throws IOException {
+    BentoHealth.checkHealthy();
+    return mClients.getConf();
+  }
+
+  /**
+   * @return a copy of the configuration of the cluster, which can be modified.
+   * @throws IOException if the conf index can not be read.
+   * @throws IllegalStateException if the cluster was reported unhealthy.
+   */
+  public Configuration newConf() throws IOException {
+    BentoHealth.checkHealthy();
+    return mClients.newConf();
+  }
+
+  /**
+   * @return the file system of the cluster. Do not close it.
+   * @throws IOException if the file system can not be reached.
+   * @throws IllegalStateException if the cluster was reported unhealthy.
+   */
+  public FileSystem getFileSystem() throws IOException {
+    BentoHealth.checkHealthy();
+    return mClients.getFileSystem();
+  }
+
+  /**
+   * @return a connection to the HBase cluster. Do not close it.
+   * @throws IOException if the connection can not be created.
+   * @throws IllegalStateException if the cluster was reported unhealthy.
+   */
+  public HConnection getHBaseConnection() throws IOException {
+    BentoHealth.checkHealthy();
+    return mClients.getHBaseConnection();
+  }
+}
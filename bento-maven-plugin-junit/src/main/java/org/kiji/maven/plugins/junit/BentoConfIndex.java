@@ -0,0 +1,98 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Reads the "conf-index.conf" file the bento-maven-plugin writes next to the site files of a Bento
+ * cluster. The index lists the absolute path of each site file, one per line; lines starting
+ * with '#' are comments.
+ */
+public final class BentoConfIndex {
+  /** Name of the index file. */
+  public static final String CONF_INDEX_FILE_NAME = "conf-index.conf";
+
+  /**
+   * System property holding the directory of the site files, as set by the 'start' goal in the
+   * "bento.site.files.dir" project property. Required when one cluster is started per test fork.
+   */
+  public static final String SITE_FILES_DIR_PROPERTY = "bento.site.files.dir";
+
+  /** Disable default constructor. */
+  private BentoConfIndex() {}
+
+  /**
+   * Locate the index file: in the directory named by the {@value #SITE_FILES_DIR_PROPERTY}
+   * system property if it is set, otherwise on the classpath, where the plugin writes it by
+   * default.
+   *
+   * @return the index file.
+   * @throws IOException if the index file can not be found.
+   */
+  public static File locate() throws IOException {
+    final String siteFilesDir = System.getProperty(SITE_FILES_DIR_PROPERTY);
+    if (null != siteFilesDir) {
+      final File index = new File(siteFilesDir, CONF_INDEX_FILE_NAME);
+      if (!index.exists()) {
+        throw new IOException("Bento conf index does not exist: " + index.getAbsolutePath());
+      }
+      return index;
+    }
+    final URL resource = BentoConfIndex.class.getClassLoader().getResource(CONF_INDEX_FILE_NAME);
+    if (null == resource) {
+      throw new IOException(String.format(
+          "Bento conf index %s is not on the classpath and %s is not set.",
+          CONF_INDEX_FILE_NAME, SITE_FILES_DIR_PROPERTY));
+    }
+    try {
+      return new File(resource.toURI());
+    } catch (URISyntaxException use) {
+      throw new IOException("Bento conf index is not a file: " + resource, use);
+    }
+  }
+
+  /**
+   * Read the site files listed in an index file.
+   *
+   * @param index file to read.
+   * @return the listed site files, in index order.
+   * @throws IOException if the index file can not be read.
+   */
+  public static List<File> read(File index) throws IOException {
+    final List<File> siteFiles = Lists.newArrayList();
+    for (String line : FileUtils.readLines(index, Charsets.UTF_8.name())) {
+      final String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      siteFiles.add(new File(trimmed));
+    }
+    return siteFiles;
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.junit;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Checks the "bento-unhealthy" marker file the watchdog of the bento-maven-plugin writes next to
+ * the site files when a component of the cluster dies, so that tests can abort right away instead
+ * of waiting for their clients to time out.
+ */
+public final class BentoHealth {
+  /** Name of the marker file written next to the site files when the cluster is unhealthy. */
+  public static final String UNHEALTHY_MARKER_FILE_NAME = "bento-unhealthy";
+
+  /** Disable default constructor. */
+  private BentoHealth() {}
+
+  /**
+   * Fail if the cluster was reported unhealthy. The check is a single file lookup, cheap enough
+   * to run before every test.
+   *
+   * @throws IOException if the conf index can not be found.
+   * @throws IllegalStateException describing the crashes if the cluster is unhealthy.
+   */
+  public static void checkHealthy() throws IOException {
+    final File marker =
+        new File(BentoConfIndex.locate().getParentFile(), UNHEALTHY_MARKER_FILE_NAME);
+    if (!marker.exists()) {
+      return;
+    }
+    String crashes;
+    try {
+      crashes = FileUtils.readFileToString(marker, Charsets.UTF_8.name()).trim();
+    } catch (IOException ioe) {
+      crashes = "see " + marker.getAbsolutePath();
+    }
+    throw new IllegalStateException("Bento cluster is unhealthy: " + crashes);
+  }
+}
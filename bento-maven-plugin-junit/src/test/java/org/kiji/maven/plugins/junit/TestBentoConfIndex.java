@@ -0,0 +1,72 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins.junit;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading the conf index written by the bento-maven-plugin.
+ */
+public class TestBentoConfIndex {
+  private File mDir;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(BentoConfIndex.SITE_FILES_DIR_PROPERTY);
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testReadSkipsComments() throws Exception {
+    final File index = new File(mDir, BentoConfIndex.CONF_INDEX_FILE_NAME);
+    FileUtils.write(index, "# Site files published by the bento-maven-plugin.\n"
+        + "# 0123456789abcdef hbase-site.xml\n"
+        + "/tmp/site/hbase-site.xml\n"
+        + "\n"
+        + "/tmp/site/core-site.xml\n", Charsets.UTF_8.name());
+    final List<File> siteFiles = BentoConfIndex.read(index);
+    assertEquals(2, siteFiles.size());
+    assertEquals(new File("/tmp/site/hbase-site.xml"), siteFiles.get(0));
+    assertEquals(new File("/tmp/site/core-site.xml"), siteFiles.get(1));
+  }
+
+  @Test
+  public void testLocateFromSystemProperty() throws Exception {
+    final File index = new File(mDir, BentoConfIndex.CONF_INDEX_FILE_NAME);
+    FileUtils.write(index, "", Charsets.UTF_8.name());
+    System.setProperty(BentoConfIndex.SITE_FILES_DIR_PROPERTY, mDir.getAbsolutePath());
+    assertEquals(index, BentoConfIndex.locate());
+  }
+}
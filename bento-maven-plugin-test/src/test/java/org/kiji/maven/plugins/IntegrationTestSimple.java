@@ -19,32 +19,30 @@
 
 package org.kiji.maven.plugins;
 
-import java.io.BufferedWriter;
-import java.io.OutputStreamWriter;
 import java.util.Set;
 
 import static junit.framework.Assert.assertTrue;
 
 import com.google.common.collect.Sets;
-import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
-import org.apache.hadoop.io.SequenceFile;
+import org.junit.ClassRule;
 import org.junit.Test;
 
-import static org.apache.hadoop.io.SequenceFile.*;
+import org.kiji.maven.plugins.junit.BentoClusterResource;
 
 /**
  * Run this integration test against the bento-maven-plugin to demonstrate that the plugin works.
  * // TODO: Test access HDFS, HBase, etc.
  */
 public class IntegrationTestSimple {
+  @ClassRule
+  public static final BentoClusterResource BENTO = new BentoClusterResource();
+
   @Test
   public void testHDFS() throws Exception {
-    Configuration conf = new Configuration(); // takes default conf
-    FileSystem fs = FileSystem.get(conf);
+    FileSystem fs = BENTO.getFileSystem();
     FileStatus[] files = fs.listStatus(new Path("/"));
     // Collect directory names.
     Set<String> directoryNames = Sets.newHashSet();
@@ -0,0 +1,310 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Configuration shared by the goals which start a cluster or hand it to the integration tests:
+ * 'start', 'start-async' and 'await'. They locate bento-cluster and the cluster the same way, and
+ * start clusters under the same command and startup policies. The goals handing the cluster to the
+ * tests, 'start' and 'await', also tune the site files they publish, and watch and sample the
+ * cluster while the tests run.
+ */
+public abstract class AbstractClusterMojo extends AbstractMojo {
+  /**
+   * Path to bento-cluster directory containing bin/bento and related executables. Required by the
+   * "docker" backend.
+   */
+  @Parameter(property = "bento.dir.path", alias = "bento.dir.path")
+  private File mBentoDirPath;
+
+  /**
+   * Identifies the cluster started by the 'start' or 'start-async' goal, so that the 'await',
+   * 'stop' and snapshot goals with the same cluster id operate on it. Modules built in parallel
+   * must use distinct cluster ids.
+   */
+  @Parameter(
+      property = "bento.cluster.id",
+      alias = "bento.cluster.id",
+      defaultValue = "${project.groupId}:${project.artifactId}",
+      required = true
+  )
+  private String mClusterId;
+
+  /** Directory recording the Bento cluster teardowns running in the background. */
+  @Parameter(
+      property = "bento.pending.teardowns.dir.path",
+      alias = "bento.pending.teardowns.dir.path",
+      defaultValue = "${user.home}/.bento/pending-teardowns",
+      required = true
+  )
+  private File mPendingTeardownsDirPath;
+
+  /**
+   * How long, in seconds, a background teardown may run before it is considered to have failed
+   * and its cluster is torn down again before a new cluster is started.
+   */
+  @Parameter(
+      property = "bento.teardown.stale.seconds",
+      alias = "bento.teardown.stale.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mTeardownStaleSeconds;
+
+  /**
+   * How long, in seconds, a bento or docker command run against the cluster may take before it
+   * is killed along with the processes it spawned. 0 for no deadline.
+   */
+  @Parameter(
+      property = "bento.command.timeout.seconds",
+      alias = "bento.command.timeout.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mCommandTimeoutSeconds;
+
+  /** How long, in seconds, a container status probe may take before it is killed. */
+  @Parameter(
+      property = "bento.probe.timeout.seconds",
+      alias = "bento.probe.timeout.seconds",
+      defaultValue = "30",
+      required = true
+  )
+  private long mProbeTimeoutSeconds;
+
+  /**
+   * How many times a command which fails transiently, e.g. by timing out or by failing to create
+   * the cluster container, is retried after a jittered backoff.
+   */
+  @Parameter(
+      property = "bento.command.retries",
+      alias = "bento.command.retries",
+      defaultValue = "2",
+      required = true
+  )
+  private int mCommandRetries;
+
+  /** How long the cluster components may take to start, in seconds. */
+  @Parameter(
+      property = "bento.startup.timeout.seconds",
+      alias = "bento.startup.timeout.seconds",
+      defaultValue = "120",
+      required = true
+  )
+  private long mStartupTimeoutSeconds;
+
+  /**
+   * If true, the startup timeout is derived from the durations of recent successful boots: their
+   * 95th percentile times bento.startup.timeout.factor, clamped to at most
+   * bento.startup.timeout.max.seconds. Until enough boots are recorded,
+   * bento.startup.timeout.seconds applies.
+   */
+  @Parameter(
+      property = "bento.startup.timeout.adaptive",
+      alias = "bento.startup.timeout.adaptive",
+      defaultValue = "false"
+  )
+  private boolean mAdaptiveStartupTimeout;
+
+  /** Safety factor applied to the recent boot durations by the adaptive startup timeout. */
+  @Parameter(
+      property = "bento.startup.timeout.factor",
+      alias = "bento.startup.timeout.factor",
+      defaultValue = "2.0",
+      required = true
+  )
+  private double mStartupTimeoutFactor;
+
+  /** Upper bound of the adaptive startup timeout, in seconds. */
+  @Parameter(
+      property = "bento.startup.timeout.max.seconds",
+      alias = "bento.startup.timeout.max.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mMaxStartupTimeoutSeconds;
+
+  /** File the durations of recent successful boots are kept in. */
+  @Parameter(
+      property = "bento.boot.stats.file.path",
+      alias = "bento.boot.stats.file.path",
+      defaultValue = "${user.home}/.bento/boot-durations.txt",
+      required = true
+  )
+  private File mBootStatsFilePath;
+
+  /**
+   * Tuning profiles merged, in order, into the site files as they are published, e.g. "fast-test"
+   * for low-latency clients or "low-memory" for small MapReduce containers. Only client-side
+   * settings take effect; the cluster daemons keep their own configuration.
+   */
+  @Parameter(property = "bento.tuning.profiles", alias = "bento.tuning.profiles")
+  private List<String> mTuningProfiles;
+
+  /**
+   * Hadoop and HBase properties merged into the site files after the tuning profiles, as
+   * "name=value", e.g. "hbase.client.retries.number=5".
+   */
+  @Parameter(property = "bento.site.overrides", alias = "bento.site.overrides")
+  private List<String> mSiteOverrides;
+
+  /**
+   * How often, in seconds, the watchdog polls the cluster components for crashes while the
+   * integration tests run. A crash is logged to "crashes.log" in the report directory and
+   * recorded in a "bento-unhealthy" marker file next to the site files. Set to 0 to disable it.
+   */
+  @Parameter(
+      property = "bento.watchdog.interval.seconds",
+      alias = "bento.watchdog.interval.seconds",
+      defaultValue = "5",
+      required = true
+  )
+  private long mWatchdogIntervalSeconds;
+
+  /**
+   * How often, in seconds, the CPU, memory and I/O of the cluster container are sampled while the
+   * integration tests run. Samples are appended to "resources.csv" in the report directory, and
+   * the 'stop' goal reports their peak and average. Set to 0 to disable sampling.
+   */
+  @Parameter(
+      property = "bento.sampler.interval.seconds",
+      alias = "bento.sampler.interval.seconds",
+      defaultValue = "10",
+      required = true
+  )
+  private long mSamplerIntervalSeconds;
+
+  /** @return the bento-cluster directory, or null if none is configured. */
+  protected File getBentoDirPath() {
+    return mBentoDirPath;
+  }
+
+  /**
+   * Check that the bento-cluster directory is configured, as the "docker" backend requires.
+   *
+   * @throws MojoExecutionException if it is not.
+   */
+  protected void checkBentoDirPath() throws MojoExecutionException {
+    if (null == mBentoDirPath) {
+      throw new MojoExecutionException("bento.dir.path is required by the docker backend.");
+    }
+  }
+
+  /** @return the id of the cluster this goal operates on. */
+  protected String getClusterId() {
+    return mClusterId;
+  }
+
+  /** Tear down the clusters whose background teardown did not complete. */
+  protected void reapPendingTeardowns() {
+    new PendingTeardowns(getLog(), mPendingTeardownsDirPath)
+        .reap(
+            TimeUnit.SECONDS.toMillis(mTeardownStaleSeconds),
+            TimeUnit.SECONDS.toMillis(mCommandTimeoutSeconds));
+  }
+
+  /**
+   * Apply the configured command deadlines and retries to a cluster.
+   *
+   * @param cluster to configure.
+   */
+  protected void setCommandPolicy(BentoCluster cluster) {
+    cluster.setCommandPolicy(
+        TimeUnit.SECONDS.toMillis(mCommandTimeoutSeconds),
+        TimeUnit.SECONDS.toMillis(mProbeTimeoutSeconds),
+        mCommandRetries);
+  }
+
+  /** @return the durations of recent successful boots. */
+  protected BootDurationStats getBootStats() {
+    return new BootDurationStats(mBootStatsFilePath);
+  }
+
+  /**
+   * Choose how long the cluster components may take to start: the configured startup timeout, or
+   * the adaptive one if enabled.
+   *
+   * @param bootStats the durations of recent successful boots.
+   * @return the startup timeout, in milliseconds.
+   */
+  protected long chooseStartupTimeoutMs(BootDurationStats bootStats) {
+    return mAdaptiveStartupTimeout
+        ? bootStats.chooseTimeoutMs(
+            getLog(),
+            TimeUnit.SECONDS.toMillis(mStartupTimeoutSeconds),
+            mStartupTimeoutFactor,
+            TimeUnit.SECONDS.toMillis(mMaxStartupTimeoutSeconds))
+        : TimeUnit.SECONDS.toMillis(mStartupTimeoutSeconds);
+  }
+
+  /**
+   * Assemble the tuning merged into the site files from the configured profiles and overrides.
+   *
+   * @return the tuning.
+   * @throws MojoExecutionException if a profile does not exist or an override is malformed.
+   */
+  protected SiteFileTuning createTuning() throws MojoExecutionException {
+    final SiteFileTuning tuning;
+    try {
+      tuning = SiteFileTuning.create(mTuningProfiles, mSiteOverrides);
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to read tuning profiles.", ioe);
+    } catch (IllegalArgumentException iae) {
+      throw new MojoExecutionException(iae.getMessage(), iae);
+    }
+    for (Map.Entry<String, Map<String, String>> siteFile : tuning.getSettings().entrySet()) {
+      getLog().info(String.format("Tuning %s: %s", siteFile.getKey(), siteFile.getValue()));
+    }
+    return tuning;
+  }
+
+  /**
+   * Start the watchdog and the resource usage sampler of a cluster, unless they are disabled.
+   *
+   * @param cluster to watch and sample.
+   * @param markerFile the unhealthy marker file the watchdog writes, next to the site files.
+   * @param crashLogFile the file the watchdog appends each crash to.
+   * @param samplesFile the CSV file the sampler appends the samples to.
+   */
+  protected void startMonitors(
+      ClusterBackend cluster,
+      File markerFile,
+      File crashLogFile,
+      File samplesFile
+  ) {
+    if (mWatchdogIntervalSeconds > 0) {
+      cluster.startWatchdog(
+          markerFile, crashLogFile, TimeUnit.SECONDS.toMillis(mWatchdogIntervalSeconds));
+    }
+    if (mSamplerIntervalSeconds > 0) {
+      cluster.startSampler(samplesFile, TimeUnit.SECONDS.toMillis(mSamplerIntervalSeconds));
+    }
+  }
+}
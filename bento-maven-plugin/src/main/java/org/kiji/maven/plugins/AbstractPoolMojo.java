@@ -0,0 +1,51 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Configuration shared by the goals controlling the warm cluster pool: 'pool-start',
+ * 'pool-status' and 'pool-stop'. The pool is kept by a {@link ClusterPoolDaemon} which outlives
+ * the builds using it, and is identified by its pool directory.
+ */
+public abstract class AbstractPoolMojo extends AbstractMojo {
+  /** Directory holding the configuration, port file and site files of the pool daemon. */
+  @Parameter(
+      property = "bento.pool.dir.path",
+      alias = "bento.pool.dir.path",
+      defaultValue = "${user.home}/.bento/pool",
+      required = true
+  )
+  private File mPoolDirPath;
+
+  /** @return the directory of the pool. */
+  protected File getPoolDir() {
+    return mPoolDirPath;
+  }
+
+  /** @return a client for the pool daemon. */
+  protected ClusterPoolClient getClient() {
+    return new ClusterPoolClient(mPoolDirPath);
+  }
+}
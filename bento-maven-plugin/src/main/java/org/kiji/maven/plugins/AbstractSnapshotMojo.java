@@ -0,0 +1,140 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Configuration shared by the 'snapshot' and 'restore' goals. A snapshot holds the data
+ * directories of a seeded Bento cluster, and is keyed by a fingerprint of the fixture inputs the
+ * cluster was seeded from, so that it is only reused while those inputs are unchanged.
+ */
+public abstract class AbstractSnapshotMojo extends AbstractMojo {
+  /** Data directories snapshotted when none are configured: HDFS and ZooKeeper state. */
+  private static final String[] DEFAULT_DATA_DIRS = new String[] {
+      "/var/lib/hadoop-hdfs",
+      "/var/lib/zookeeper",
+  };
+
+  /** If true, this goal should be a no-op. */
+  @Parameter(property = "skip", defaultValue = "false")
+  private boolean mSkip;
+
+  /** Identifies the cluster to snapshot or restore: the one started with this cluster id. */
+  @Parameter(
+      property = "bento.cluster.id",
+      alias = "bento.cluster.id",
+      defaultValue = "${project.groupId}:${project.artifactId}",
+      required = true
+  )
+  private String mClusterId;
+
+  /**
+   * Files and directories the cluster data is seeded from, e.g. fixture resources. The snapshot
+   * is keyed by a fingerprint of their content.
+   */
+  @Parameter(property = "bento.fixtures", alias = "bento.fixtures")
+  private List<File> mFixtures;
+
+  /**
+   * Absolute paths, inside the container, of the data directories to snapshot. Defaults to the
+   * HDFS and ZooKeeper data directories, which hold HDFS files and HBase tables.
+   */
+  @Parameter(property = "bento.snapshot.data.dirs", alias = "bento.snapshot.data.dirs")
+  private List<String> mDataDirs;
+
+  /** Directory where snapshots are stored. */
+  @Parameter(
+      property = "bento.snapshot.dir.path",
+      alias = "bento.snapshot.dir.path",
+      defaultValue = "${user.home}/.bento/snapshots",
+      required = true
+  )
+  private File mSnapshotDirPath;
+
+  /** The project being built. */
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject mProject;
+
+  /** @return true if this goal should be a no-op. */
+  protected boolean isSkip() {
+    return mSkip;
+  }
+
+  /** @return the data directories to snapshot, inside the container. */
+  protected List<String> getDataDirs() {
+    return ((null == mDataDirs) || mDataDirs.isEmpty())
+        ? Arrays.asList(DEFAULT_DATA_DIRS)
+        : mDataDirs;
+  }
+
+  /** @return the project being built. */
+  protected MavenProject getProject() {
+    return mProject;
+  }
+
+  /**
+   * Look up the cluster started by the 'start' goal.
+   *
+   * @return the cluster to snapshot or restore.
+   * @throws MojoExecutionException if no Docker Bento cluster was started with the configured
+   *     cluster id.
+   */
+  protected BentoCluster getCluster() throws MojoExecutionException {
+    final BentoCluster cluster;
+    try {
+      cluster = BentoClusterRegistry.getBentoCluster(mClusterId);
+    } catch (IllegalStateException ise) {
+      throw new MojoExecutionException(ise.getMessage(), ise);
+    }
+    if (null == cluster) {
+      throw new MojoExecutionException(String.format(
+          "No Bento cluster was started with id '%s'.", mClusterId));
+    }
+    return cluster;
+  }
+
+  /**
+   * Locate the snapshot matching the current fixture inputs. The snapshot need not exist.
+   *
+   * @return the snapshot archive file.
+   * @throws MojoExecutionException if the fixture inputs can not be fingerprinted.
+   */
+  protected File getSnapshotArchive() throws MojoExecutionException {
+    final String fingerprint;
+    try {
+      fingerprint = FileFingerprint.of(
+          (null == mFixtures) ? Collections.<File>emptyList() : mFixtures,
+          getDataDirs());
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to fingerprint the fixture inputs.", ioe);
+    }
+    return new File(mSnapshotDirPath, fingerprint + ".tar.gz");
+  }
+}
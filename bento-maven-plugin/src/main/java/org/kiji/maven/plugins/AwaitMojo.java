@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven goal which waits for the Bento cluster started by the 'start-async' goal to be up, then
+ * generates the site files needed to connect to it.
+ */
+@Mojo(
+    name = "await",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    threadSafe = true
+)
+public class AwaitMojo extends AbstractClusterMojo {
+  /** If true, this goal should be a no-op. */
+  @Parameter(property = "skip", alias = "skip", defaultValue = "false")
+  private boolean mSkip;
+
+  /**
+   * The directory that will store all the configuration *-site.xml files required to connect to
+   * HBase, HDFS, and the other Bento cluster components. These files will be generated by the goal.
+   */
+  @Parameter(
+      property = "site.files.dir.path",
+      alias = "site.files.dir.path",
+      defaultValue="${project.build.testOutputDirectory}/",
+      required = true
+  )
+  private File mSiteFilesOutputDirPath;
+
+  /** Directory the JSON timing report of the cluster lifecycle phases is written to. */
+  @Parameter(
+      property = "bento.report.dir.path",
+      alias = "bento.report.dir.path",
+      defaultValue = "${project.build.directory}/bento",
+      required = true
+  )
+  private File mReportDirPath;
+
+  /** Rolling history file each timing report is appended to, one JSON record per line. */
+  @Parameter(
+      property = "bento.timing.history.file.path",
+      alias = "bento.timing.history.file.path",
+      defaultValue = "${user.home}/.bento/timing-history.jsonl",
+      required = true
+  )
+  private File mTimingHistoryFilePath;
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (mSkip) {
+      getLog().info("Not waiting for a Bento cluster because skip=true.");
+      return;
+    }
+
+    checkBentoDirPath();
+    final SiteFileTuning tuning = createTuning();
+    final BentoCluster cluster;
+    try {
+      cluster = BentoClusterRegistry.getBentoCluster(getClusterId());
+    } catch (IllegalStateException ise) {
+      throw new MojoExecutionException(ise.getMessage(), ise);
+    }
+    if (null == cluster) {
+      throw new MojoExecutionException(String.format(
+          "No Bento cluster was started with id '%s'.", getClusterId()));
+    }
+    try {
+      cluster.awaitStart();
+    } catch (Exception e) {
+      BentoClusterRegistry.remove(getClusterId());
+      ClusterTasks.discard(getLog(), cluster);
+      throw new MojoExecutionException("Unable to start Bento cluster.", e);
+    }
+    try {
+      getBootStats().record(cluster.getStartupWaitMs());
+    } catch (IOException ioe) {
+      getLog().warn("Unable to record Bento cluster boot duration: " + ioe.getMessage());
+    }
+
+    final long copyStart = System.currentTimeMillis();
+    try {
+      new SiteFilePublisher(getLog(), getBentoDirPath(), mSiteFilesOutputDirPath, tuning)
+          .publishAll(cluster.getSiteFiles());
+    } catch (IOException ioe) {
+      throw new MojoExecutionException(ioe.getMessage(), ioe);
+    }
+    cluster.getTimings().recordSince("site-files.copy", copyStart);
+    cluster.reportTimings(
+        new File(mReportDirPath, "timings.json"), mTimingHistoryFilePath, "start");
+    startMonitors(
+        cluster,
+        new File(mSiteFilesOutputDirPath, ClusterWatchdog.UNHEALTHY_MARKER_FILE_NAME),
+        new File(mReportDirPath, "crashes.log"),
+        new File(mReportDirPath, "resources.csv"));
+  }
+}
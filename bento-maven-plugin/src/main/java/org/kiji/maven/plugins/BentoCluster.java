@@ -21,28 +21,39 @@ package org.kiji.maven.plugins;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.logging.Log;
 
 /**
  * An in-process way to start and stop a Bento cluster running in a Docker container. This class
- * wraps commands sent to the bento script in the Bento cluster installation.
+ * wraps commands sent to the bento script in the Bento cluster installation, and is the default
+ * {@link ClusterBackend}.
+ *
+ * Each instance is a handle on one named cluster. Handles are thread-safe, so several clusters can
+ * be operated concurrently, e.g. by the modules of a parallel build; see
+ * {@link BentoClusterRegistry} for how the goals of one module share a handle.
  */
-public enum BentoCluster {
-  /** The singleton instance. */
-  INSTANCE;
-
+public final class BentoCluster implements ClusterBackend {
   /**
    * Format for running bento commands: {path/to/bento-cluster/bin/bento} {command} -n {bento-name}.
    */
   private static final String BENTO_SHELL_SCRIPT_FORMAT = "%s %s -n %s";
-  /**
-   * Format for querying supervisorctl to check whether the Bento cluster components are up. The
-   * the only required configurable component is the bento container name.
-   */
-  private static final String SUPERVISORCTL_HDFS_INIT_STATUS =
-      "supervisorctl -c %s -s http://bento-%s:9001 status hdfs-init";
 
   /**
    * Bento commands.
@@ -52,17 +63,141 @@ public enum BentoCluster {
   private static final String BENTO_RM = "rm";
   private static final String BENTO_STATUS = "status";
 
-  /** Hope the the bento cluster components all start in 120 seconds. */
-  private static final long STARTUP_TIMEOUT_MS = 120000L;
+  /** Hope the the bento cluster components all start in 120 seconds, unless told otherwise. */
+  public static final long DEFAULT_STARTUP_TIMEOUT_MS = 120000L;
+
+  /** How long a bento or docker command may run before it is killed, unless told otherwise. */
+  public static final long DEFAULT_COMMAND_TIMEOUT_MS = 600000L;
+
+  /** How long a container status probe may run before it is killed, unless told otherwise. */
+  public static final long DEFAULT_PROBE_TIMEOUT_MS = 30000L;
+
+  /** How many times a transiently failing command is retried, unless told otherwise. */
+  public static final int DEFAULT_COMMAND_RETRIES = RetryPolicy.DEFAULT_MAX_ATTEMPTS - 1;
+
+  /**
+   * Runs cluster starts requested with {@link #startAsync()}. Threads are daemons; a build which
+   * ends before the cluster is stopped lets the start complete in a shutdown hook, which then
+   * removes the cluster, rather than killing the start halfway through creating the container.
+   */
+  private static final ExecutorService START_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-start-%d")
+          .build());
+
+  /**
+   * Serializes creating clusters with capturing the site files the bento script generates for
+   * them, because every cluster created from one installation writes them to the same location.
+   */
+  private static final Object CLIENT_CONF_LOCK = new Object();
 
   /** Where on this machine the bento-cluster installation lives. */
-  private File mBentoDirPath;
+  private final File mBentoDirPath;
 
   /** Name of the Bento cluster container. */
-  private String mBentoName;
+  private final String mBentoName;
 
   /** The maven log used to communicate with the maven user. */
-  private Log mLog;
+  private final Log mLog;
+
+  /** Client for the supervisor daemon managing the cluster components in the container. */
+  private final SupervisorClient mSupervisor;
+
+  /** Supervisor processes which must reach a given state before the cluster is up. */
+  private final List<ServiceRequirement> mRequiredServices;
+
+  /** Durations of the lifecycle phases of the cluster. */
+  private volatile PhaseTimings mTimings = new PhaseTimings();
+
+  /** How long the cluster components may take to start, in milliseconds. */
+  private volatile long mStartupTimeoutMs = DEFAULT_STARTUP_TIMEOUT_MS;
+
+  /** How long a bento or docker command may run, in milliseconds; 0 for no deadline. */
+  private volatile long mCommandTimeoutMs = DEFAULT_COMMAND_TIMEOUT_MS;
+
+  /** How long a container status probe may run, in milliseconds; 0 for no deadline. */
+  private volatile long mProbeTimeoutMs = DEFAULT_PROBE_TIMEOUT_MS;
+
+  /** Retries of commands and supervisor calls which fail transiently. */
+  private volatile RetryPolicy mRetryPolicy = new RetryPolicy(DEFAULT_COMMAND_RETRIES);
+
+  /** Site files generated for this cluster when it was created, or null if it was not. */
+  private volatile Map<String, byte[]> mSiteFiles = null;
+
+  /** Watchdog of the running cluster, or null if none was started. */
+  private volatile ClusterWatchdog mWatchdog = null;
+
+  /** Resource usage sampler of the running cluster, or null if none was started. */
+  private volatile ResourceSampler mSampler = null;
+
+  /** The start running in the background, or null if {@link #startAsync()} was not called. */
+  private volatile Future<Void> mPendingStart = null;
+
+  /** How long the last successful start waited for the cluster to come up, or -1. */
+  private volatile long mStartupWaitMs = -1L;
+
+  /**
+   * Shutdown hook removing the cluster started by {@link #startAsync()} if the build JVM exits
+   * before the cluster is stopped, or null if none is registered.
+   */
+  private Thread mShutdownHook = null;
+
+  /**
+   * Construct a handle on a Bento cluster container which is up once hdfs-init has exited. The
+   * container is not touched until one of the methods of this handle is called.
+   *
+   * @param log The maven log.
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @param bentoName name of the Bento cluster container.
+   */
+  public BentoCluster(Log log, File bentoDirPath, String bentoName) {
+    this(log, bentoDirPath, bentoName, ServiceRequirement.DEFAULT_REQUIREMENTS);
+  }
+
+  /**
+   * Construct a handle on a Bento cluster container. The container is not touched until one of
+   * the methods of this handle is called.
+   *
+   * @param log The maven log.
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @param bentoName name of the Bento cluster container.
+   * @param requiredServices supervisor processes which must reach a given state before the
+   *     cluster is up.
+   */
+  public BentoCluster(
+      Log log,
+      File bentoDirPath,
+      String bentoName,
+      List<ServiceRequirement> requiredServices
+  ) {
+    this(log, bentoDirPath, bentoName, requiredServices, SupervisorClient.forBento(bentoName));
+  }
+
+  /**
+   * Construct a handle on a Bento cluster container whose supervisor is reached through a given
+   * client, e.g. a client for a stub supervisor in benchmarks.
+   *
+   * @param log The maven log.
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @param bentoName name of the Bento cluster container.
+   * @param requiredServices supervisor processes which must reach a given state before the
+   *     cluster is up.
+   * @param supervisor client for the supervisor daemon of the container.
+   */
+  public BentoCluster(
+      Log log,
+      File bentoDirPath,
+      String bentoName,
+      List<ServiceRequirement> requiredServices,
+      SupervisorClient supervisor
+  ) {
+    mLog = log;
+    mBentoDirPath = bentoDirPath;
+    mBentoName = bentoName;
+    mSupervisor = supervisor;
+    mRequiredServices = requiredServices;
+  }
 
   /**
    * Returns a bento script shell command to execute.
@@ -79,43 +214,412 @@ public enum BentoCluster {
     );
   }
 
-  /**
-   * Disable default constructor.
-   */
-  private BentoCluster() {}
-
   /**
    * Execute command to start the Bento cluster container within a timeout.
    *
-   * @param log The maven log.
-   * @param bentoDirPath path to the bento-cluster environment installation.
-   * @param bentoName name of the Bento cluster container.
    * @throws Exception if the Bento cluster container could not be started in the specified timeout.
    */
-  public void start(Log log, File bentoDirPath, String bentoName) throws Exception {
-    mLog = log;
-    mBentoDirPath = bentoDirPath;
-    mBentoName = bentoName;
-
+  @Override
+  public void start() throws Exception {
     if (isRunning()) {
       throw new RuntimeException("Cluster already running.");
     }
 
     // Start Bento cluster by running the Bento create script.
     mLog.info(String.format("Starting the Bento cluster '%s'...", mBentoName));
-    mLog.info(ShellExecUtil.executeCommand(bentoCommand(BENTO_CREATE)));
+    long phaseStart = System.currentTimeMillis();
+    synchronized (CLIENT_CONF_LOCK) {
+      final ShellResult createResult = mRetryPolicy.run(
+          mLog,
+          String.format("Creating the Bento cluster '%s'", mBentoName),
+          false,
+          new RetryPolicy.Attempt<ShellResult>() {
+            @Override
+            public ShellResult call(int attempt) throws Exception {
+              if (attempt > 1) {
+                // Clear what the failed attempt may have left, so that the name is free again.
+                ShellExecUtil.execute(bentoCommand(BENTO_RM), null, mCommandTimeoutMs);
+              }
+              return ShellExecUtil.execute(bentoCommand(BENTO_CREATE), mLog, mCommandTimeoutMs);
+            }
 
-    // Has the container started as expected within the startup timeout?
-    final long startTime = System.currentTimeMillis();
-    while (!isRunning()) {
-      if (System.currentTimeMillis() - startTime > STARTUP_TIMEOUT_MS) {
+            @Override
+            public boolean isTransientFailure(ShellResult result) {
+              return !result.isSuccess();
+            }
+          });
+      if (!createResult.isSuccess()) {
         throw new RuntimeException(String.format(
-            "Could not start the Bento cluster '%s' within required timeout %d.",
-            mBentoName,
-            STARTUP_TIMEOUT_MS));
+            "Could not create the Bento cluster '%s': %s.", mBentoName, createResult));
+      }
+      mSiteFiles = SiteFilePublisher.readGeneratedSiteFiles(mBentoDirPath);
+    }
+    phaseStart = mTimings.recordSince("create", phaseStart);
+
+    // Has the container started as expected within the startup timeout? First wait for the
+    // container itself, then for its components, so that each probe forks as little as possible.
+    final long startupTimeoutMs = mStartupTimeoutMs;
+    final long waitStart = System.currentTimeMillis();
+    final long deadline = waitStart + startupTimeoutMs;
+    final ReadinessWaiter waiter = new ReadinessWaiter(mLog);
+    final boolean containerStarted = waiter.await(
+        String.format("Bento container '%s' started", mBentoName),
+        new ReadinessWaiter.Condition() {
+          @Override
+          public boolean isSatisfied() throws Exception {
+            return isContainerStarted();
+          }
+        },
+        startupTimeoutMs);
+    if (!containerStarted) {
+      throw new RuntimeException(String.format(
+          "Could not start the Bento cluster '%s' within required timeout %d.",
+          mBentoName,
+          startupTimeoutMs));
+    }
+    phaseStart = mTimings.recordSince("container.started", phaseStart);
+
+    final ServiceReadinessTracker tracker =
+        awaitServices(waiter, Math.max(0L, deadline - System.currentTimeMillis()));
+    for (Map.Entry<String, Long> ready : tracker.getReadyTimes().entrySet()) {
+      mTimings.record("service." + ready.getKey() + ".ready", ready.getValue() - phaseStart);
+    }
+    mTimings.recordSince("services.ready", phaseStart);
+    mStartupWaitMs = System.currentTimeMillis() - waitStart;
+  }
+
+  /**
+   * @return how long the last successful start waited for the container and its services to come
+   *     up after the container was created, i.e. the part of the start the startup timeout bounds,
+   *     in milliseconds; or -1 if the cluster was not started through this handle.
+   */
+  public long getStartupWaitMs() {
+    return mStartupWaitMs;
+  }
+
+  /**
+   * Start the Bento cluster container in a background thread, as {@link #start()} would, and
+   * return right away. The outcome of the start is collected by {@link #awaitStart()}.
+   *
+   * @throws IllegalStateException if a start was already requested through this handle.
+   */
+  public synchronized void startAsync() {
+    if (null != mPendingStart) {
+      throw new IllegalStateException(String.format(
+          "Bento cluster '%s' is already starting.", mBentoName));
+    }
+    mPendingStart = START_EXECUTOR.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        start();
+        return null;
+      }
+    });
+    mShutdownHook = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        mLog.warn(String.format("Removing the Bento cluster '%s' started in the background, "
+            + "since the build ended before it was stopped.", mBentoName));
+        awaitPendingStartQuietly();
+        discard();
+      }
+    }, "bento-start-shutdown");
+    Runtime.getRuntime().addShutdownHook(mShutdownHook);
+  }
+
+  /**
+   * Uninterruptibly wait for the start requested by {@link #startAsync()} to complete.
+   *
+   * @throws Exception the start failed with, or IllegalStateException if no start was requested.
+   */
+  public void awaitStart() throws Exception {
+    final Future<Void> pendingStart = mPendingStart;
+    if (null == pendingStart) {
+      throw new IllegalStateException(String.format(
+          "Bento cluster '%s' was not started in the background.", mBentoName));
+    }
+    final long waitStart = System.currentTimeMillis();
+    try {
+      Uninterruptibles.getUninterruptibly(pendingStart);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof Exception) {
+        throw (Exception) ee.getCause();
+      }
+      throw ee;
+    }
+    mTimings.recordSince("await", waitStart);
+  }
+
+  /**
+   * Wait for the required services of the cluster to reach their expected states. All required
+   * services are judged by the same probes against the same deadline, and the wait is aborted as
+   * soon as one of them can not come up.
+   *
+   * @param waiter to probe the services with.
+   * @param timeoutMs how long to wait for the services.
+   * @return the tracker holding the observed service states.
+   * @throws Exception if the services are not up within the timeout or can not come up.
+   */
+  private ServiceReadinessTracker awaitServices(ReadinessWaiter waiter, long timeoutMs)
+      throws Exception {
+    final ServiceReadinessTracker tracker = new ServiceReadinessTracker(mRequiredServices);
+    final boolean servicesUp = waiter.await(
+        String.format("Bento cluster '%s' services %s up", mBentoName, mRequiredServices),
+        new ReadinessWaiter.Condition() {
+          @Override
+          public boolean isSatisfied() throws Exception {
+            final List<SupervisorClient.ProcessInfo> processes = queryProcesses();
+            if (null == processes) {
+              return false;
+            }
+            if (tracker.update(processes)) {
+              return true;
+            }
+            if (null != tracker.getFailure()) {
+              throw new RuntimeException(String.format(
+                  "Bento cluster '%s' can not start: %s%s",
+                  mBentoName,
+                  tracker.getFailure(),
+                  tracker.formatStatusTable()));
+            }
+            return false;
+          }
+        },
+        timeoutMs);
+    if (!servicesUp) {
+      throw new RuntimeException(String.format(
+          "Could not start the Bento cluster '%s' within required timeout %d.%s",
+          mBentoName,
+          mStartupTimeoutMs,
+          tracker.formatStatusTable()));
+    }
+    return tracker;
+  }
+
+  /**
+   * Archive data directories of the cluster container to a local file. The cluster services are
+   * stopped while the archive is written, so that it is consistent, and restarted afterwards.
+   *
+   * @param dataDirs absolute paths of the directories to archive, inside the container.
+   * @param archive file to write the gzipped tar archive to. It is written atomically.
+   * @throws Exception if the archive can not be written or the services do not come back up.
+   */
+  public void snapshot(List<String> dataDirs, File archive) throws Exception {
+    mLog.info(String.format("Snapshotting %s of the Bento cluster '%s' to %s...",
+        dataDirs, mBentoName, archive.getAbsolutePath()));
+    final long phaseStart = System.currentTimeMillis();
+    FileUtils.forceMkdir(archive.getAbsoluteFile().getParentFile());
+    final File partial = new File(archive.getPath() + ".partial");
+    final List<String> command = Lists.newArrayList(
+        "docker", "exec", getContainerName(), "tar", "-czf", "-", "-C", "/");
+    command.addAll(relativeToRoot(dataDirs));
+
+    final ClusterWatchdog watchdog = mWatchdog;
+    if (null != watchdog) {
+      watchdog.pause();
+    }
+    try {
+      controlSupervisor(false);
+      Exception failure = null;
+      try {
+        final ShellResult result =
+            ShellExecUtil.execute(command, mLog, null, partial, mCommandTimeoutMs);
+        if (!result.isSuccess()) {
+          throw new IOException("Could not snapshot the Bento cluster: " + result);
+        }
+        if (!partial.renameTo(archive)) {
+          throw new IOException("Unable to move snapshot into place: " + archive);
+        }
+      } catch (Exception e) {
+        failure = e;
+        throw e;
+      } finally {
+        FileUtils.deleteQuietly(partial);
+        restartComponents(failure);
+      }
+      awaitServices(new ReadinessWaiter(mLog), mStartupTimeoutMs);
+    } finally {
+      if (null != watchdog) {
+        watchdog.resume();
       }
-      Thread.sleep(1000);
     }
+    mTimings.recordSince("snapshot", phaseStart);
+  }
+
+  /**
+   * Replace data directories of the cluster container with the content of an archive written by
+   * {@link #snapshot(List, File)}. The cluster services are stopped while the directories are
+   * replaced, then restarted.
+   *
+   * @param dataDirs absolute paths of the directories to replace, inside the container.
+   * @param archive gzipped tar archive to restore from.
+   * @throws Exception if the archive can not be restored or the services do not come back up.
+   */
+  public void restore(List<String> dataDirs, File archive) throws Exception {
+    mLog.info(String.format("Restoring %s of the Bento cluster '%s' from %s...",
+        dataDirs, mBentoName, archive.getAbsolutePath()));
+    final long phaseStart = System.currentTimeMillis();
+    final List<String> quotedDirs = Lists.newArrayList();
+    for (String dataDir : dataDirs) {
+      quotedDirs.add(ShellExecUtil.quote(dataDir));
+    }
+    final String script = String.format(
+        "rm -rf %s && tar -xzf - -C /", Joiner.on(' ').join(quotedDirs));
+
+    final ClusterWatchdog watchdog = mWatchdog;
+    if (null != watchdog) {
+      watchdog.pause();
+    }
+    try {
+      controlSupervisor(false);
+      Exception failure = null;
+      try {
+        final ShellResult result = ShellExecUtil.execute(
+            ImmutableList.of("docker", "exec", "-i", getContainerName(), "sh", "-c", script),
+            mLog,
+            archive,
+            null,
+            mCommandTimeoutMs);
+        if (!result.isSuccess()) {
+          throw new IOException("Could not restore the Bento cluster: " + result);
+        }
+      } catch (Exception e) {
+        failure = e;
+        throw e;
+      } finally {
+        restartComponents(failure);
+      }
+      awaitServices(new ReadinessWaiter(mLog), mStartupTimeoutMs);
+    } finally {
+      if (null != watchdog) {
+        watchdog.resume();
+      }
+    }
+    mTimings.recordSince("restore", phaseStart);
+  }
+
+  /**
+   * Strip the leading slash of absolute paths, for use with 'tar -C /'.
+   *
+   * @param paths absolute paths.
+   * @return the paths relative to the root directory.
+   */
+  private static List<String> relativeToRoot(List<String> paths) {
+    final List<String> relative = Lists.newArrayList();
+    for (String path : paths) {
+      relative.add(path.replaceFirst("^/+", ""));
+    }
+    return relative;
+  }
+
+  /** @return the name of the Docker container running the cluster. */
+  public String getContainerName() {
+    return "bento-" + mBentoName;
+  }
+
+  /**
+   * Attach to an already running Bento cluster container instead of creating a new one. The
+   * cluster is only attached to if it passes the same health check as a freshly started cluster.
+   *
+   * @return true if the cluster is running and was attached to, false otherwise.
+   * @throws Exception if the bento script can not be queried.
+   */
+  public boolean attach() throws Exception {
+    if (!isRunning()) {
+      mLog.info(String.format("Bento cluster '%s' is not running; can not reuse it.", mBentoName));
+      return false;
+    }
+    mLog.info(String.format("Reusing the running Bento cluster '%s'.", mBentoName));
+    return true;
+  }
+
+  /**
+   * Set how long the cluster components may take to start, after which starting the cluster
+   * fails. Defaults to {@value #DEFAULT_STARTUP_TIMEOUT_MS} milliseconds.
+   *
+   * @param startupTimeoutMs the startup timeout, in milliseconds.
+   */
+  @Override
+  public void setStartupTimeoutMs(long startupTimeoutMs) {
+    mStartupTimeoutMs = startupTimeoutMs;
+  }
+
+  /**
+   * Set the deadlines of the commands run against the cluster container, and how often commands
+   * which fail transiently are retried. A command still running at its deadline is killed along
+   * with the processes it spawned, and counts as a transient failure.
+   *
+   * @param commandTimeoutMs how long a bento or docker command may run, or 0 for no deadline.
+   *     Defaults to {@value #DEFAULT_COMMAND_TIMEOUT_MS} milliseconds.
+   * @param probeTimeoutMs how long a container status probe may run, or 0 for no deadline.
+   *     Defaults to {@value #DEFAULT_PROBE_TIMEOUT_MS} milliseconds.
+   * @param retries how many times a transiently failing command is retried. Defaults to
+   *     {@value #DEFAULT_COMMAND_RETRIES}.
+   */
+  public void setCommandPolicy(long commandTimeoutMs, long probeTimeoutMs, int retries) {
+    mCommandTimeoutMs = commandTimeoutMs;
+    mProbeTimeoutMs = probeTimeoutMs;
+    mRetryPolicy = new RetryPolicy(retries);
+  }
+
+  /**
+   * @return durations of the lifecycle phases of the cluster run through this handle, since the
+   *     timings were last reported.
+   */
+  @Override
+  public PhaseTimings getTimings() {
+    return mTimings;
+  }
+
+  /**
+   * Log the phase timings of this cluster and write them as a JSON report and a history record.
+   * The next report only covers the phases recorded after this one, so that the record of the
+   * 'stop' goal does not repeat those of the 'start' goal. Failing to write the timings only
+   * produces a warning.
+   *
+   * @param reportFile to write the JSON report to; overwritten.
+   * @param historyFile to append a JSON record to, or null.
+   * @param goal which completed, e.g. "start" or "stop".
+   */
+  @Override
+  public void reportTimings(File reportFile, File historyFile, String goal) {
+    // The next report only covers the phases recorded from now on, e.g. those of the stop.
+    final PhaseTimings timings = mTimings;
+    mTimings = new PhaseTimings();
+    timings.log(mLog, String.format("Bento cluster '%s' %s timings", mBentoName, goal));
+    try {
+      timings.write(
+          reportFile, historyFile, ImmutableMap.of("bento.name", mBentoName, "goal", goal));
+    } catch (IOException ioe) {
+      mLog.warn("Unable to write Bento cluster timing report: " + ioe.getMessage());
+    }
+  }
+
+  /** @return the name of the Bento cluster container. */
+  @Override
+  public String getBentoName() {
+    return mBentoName;
+  }
+
+  /**
+   * Get the site files needed to connect to this cluster. The copies captured when the cluster
+   * was created are returned, so that clusters created concurrently from the same installation
+   * each get their own. For a cluster attached to, they are read from the installation.
+   *
+   * @return the content of each site file, by file name.
+   * @throws IOException if the site files were not captured and can not be read.
+   */
+  @Override
+  public Map<String, byte[]> getSiteFiles() throws IOException {
+    final Map<String, byte[]> siteFiles = mSiteFiles;
+    return (null != siteFiles)
+        ? siteFiles
+        : SiteFilePublisher.readGeneratedSiteFiles(mBentoDirPath);
+  }
+
+  /** @return path to the bento-cluster environment installation. */
+  public File getBentoDirPath() {
+    return mBentoDirPath;
   }
 
   /**
@@ -124,7 +628,12 @@ public enum BentoCluster {
    *
    * @throws Exception if the Bento cluster container could not be stopped.
    */
+  @Override
   public void stop() throws Exception {
+    removeShutdownHook();
+    awaitPendingStartQuietly();
+    stopWatchdog();
+    stopSampler(null);
     if (!isRunning()) {
       mLog.error(
           "Attempting to shut down a Bento cluster container, but none running.");
@@ -132,8 +641,155 @@ public enum BentoCluster {
     }
 
     mLog.info(String.format("Stopping the Bento cluster '%s'...", mBentoName));
-    mLog.info(ShellExecUtil.executeCommand(bentoCommand(BENTO_STOP)));
-    mLog.info(ShellExecUtil.executeCommand(bentoCommand(BENTO_RM)));
+    long phaseStart = System.currentTimeMillis();
+    runBento(BENTO_STOP, mCommandTimeoutMs, false);
+    phaseStart = mTimings.recordSince("stop", phaseStart);
+    runBento(BENTO_RM, mCommandTimeoutMs, false);
+    mTimings.recordSince("rm", phaseStart);
+  }
+
+  /**
+   * Remove the Bento cluster container whatever state it is in, e.g. after it failed to start and
+   * so would not be stopped by {@link #stop()}. Failures are only logged, so that they do not mask
+   * the failure which led to the cluster being discarded.
+   */
+  public void discard() {
+    removeShutdownHook();
+    stopWatchdog();
+    stopSampler(null);
+    mLog.info(String.format("Removing the Bento cluster '%s'...", mBentoName));
+    try {
+      runBento(BENTO_STOP, mCommandTimeoutMs, false);
+      runBento(BENTO_RM, mCommandTimeoutMs, false);
+    } catch (IOException ioe) {
+      mLog.warn(String.format(
+          "Unable to remove the Bento cluster '%s': %s", mBentoName, ioe.getMessage()));
+    }
+  }
+
+  /**
+   * Hand the teardown of the Bento cluster container to a detached background process and return
+   * right away.
+   *
+   * @param teardowns to record the pending teardown in.
+   * @throws IOException if the teardown can not be launched.
+   */
+  public void stopDetached(PendingTeardowns teardowns) throws IOException {
+    removeShutdownHook();
+    awaitPendingStartQuietly();
+    stopWatchdog();
+    stopSampler(null);
+    final long phaseStart = System.currentTimeMillis();
+    teardowns.launch(this);
+    mTimings.recordSince("stop.detach", phaseStart);
+  }
+
+  /**
+   * Start watching the cluster components for crashes until the cluster is stopped. The
+   * components which are expected to exit, such as hdfs-init, are not watched. If the cluster is
+   * already watched, e.g. because another module of the reactor shares it, the running watchdog
+   * writes its unhealthy marker to the given file as well.
+   *
+   * @param markerFile the unhealthy marker file to write when a component dies, next to the site
+   *     files.
+   * @param crashLogFile the file to append each crash to, unless the cluster is already watched.
+   * @param intervalMs between polls of supervisor, in milliseconds.
+   */
+  @Override
+  public synchronized void startWatchdog(File markerFile, File crashLogFile, long intervalMs) {
+    if (null != mWatchdog) {
+      mWatchdog.addMarkerFile(markerFile);
+      return;
+    }
+    final Set<String> ignoredProcesses = Sets.newHashSet();
+    for (ServiceRequirement requirement : mRequiredServices) {
+      if (!"RUNNING".equals(requirement.getExpectedState())) {
+        ignoredProcesses.add(requirement.getName());
+      }
+    }
+    final ClusterWatchdog watchdog = new ClusterWatchdog(
+        mLog, mBentoName, mSupervisor, ignoredProcesses, markerFile, crashLogFile);
+    watchdog.start(intervalMs);
+    mWatchdog = watchdog;
+  }
+
+  /** Stop watching the cluster components, if they are watched. */
+  @Override
+  public synchronized void stopWatchdog() {
+    if (null != mWatchdog) {
+      mWatchdog.stop();
+      mWatchdog = null;
+    }
+  }
+
+  /**
+   * Start sampling the CPU, memory and I/O of the cluster container with "docker stats" until the
+   * cluster is stopped. Failing to start the sampler only produces a warning. If the cluster is
+   * already sampled, e.g. because another module of the reactor shares it, the running sampler
+   * is kept.
+   *
+   * @param seriesFile CSV file to append each sample to; overwritten.
+   * @param intervalMs between samples, in milliseconds.
+   */
+  @Override
+  public synchronized void startSampler(File seriesFile, long intervalMs) {
+    if (null != mSampler) {
+      mLog.info(String.format("Bento cluster '%s' is already sampled.", mBentoName));
+      return;
+    }
+    final ResourceSampler sampler = new ResourceSampler(mLog, mBentoName,
+        new ResourceSampler.DockerStatsSource(getContainerName()), seriesFile);
+    try {
+      sampler.start(intervalMs);
+    } catch (IOException ioe) {
+      mLog.warn("Unable to sample Bento cluster resource usage: " + ioe.getMessage());
+      return;
+    }
+    mSampler = sampler;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void stopSampler(File summaryFile) {
+    if (null != mSampler) {
+      mSampler.stop();
+      if (null != summaryFile) {
+        mSampler.report(summaryFile);
+      }
+      mSampler = null;
+    }
+  }
+
+  /**
+   * Let a start running in the background finish, so that it does not bring the container up
+   * after it was torn down. A failed start is only logged.
+   */
+  private void awaitPendingStartQuietly() {
+    final Future<Void> pendingStart = mPendingStart;
+    if ((null != pendingStart) && !pendingStart.isDone()) {
+      mLog.info(String.format("Waiting for the Bento cluster '%s' to start...", mBentoName));
+      try {
+        Uninterruptibles.getUninterruptibly(pendingStart);
+      } catch (ExecutionException ee) {
+        mLog.warn("Bento cluster did not start: " + ee.getCause());
+      }
+    }
+  }
+
+  /**
+   * Unregister the shutdown hook removing a cluster started by {@link #startAsync()}, once the
+   * cluster is being stopped by other means.
+   */
+  private synchronized void removeShutdownHook() {
+    if (null == mShutdownHook) {
+      return;
+    }
+    try {
+      Runtime.getRuntime().removeShutdownHook(mShutdownHook);
+    } catch (IllegalStateException ise) {
+      // The JVM is shutting down, possibly running the hook itself.
+    }
+    mShutdownHook = null;
   }
 
   /**
@@ -144,34 +800,115 @@ public enum BentoCluster {
    * container is running.
    */
   public boolean isRunning() throws Exception {
-    return ShellExecUtil.executeCommand(bentoCommand(BENTO_STATUS)).contains("started")
-        && isRunningPerSupervisorCtl();
+    return isContainerStarted() && isRunningPerSupervisor();
+  }
+
+  /**
+   * Check if the Bento cluster container has started, by querying the bento script. The cluster
+   * components inside the container may not be up yet.
+   *
+   * @return true if the bento script reports the container as started.
+   * @throws Exception if the bento script can not be uninterruptibly queried.
+   */
+  private boolean isContainerStarted() throws Exception {
+    return runBento(BENTO_STATUS, mProbeTimeoutMs, true).getStdOut().contains("started");
+  }
+
+  /**
+   * Run a bento script command within a deadline, retrying it if it times out.
+   *
+   * @param command to run, such as stop, rm, etc.
+   * @param timeoutMs how long the command may run, or 0 for no deadline.
+   * @param quiet whether the command is a probe, whose output is not logged.
+   * @return the result of the last attempt.
+   * @throws IOException if the command can not be run or times out on every attempt.
+   */
+  private ShellResult runBento(final String command, final long timeoutMs, final boolean quiet)
+      throws IOException {
+    return mRetryPolicy.run(
+        mLog,
+        String.format("bento %s -n %s", command, mBentoName),
+        quiet,
+        new RetryPolicy.Attempt<ShellResult>() {
+          @Override
+          public ShellResult call(int attempt) throws Exception {
+            return ShellExecUtil.execute(bentoCommand(command), quiet ? null : mLog, timeoutMs);
+          }
+        });
+  }
+
+  /**
+   * Stop or start all of the cluster components through supervisor, retrying if supervisor
+   * refuses the connection, e.g. while it is still coming up after a container restart.
+   *
+   * @param start true to start the components, false to stop them.
+   * @throws IOException if supervisor can not be reached on any attempt.
+   */
+  private void controlSupervisor(final boolean start) throws IOException {
+    mRetryPolicy.run(
+        mLog,
+        String.format("%s the components of the Bento cluster '%s'",
+            start ? "Starting" : "Stopping", mBentoName),
+        false,
+        new RetryPolicy.Attempt<Void>() {
+          @Override
+          public Void call(int attempt) throws Exception {
+            if (start) {
+              mSupervisor.startAllProcesses(mCommandTimeoutMs);
+            } else {
+              mSupervisor.stopAllProcesses(mCommandTimeoutMs);
+            }
+            return null;
+          }
+        });
   }
 
   /**
-   * Query supervisorctl to see whether the Bento cluster components (HDFS,
-   * etc.) have started. We do this by checking whether hdfs-init has exited.
+   * Start the cluster components again after a snapshot or restore. If the snapshot or restore
+   * failed, a failure to restart the components is attached to that failure rather than hiding it.
+   *
+   * @param failure of the snapshot or restore, or null if it succeeded.
+   * @throws IOException if the components can not be restarted and nothing failed before.
+   */
+  private void restartComponents(Exception failure) throws IOException {
+    try {
+      controlSupervisor(true);
+    } catch (IOException ioe) {
+      if (null == failure) {
+        throw ioe;
+      }
+      mLog.warn(String.format("Unable to restart the components of the Bento cluster '%s': %s",
+          mBentoName, ioe));
+      failure.addSuppressed(ioe);
+    }
+  }
+
+  /**
+   * Query supervisor to see whether the required Bento cluster components (HDFS, etc.) have
+   * started. By default we do this by checking whether hdfs-init has exited.
    *
    * This functionality requires that supervisor's RPC interface is set up.
    *
-   * @return true if hdfs-init has exited, meaning that our components are up.
-   * @throws Exception if the supervisorctl query fails.
+   * @return true if every required service is in its expected state.
    */
-  private boolean isRunningPerSupervisorCtl() throws Exception {
-    // In order to operate supervisorctl, we are required to specify a local config file even if
-    // it is unused. So we create a bare config file.
-    File bareSupervisorConfig;
+  private boolean isRunningPerSupervisor() {
+    final List<SupervisorClient.ProcessInfo> processes = queryProcesses();
+    return (null != processes) && new ServiceReadinessTracker(mRequiredServices).update(processes);
+  }
+
+  /**
+   * Query supervisor for the states of all cluster components.
+   *
+   * @return the states of all processes managed by supervisor, or null if supervisor can not be
+   *     reached.
+   */
+  private List<SupervisorClient.ProcessInfo> queryProcesses() {
     try {
-      bareSupervisorConfig = File.createTempFile("empty_supervisor_config", ".conf");
-      FileUtils.write(bareSupervisorConfig, "[supervisorctl]");
+      return mSupervisor.getAllProcessInfo();
     } catch (IOException ioe) {
-      throw new IOException(
-          "Unable to write bare config to operate supervisorctl to query bento container status.",
-          ioe);
-    }
-    // Check whether hdfs-init has exited, meaning that the required components are up.
-    return ShellExecUtil.executeCommand(String.format(SUPERVISORCTL_HDFS_INIT_STATUS,
-        bareSupervisorConfig.getAbsolutePath(),
-        mBentoName)).contains("EXITED");
+      // Supervisor is not reachable until the container is fully up.
+      mLog.debug("Unable to query supervisor: " + ioe.getMessage());
+      return null;
+    }
   }
 }
@@ -0,0 +1,155 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Thread-safe registry of the clusters started in this JVM, keyed by cluster id. The 'start'
+ * goal registers the cluster it starts, and the 'stop' goal with the same cluster id looks it up,
+ * so that the modules of a parallel build each operate their own cluster.
+ *
+ * When one cluster is started per test fork, the cluster of fork i (counting from 1) is registered
+ * under {@link #forkClusterId(String, int)}.
+ *
+ * The registry is static: Maven keeps the plugin's class realm for the whole build, so goals run
+ * by different modules see the same registry.
+ */
+public final class BentoClusterRegistry {
+  /** Clusters by cluster id. */
+  private static final ConcurrentMap<String, ClusterBackend> CLUSTERS = Maps.newConcurrentMap();
+
+  /** The last generated Bento cluster name, used to keep generated names unique. */
+  private static final AtomicLong LAST_BENTO_NAME = new AtomicLong();
+
+  /** Disable default constructor. */
+  private BentoClusterRegistry() {}
+
+  /**
+   * Generate name for Bento cluster container. Bento name is simply the current timestamp. The
+   * underlying container's name has "bento-" prepended to this timestamp. Names are unique within
+   * this JVM even if several clusters are started in the same millisecond.
+   *
+   * @return name for Bento cluster container.
+   */
+  public static String generateBentoName() {
+    while (true) {
+      final long last = LAST_BENTO_NAME.get();
+      final long next = Math.max(last + 1, System.currentTimeMillis());
+      if (LAST_BENTO_NAME.compareAndSet(last, next)) {
+        return Long.toString(next);
+      }
+    }
+  }
+
+  /**
+   * Register a cluster.
+   *
+   * @param clusterId to register the cluster under.
+   * @param cluster to register.
+   * @throws IllegalStateException if a cluster is already registered under the cluster id.
+   */
+  public static void register(String clusterId, ClusterBackend cluster) {
+    final ClusterBackend existing = CLUSTERS.putIfAbsent(clusterId, cluster);
+    if (null != existing) {
+      throw new IllegalStateException(String.format(
+          "Bento cluster '%s' is already registered under cluster id '%s'.",
+          existing.getBentoName(),
+          clusterId));
+    }
+  }
+
+  /**
+   * Look up a cluster.
+   *
+   * @param clusterId the cluster was registered under.
+   * @return the cluster, or null if none is registered under the cluster id.
+   */
+  public static ClusterBackend get(String clusterId) {
+    return CLUSTERS.get(clusterId);
+  }
+
+  /**
+   * Unregister a cluster.
+   *
+   * @param clusterId the cluster was registered under.
+   * @return the unregistered cluster, or null if none was registered under the cluster id.
+   */
+  public static ClusterBackend remove(String clusterId) {
+    return CLUSTERS.remove(clusterId);
+  }
+
+  /**
+   * Get the id the cluster of a test fork is registered under.
+   *
+   * @param clusterId configured for the goals.
+   * @param forkNumber of the test fork, counting from 1.
+   * @return the cluster id of the fork.
+   */
+  public static String forkClusterId(String clusterId, int forkNumber) {
+    return String.format("%s#fork-%d", clusterId, forkNumber);
+  }
+
+  /**
+   * Look up a Docker Bento cluster, for the goals which operate on the container itself.
+   *
+   * @param clusterId the cluster was registered under.
+   * @return the cluster, or null if none is registered under the cluster id.
+   * @throws IllegalStateException if the cluster registered under the cluster id is not run by
+   *     Docker.
+   */
+  public static BentoCluster getBentoCluster(String clusterId) {
+    final ClusterBackend cluster = get(clusterId);
+    if ((null != cluster) && !(cluster instanceof BentoCluster)) {
+      throw new IllegalStateException(String.format(
+          "Cluster '%s' registered under cluster id '%s' is not a Docker Bento cluster.",
+          cluster.getBentoName(),
+          clusterId));
+    }
+    return (BentoCluster) cluster;
+  }
+
+  /**
+   * Unregister the cluster registered under a cluster id, along with the clusters of the test
+   * forks registered under derived ids.
+   *
+   * @param clusterId configured for the goals.
+   * @return the unregistered clusters; empty if none were registered.
+   */
+  public static List<ClusterBackend> removeWithForks(String clusterId) {
+    final List<ClusterBackend> removed = Lists.newArrayList();
+    final ClusterBackend cluster = remove(clusterId);
+    if (null != cluster) {
+      removed.add(cluster);
+    }
+    for (int forkNumber = 1; ; forkNumber++) {
+      final ClusterBackend forkCluster = remove(forkClusterId(clusterId, forkNumber));
+      if (null == forkCluster) {
+        return removed;
+      }
+      removed.add(forkCluster);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Durations of recent successful Bento cluster boots, kept in a local file with one duration in
+ * milliseconds per line, from which an adaptive startup timeout is derived. A boot duration is the
+ * time the cluster took to come up once its container was created, which is what the startup
+ * timeout bounds. The timeout is a high percentile of the recent boot durations times a safety
+ * factor, clamped to sane bounds. It thus grows on slow machines, and stays short where clusters
+ * boot fast, so that a broken cluster is detected early.
+ */
+public final class BootDurationStats {
+  /** Number of recent boot durations kept. */
+  private static final int MAX_SAMPLES = 50;
+
+  /** Number of boot durations needed before the timeout is derived from them. */
+  private static final int MIN_SAMPLES = 5;
+
+  /** Percentile of the boot durations the timeout is derived from. */
+  private static final double PERCENTILE = 95.0;
+
+  /** Lower bound of an adaptive startup timeout, in milliseconds. */
+  private static final long MIN_TIMEOUT_MS = 30000L;
+
+  /** The file the boot durations are kept in. */
+  private final File mFile;
+
+  /**
+   * Construct a handle on a boot duration stats file. The file need not exist.
+   *
+   * @param file the boot durations are kept in.
+   */
+  public BootDurationStats(File file) {
+    mFile = file;
+  }
+
+  /**
+   * Read the recorded boot durations. Malformed lines are ignored.
+   *
+   * @return the recorded boot durations in milliseconds, oldest first.
+   * @throws IOException if the file exists but can not be read.
+   */
+  public List<Long> read() throws IOException {
+    if (!mFile.exists()) {
+      return Lists.newArrayList();
+    }
+    return parse(FileUtils.readLines(mFile, Charsets.UTF_8.name()));
+  }
+
+  /**
+   * Record the duration of a successful boot. Only the {@value #MAX_SAMPLES} most recent
+   * durations are kept. The file is shared by concurrent builds, so it is locked while it is
+   * rewritten.
+   *
+   * @param durationMs of the boot, in milliseconds.
+   * @throws IOException if the file can not be written.
+   */
+  public void record(final long durationMs) throws IOException {
+    LockedFiles.rewrite(mFile, new LockedFiles.Update() {
+      @Override
+      public List<String> apply(List<String> lines) {
+        final List<String> durations = Lists.newArrayList();
+        for (Long duration : parse(lines)) {
+          durations.add(duration.toString());
+        }
+        durations.add(Long.toString(durationMs));
+        return durations.subList(Math.max(0, durations.size() - MAX_SAMPLES), durations.size());
+      }
+    });
+  }
+
+  /**
+   * Choose the startup timeout from the recorded boot durations, and log the choice along with
+   * the data behind it. Until {@value #MIN_SAMPLES} boots were recorded, the fallback timeout is
+   * chosen.
+   *
+   * @param log The maven log.
+   * @param fallbackTimeoutMs chosen when there are not enough recorded boots, in milliseconds.
+   * @param factor safety factor the percentile boot duration is multiplied by.
+   * @param maxTimeoutMs upper bound of the chosen timeout, in milliseconds.
+   * @return the startup timeout, in milliseconds.
+   */
+  public long chooseTimeoutMs(Log log, long fallbackTimeoutMs, double factor, long maxTimeoutMs) {
+    final List<Long> durations;
+    try {
+      durations = read();
+    } catch (IOException ioe) {
+      log.warn(String.format("Unable to read boot durations from %s: %s",
+          mFile.getAbsolutePath(), ioe.getMessage()));
+      return fallbackTimeoutMs;
+    }
+    if (durations.size() < MIN_SAMPLES) {
+      log.info(String.format(
+          "Startup timeout: %d ms; only %d of the %d boots needed for an adaptive timeout "
+          + "are recorded in %s.",
+          fallbackTimeoutMs, durations.size(), MIN_SAMPLES, mFile.getAbsolutePath()));
+      return fallbackTimeoutMs;
+    }
+    final long percentileMs = percentile(durations, PERCENTILE);
+    final long timeoutMs = Math.max(
+        Math.min(MIN_TIMEOUT_MS, maxTimeoutMs),
+        Math.min(maxTimeoutMs, (long) (percentileMs * factor)));
+    log.info(String.format(
+        "Adaptive startup timeout: %d ms = p%.0f of %d recent boots (%d ms, min %d ms, max %d ms)"
+        + " x %.2f, clamped to [%d, %d] ms.",
+        timeoutMs,
+        PERCENTILE,
+        durations.size(),
+        percentileMs,
+        Collections.min(durations),
+        Collections.max(durations),
+        factor,
+        MIN_TIMEOUT_MS,
+        maxTimeoutMs));
+    return timeoutMs;
+  }
+
+  /**
+   * Parse boot durations, one per line. Malformed lines are ignored.
+   *
+   * @param content of a boot durations file.
+   * @return the boot durations in milliseconds, in the order they appear.
+   */
+  private static List<Long> parse(List<String> lines) {
+    final List<Long> durations = Lists.newArrayList();
+    for (String line : lines) {
+      try {
+        durations.add(Long.parseLong(line.trim()));
+      } catch (NumberFormatException nfe) {
+        continue;
+      }
+    }
+    return durations;
+  }
+
+  /**
+   * Compute a percentile of some values, by the nearest-rank method.
+   *
+   * @param values to compute the percentile of; not empty.
+   * @param percentile to compute, between 0 and 100.
+   * @return the smallest value such that at least the given percentage of values is not greater.
+   */
+  public static long percentile(List<Long> values, double percentile) {
+    final List<Long> sorted = Lists.newArrayList(values);
+    Collections.sort(sorted);
+    final int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+    return sorted.get(Math.min(sorted.size(), Math.max(1, rank)) - 1);
+  }
+}
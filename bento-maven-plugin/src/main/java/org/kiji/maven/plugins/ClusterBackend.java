@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A way to run the cluster the integration tests connect to. The 'start' and 'stop' goals operate
+ * clusters through this interface, so that the Docker Bento cluster ({@link BentoCluster}) and the
+ * in-process Hadoop mini clusters ({@link MiniClusterBackend}) are interchangeable: both publish
+ * the same site files and conf index.
+ *
+ * Implementations are thread-safe handles on one cluster each.
+ */
+public interface ClusterBackend {
+  /** @return the name of the cluster, unique within this JVM. */
+  String getBentoName();
+
+  /**
+   * Set how long the cluster components may take to start, after which starting the cluster
+   * fails.
+   *
+   * @param startupTimeoutMs the startup timeout, in milliseconds.
+   */
+  void setStartupTimeoutMs(long startupTimeoutMs);
+
+  /**
+   * Start the cluster and wait until its components are up.
+   *
+   * @throws Exception if the cluster can not be started within the startup timeout.
+   */
+  void start() throws Exception;
+
+  /**
+   * Get the site files needed to connect to the cluster.
+   *
+   * @return the content of each site file, by file name.
+   * @throws IOException if the site files can not be read.
+   */
+  Map<String, byte[]> getSiteFiles() throws IOException;
+
+  /**
+   * @return durations of the lifecycle phases of the cluster run through this handle, since the
+   *     timings were last reported.
+   */
+  PhaseTimings getTimings();
+
+  /**
+   * Log the phase timings of the cluster and write them as a JSON report and a history record.
+   * The next report only covers the phases recorded after this one, so that the record of the
+   * 'stop' goal does not repeat those of the 'start' goal. Failing to write the timings only
+   * produces a warning.
+   *
+   * @param reportFile to write the JSON report to; overwritten.
+   * @param historyFile to append a JSON record to, or null.
+   * @param goal which completed, e.g. "start" or "stop".
+   */
+  void reportTimings(File reportFile, File historyFile, String goal);
+
+  /**
+   * Start watching the cluster components for crashes until the cluster is stopped, if the
+   * backend supports it. If the cluster is already watched, the marker file is written by the
+   * running watchdog as well.
+   *
+   * @param markerFile the unhealthy marker file to write when a component dies, next to the site
+   *     files.
+   * @param crashLogFile the file to append each crash to.
+   * @param intervalMs between polls of the cluster components, in milliseconds.
+   */
+  void startWatchdog(File markerFile, File crashLogFile, long intervalMs);
+
+  /** Stop watching the cluster components, if they are watched. */
+  void stopWatchdog();
+
+  /**
+   * Start sampling the resource usage of the cluster until it is stopped, if the backend supports
+   * it and the cluster is not sampled already.
+   *
+   * @param seriesFile CSV file to append each sample to; overwritten.
+   * @param intervalMs between samples, in milliseconds.
+   */
+  void startSampler(File seriesFile, long intervalMs);
+
+  /**
+   * Stop sampling the resource usage of the cluster, if it is sampled, and report the peak and
+   * average usage.
+   *
+   * @param summaryFile to write the JSON summary to, or null to stop without reporting.
+   */
+  void stopSampler(File summaryFile);
+
+  /**
+   * Stop the cluster and release its resources.
+   *
+   * @throws Exception if the cluster could not be stopped.
+   */
+  void stop() throws Exception;
+}
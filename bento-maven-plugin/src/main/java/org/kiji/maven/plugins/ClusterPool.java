@@ -0,0 +1,360 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A pool of pre-started clusters, leased to builds and reset when they are returned, so that a
+ * build acquires a running cluster without waiting for it to boot. The pool keeps a target number
+ * of clusters available: idle, starting or being reset. Leasing a cluster starts a replacement in
+ * the background, and a returned cluster is reset, then kept if the pool is short of its target or
+ * stopped otherwise. A cluster which fails to reset is stopped and replaced.
+ *
+ * Builds renew their leases while they use the clusters. Leases which are not renewed expire, so
+ * that the clusters of builds which died without returning them are reclaimed.
+ *
+ * This class is thread-safe; see {@link ClusterPoolDaemon} for the daemon serving it.
+ */
+public final class ClusterPool {
+  /** Creates and resets the clusters of a pool. */
+  public interface Provider {
+    /**
+     * Create and start a new cluster.
+     *
+     * @return the running cluster.
+     * @throws Exception if the cluster can not be started.
+     */
+    ClusterBackend create() throws Exception;
+
+    /**
+     * Reset a returned cluster to the state of a fresh one.
+     *
+     * @param cluster to reset.
+     * @throws Exception if the cluster can not be reset; it is then stopped.
+     */
+    void reset(ClusterBackend cluster) throws Exception;
+  }
+
+  /** A cluster leased to a build. */
+  private static final class Lease {
+    /** The leased cluster. */
+    private final ClusterBackend mCluster;
+
+    /** When the lease was taken or last renewed, as returned by System.currentTimeMillis(). */
+    private long mRenewTime;
+
+    /**
+     * Construct a lease.
+     *
+     * @param cluster the leased cluster.
+     * @param leaseTime when the cluster was leased.
+     */
+    private Lease(ClusterBackend cluster, long leaseTime) {
+      mCluster = cluster;
+      mRenewTime = leaseTime;
+    }
+  }
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Creates and resets the clusters. */
+  private final Provider mProvider;
+
+  /** Number of clusters to keep available. */
+  private final int mSize;
+
+  /** How long a lease lasts without being renewed before its cluster is reclaimed, in ms. */
+  private final long mLeaseTimeoutMs;
+
+  /** Starts, resets and stops clusters in the background. */
+  private final ExecutorService mExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-pool-%d")
+          .build());
+
+  /** Running clusters waiting to be leased, oldest first. */
+  private final Deque<ClusterBackend> mIdle = new ArrayDeque<ClusterBackend>();
+
+  /** Leased clusters, by cluster name. */
+  private final Map<String, Lease> mLeases = Maps.newHashMap();
+
+  /** Number of clusters starting. */
+  private int mStarting = 0;
+
+  /** Number of returned clusters being reset. */
+  private int mResetting = 0;
+
+  /** Whether the pool was shut down. */
+  private boolean mShutDown = false;
+
+  /**
+   * Construct a pool. No cluster is started until {@link #replenish()} is called.
+   *
+   * @param log The maven log.
+   * @param provider creates and resets the clusters.
+   * @param size number of clusters to keep available.
+   * @param leaseTimeoutMs how long a lease lasts without being renewed before its cluster is
+   *     reclaimed.
+   */
+  public ClusterPool(Log log, Provider provider, int size, long leaseTimeoutMs) {
+    mLog = log;
+    mProvider = provider;
+    mSize = size;
+    mLeaseTimeoutMs = leaseTimeoutMs;
+  }
+
+  /** Start clusters in the background until the pool reaches its target size. */
+  public synchronized void replenish() {
+    while (!mShutDown && (mIdle.size() + mStarting + mResetting < mSize)) {
+      mStarting++;
+      mExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          ClusterBackend cluster = null;
+          try {
+            cluster = mProvider.create();
+          } catch (Exception e) {
+            mLog.warn("Unable to start a pooled cluster: " + e);
+          }
+          if (!onStarted(cluster) && (null != cluster)) {
+            stopQuietly(cluster);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Record the outcome of a cluster start. A failed start is not retried until the next call to
+   * {@link #replenish()}, so that a broken environment does not start clusters in a loop.
+   *
+   * @param cluster which started, or null if the start failed.
+   * @return whether the cluster was added to the pool; if not, it must be stopped.
+   */
+  private synchronized boolean onStarted(ClusterBackend cluster) {
+    mStarting--;
+    if (mShutDown || (null == cluster)) {
+      return false;
+    }
+    mLog.info(String.format("Pooled cluster '%s' is ready.", cluster.getBentoName()));
+    mIdle.addLast(cluster);
+    notifyAll();
+    return true;
+  }
+
+  /**
+   * Lease an idle cluster and start a replacement in the background. If no cluster is idle, wait
+   * up to a timeout for one to become idle.
+   *
+   * @param waitMs how long to wait for an idle cluster, in milliseconds.
+   * @return the leased cluster, or null if none became idle in time.
+   */
+  public synchronized ClusterBackend lease(long waitMs) {
+    final long deadline = System.currentTimeMillis() + waitMs;
+    while (!mShutDown && mIdle.isEmpty()) {
+      final long remainingMs = deadline - System.currentTimeMillis();
+      if (remainingMs <= 0) {
+        return null;
+      }
+      try {
+        wait(remainingMs);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+    if (mShutDown) {
+      return null;
+    }
+    final ClusterBackend cluster = mIdle.removeFirst();
+    mLeases.put(cluster.getBentoName(), new Lease(cluster, System.currentTimeMillis()));
+    mLog.info(String.format("Leased pooled cluster '%s'.", cluster.getBentoName()));
+    replenish();
+    return cluster;
+  }
+
+  /**
+   * Return a leased cluster to the pool. It is reset in the background.
+   *
+   * @param clusterName of the leased cluster.
+   * @return false if no cluster of that name is leased.
+   */
+  public synchronized boolean release(String clusterName) {
+    final Lease lease = mLeases.remove(clusterName);
+    if (null == lease) {
+      return false;
+    }
+    mLog.info(String.format("Pooled cluster '%s' was returned.", clusterName));
+    resetInBackground(lease.mCluster);
+    return true;
+  }
+
+  /**
+   * Renew the lease of a cluster, so that it is not reclaimed while the build leasing it runs.
+   *
+   * @param clusterName of the leased cluster.
+   * @return false if no cluster of that name is leased, e.g. because its lease expired.
+   */
+  public synchronized boolean renew(String clusterName) {
+    final Lease lease = mLeases.get(clusterName);
+    if (null == lease) {
+      return false;
+    }
+    lease.mRenewTime = System.currentTimeMillis();
+    return true;
+  }
+
+  /**
+   * Reclaim the clusters whose lease expired, as if they were returned.
+   *
+   * @return the number of reclaimed clusters.
+   */
+  public synchronized int reclaimExpiredLeases() {
+    int reclaimed = 0;
+    final long now = System.currentTimeMillis();
+    final Iterator<Lease> leases = mLeases.values().iterator();
+    while (leases.hasNext()) {
+      final Lease lease = leases.next();
+      if (now - lease.mRenewTime >= mLeaseTimeoutMs) {
+        leases.remove();
+        mLog.warn(String.format(
+            "Lease of pooled cluster '%s' expired; reclaiming it.", lease.mCluster.getBentoName()));
+        resetInBackground(lease.mCluster);
+        reclaimed++;
+      }
+    }
+    return reclaimed;
+  }
+
+  /**
+   * Reset a returned cluster in the background, then keep it if the pool is short of its target
+   * size, or stop it otherwise.
+   *
+   * @param cluster which was returned.
+   */
+  private void resetInBackground(final ClusterBackend cluster) {
+    mResetting++;
+    mExecutor.submit(new Runnable() {
+      @Override
+      public void run() {
+        final long resetStart = System.currentTimeMillis();
+        boolean reset = false;
+        try {
+          mProvider.reset(cluster);
+          reset = true;
+          mLog.info(String.format("Reset pooled cluster '%s' in %d ms.",
+              cluster.getBentoName(), System.currentTimeMillis() - resetStart));
+        } catch (Exception e) {
+          mLog.warn(String.format(
+              "Unable to reset pooled cluster '%s'; replacing it: %s", cluster.getBentoName(), e));
+        }
+        if (!onReset(cluster, reset)) {
+          stopQuietly(cluster);
+        }
+      }
+    });
+  }
+
+  /**
+   * Record the outcome of a cluster reset.
+   *
+   * @param cluster which was reset.
+   * @param reset whether the reset succeeded.
+   * @return whether the cluster was added back to the pool; if not, it must be stopped.
+   */
+  private synchronized boolean onReset(ClusterBackend cluster, boolean reset) {
+    mResetting--;
+    final boolean keep =
+        reset && !mShutDown && (mIdle.size() + mStarting + mResetting < mSize);
+    if (keep) {
+      mIdle.addLast(cluster);
+      notifyAll();
+    }
+    replenish();
+    return keep;
+  }
+
+  /**
+   * Stop a cluster. Failures are only logged.
+   *
+   * @param cluster to stop.
+   */
+  private void stopQuietly(ClusterBackend cluster) {
+    try {
+      cluster.stop();
+    } catch (Exception e) {
+      mLog.warn(String.format(
+          "Unable to stop pooled cluster '%s': %s", cluster.getBentoName(), e));
+    }
+  }
+
+  /** @return a one-line summary of the pool, e.g. "size=2 idle=1 leased=1 starting=1". */
+  public synchronized String getStatus() {
+    return String.format("size=%d idle=%d leased=%d starting=%d resetting=%d",
+        mSize, mIdle.size(), mLeases.size(), mStarting, mResetting);
+  }
+
+  /**
+   * Stop every cluster of the pool, leased or not, and wait up to a timeout for the clusters still
+   * starting or being reset, which are stopped once they are up.
+   *
+   * @param timeoutMs how long to wait for the background work to complete, in milliseconds.
+   */
+  public void shutdown(long timeoutMs) {
+    final List<ClusterBackend> clusters = Lists.newArrayList();
+    synchronized (this) {
+      mShutDown = true;
+      clusters.addAll(mIdle);
+      mIdle.clear();
+      for (Lease lease : mLeases.values()) {
+        clusters.add(lease.mCluster);
+      }
+      mLeases.clear();
+      notifyAll();
+    }
+    ClusterTasks.runAll(clusters, new ClusterTasks.Task() {
+      @Override
+      public void run(ClusterBackend cluster) throws Exception {
+        stopQuietly(cluster);
+      }
+    });
+    mExecutor.shutdown();
+    try {
+      mExecutor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+
+/**
+ * Client for the {@link ClusterPoolDaemon} serving a pool directory.
+ */
+public final class ClusterPoolClient {
+  /** How long connecting to the daemon may take, in milliseconds. */
+  private static final int CONNECT_TIMEOUT_MS = 1000;
+
+  /**
+   * How often a build renews the lease of the cluster it uses, in milliseconds. Leases must last
+   * several renewal intervals, see {@link #MIN_LEASE_TIMEOUT_MS}.
+   */
+  public static final long RENEW_INTERVAL_MS = 60000L;
+
+  /** Shortest lease timeout, so that a renewal delayed by a busy machine does not lose a lease. */
+  public static final long MIN_LEASE_TIMEOUT_MS = 3 * RENEW_INTERVAL_MS;
+
+  /** How long the daemon may take to reply, on top of the time a lease may wait. */
+  private static final int READ_TIMEOUT_MS = 10000;
+
+  /** Directory of the pool. */
+  private final File mPoolDir;
+
+  /** A cluster leased from the pool. */
+  public static final class Lease {
+    /** Name of the leased cluster. */
+    private final String mClusterName;
+
+    /** Directory holding the site files of the leased cluster. */
+    private final File mSiteFilesDir;
+
+    /**
+     * Construct a lease.
+     *
+     * @param clusterName name of the leased cluster.
+     * @param siteFilesDir directory holding the site files of the leased cluster.
+     */
+    private Lease(String clusterName, File siteFilesDir) {
+      mClusterName = clusterName;
+      mSiteFilesDir = siteFilesDir;
+    }
+
+    /** @return the name of the leased cluster. */
+    public String getClusterName() {
+      return mClusterName;
+    }
+
+    /** @return the directory holding the site files of the leased cluster. */
+    public File getSiteFilesDir() {
+      return mSiteFilesDir;
+    }
+  }
+
+  /**
+   * Construct a client.
+   *
+   * @param poolDir directory of the pool.
+   */
+  public ClusterPoolClient(File poolDir) {
+    mPoolDir = poolDir;
+  }
+
+  /** @return whether a daemon published its port in the pool directory. */
+  public boolean isDaemonPublished() {
+    return new File(mPoolDir, ClusterPoolDaemon.PORT_FILE_NAME).isFile();
+  }
+
+  /**
+   * Lease a running cluster.
+   *
+   * @param waitMs how long the daemon may wait for a cluster to become idle, in milliseconds.
+   * @return the lease, or null if no cluster became idle in time.
+   * @throws IOException if the daemon can not be reached or fails.
+   */
+  public Lease lease(long waitMs) throws IOException {
+    final String reply = send("LEASE " + waitMs, waitMs);
+    if ("EMPTY".equals(reply)) {
+      return null;
+    }
+    final List<String> words = Splitter.on(' ').limit(3).splitToList(reply);
+    if ((3 != words.size()) || !"LEASED".equals(words.get(0))) {
+      throw new IOException("Unexpected reply from the cluster pool: " + reply);
+    }
+    return new Lease(words.get(1), new File(words.get(2)));
+  }
+
+  /**
+   * Renew the lease of a cluster, so that the pool does not reclaim it.
+   *
+   * @param clusterName of the leased cluster.
+   * @throws IOException if the daemon can not be reached or the cluster is no longer leased.
+   */
+  public void renew(String clusterName) throws IOException {
+    expectOk(send("RENEW " + clusterName, 0L));
+  }
+
+  /**
+   * Return a leased cluster to the pool.
+   *
+   * @param clusterName of the leased cluster.
+   * @throws IOException if the daemon can not be reached or fails.
+   */
+  public void release(String clusterName) throws IOException {
+    expectOk(send("RELEASE " + clusterName, 0L));
+  }
+
+  /**
+   * Get a summary of the pool.
+   *
+   * @return the summary, e.g. "size=2 idle=1 leased=1 starting=1 resetting=0".
+   * @throws IOException if the daemon can not be reached or fails.
+   */
+  public String status() throws IOException {
+    return expectOk(send("STATUS", 0L));
+  }
+
+  /**
+   * Ask the daemon to stop every cluster and exit.
+   *
+   * @throws IOException if the daemon can not be reached or fails.
+   */
+  public void shutdown() throws IOException {
+    expectOk(send("SHUTDOWN", 0L));
+  }
+
+  /**
+   * Check that a reply reports success.
+   *
+   * @param reply of the daemon.
+   * @return the rest of the reply after "OK".
+   * @throws IOException if the reply reports a failure.
+   */
+  private static String expectOk(String reply) throws IOException {
+    if (!reply.startsWith("OK")) {
+      throw new IOException("Cluster pool failed: " + reply);
+    }
+    return reply.substring(2).trim();
+  }
+
+  /**
+   * Send a command to the daemon and read its reply.
+   *
+   * @param command to send.
+   * @param waitMs how long the daemon may take to execute the command, on top of the usual reply
+   *     timeout.
+   * @return the reply.
+   * @throws IOException if the daemon can not be reached or does not reply in time.
+   */
+  private String send(String command, long waitMs) throws IOException {
+    final File portFile = new File(mPoolDir, ClusterPoolDaemon.PORT_FILE_NAME);
+    if (!portFile.isFile()) {
+      throw new IOException("No cluster pool daemon is running in " + mPoolDir.getAbsolutePath());
+    }
+    final int port = Integer.parseInt(Files.toString(portFile, Charsets.UTF_8).trim());
+    final Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT_MS);
+      socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, READ_TIMEOUT_MS + waitMs));
+      final Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+      writer.write(command + "\n");
+      writer.flush();
+      final String reply = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), Charsets.UTF_8)).readLine();
+      if (null == reply) {
+        throw new IOException("Cluster pool closed the connection without replying.");
+      }
+      return reply;
+    } finally {
+      socket.close();
+    }
+  }
+}
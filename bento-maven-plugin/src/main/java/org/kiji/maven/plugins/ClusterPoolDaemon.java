@@ -0,0 +1,361 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+/**
+ * A daemon process keeping a {@link ClusterPool} of pre-started Bento clusters, which builds lease
+ * and return over a socket on the loopback interface. It is launched by the 'pool-start' goal, and
+ * outlives the build which launched it.
+ *
+ * The daemon is configured by "daemon.properties" in its pool directory, writes the port it
+ * listens on to "daemon.port", and writes the site files of each cluster to
+ * "clusters/&lt;name&gt;".
+ *
+ * Each connection carries one command line and its one-line reply:
+ * <ul>
+ *   <li>"LEASE &lt;wait-ms&gt;": "LEASED &lt;name&gt; &lt;site-files-dir&gt;", or "EMPTY" if no
+ *       cluster became idle in time.</li>
+ *   <li>"RENEW &lt;name&gt;": "OK", after which the lease lasts for another lease timeout.</li>
+ *   <li>"RELEASE &lt;name&gt;": "OK", after which the cluster is reset in the background.</li>
+ *   <li>"STATUS": "OK" followed by a summary of the pool.</li>
+ *   <li>"SHUTDOWN": "OK", after which every cluster is stopped and the daemon exits.</li>
+ * </ul>
+ * Failures are replied as "ERROR &lt;message&gt;".
+ */
+public final class ClusterPoolDaemon {
+  /** Name of the file configuring the daemon, in the pool directory. */
+  public static final String PROPERTIES_FILE_NAME = "daemon.properties";
+
+  /** Name of the file the daemon writes the port it listens on to, in the pool directory. */
+  public static final String PORT_FILE_NAME = "daemon.port";
+
+  /** Property holding the path to the bento-cluster installation. */
+  public static final String BENTO_DIR_KEY = "bento.dir.path";
+
+  /** Property holding the number of clusters to keep available. */
+  public static final String SIZE_KEY = "pool.size";
+
+  /** Property holding how long a lease lasts without being renewed, in milliseconds. */
+  public static final String LEASE_TIMEOUT_KEY = "lease.timeout.ms";
+
+  /** Property holding how long a cluster may take to start, in milliseconds. */
+  public static final String STARTUP_TIMEOUT_KEY = "startup.timeout.ms";
+
+  /** Property holding the comma-separated required services of the clusters. */
+  public static final String REQUIRED_SERVICES_KEY = "required.services";
+
+  /** How often expired leases are reclaimed and failed starts retried, in milliseconds. */
+  private static final long REAP_INTERVAL_MS = 30000L;
+
+  /** How long shutting down waits for clusters still starting or being reset. */
+  private static final long SHUTDOWN_TIMEOUT_MS = 600000L;
+
+  /**
+   * Shell script run in a returned cluster's container to reset it: drop every HBase table and
+   * empty the HDFS home and scratch directories, keeping the directories themselves.
+   */
+  private static final String RESET_SCRIPT =
+      "printf 'list.each { |t| disable t; drop t }\\nexit\\n' | hbase shell"
+      + " && HADOOP_USER_NAME=hdfs hdfs dfs -rm -r -f -skipTrash '/user/*/*' '/tmp/*'";
+
+  /** The log. */
+  private final Log mLog;
+
+  /** Directory holding the daemon configuration, port file and site files. */
+  private final File mPoolDir;
+
+  /** Path to the bento-cluster installation the clusters are created from. */
+  private final File mBentoDirPath;
+
+  /** The pool served. */
+  private final ClusterPool mPool;
+
+  /** Handles connections, one thread per connection, so that leases may wait. */
+  private final ExecutorService mConnectionExecutor = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-pool-connection-%d")
+          .build());
+
+  /** The socket listened on. */
+  private final ServerSocket mServerSocket;
+
+  /**
+   * Construct a daemon from the configuration in its pool directory and bind its socket.
+   *
+   * @param log The log.
+   * @param poolDir holding the daemon configuration.
+   * @throws IOException if the configuration can not be read or the socket can not be bound.
+   */
+  private ClusterPoolDaemon(Log log, File poolDir) throws IOException {
+    mLog = log;
+    mPoolDir = poolDir;
+    final Properties properties = new Properties();
+    final InputStream in = new FileInputStream(new File(poolDir, PROPERTIES_FILE_NAME));
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    mBentoDirPath = new File(properties.getProperty(BENTO_DIR_KEY));
+    final long startupTimeoutMs = Long.parseLong(properties.getProperty(STARTUP_TIMEOUT_KEY));
+    final List<ServiceRequirement> requiredServices = ServiceRequirement.parseAll(
+        Splitter.on(',').omitEmptyStrings().trimResults()
+            .splitToList(properties.getProperty(REQUIRED_SERVICES_KEY, "")));
+    mPool = new ClusterPool(
+        log,
+        new BentoProvider(startupTimeoutMs, requiredServices),
+        Integer.parseInt(properties.getProperty(SIZE_KEY)),
+        Long.parseLong(properties.getProperty(LEASE_TIMEOUT_KEY)));
+    mServerSocket = new ServerSocket(0, 50, InetAddress.getByName(null));
+  }
+
+  /**
+   * Run the daemon until it is shut down.
+   *
+   * @param args the pool directory.
+   * @throws IOException if the daemon can not be started.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: ClusterPoolDaemon <pool-dir>");
+      System.exit(1);
+    }
+    new ClusterPoolDaemon(new SystemStreamLog(), new File(args[0])).run();
+  }
+
+  /**
+   * Start filling the pool, publish the port, and serve connections until shut down.
+   *
+   * @throws IOException if the port file can not be written.
+   */
+  private void run() throws IOException {
+    FileUtils.deleteDirectory(getClustersDir());
+    mPool.replenish();
+    final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("bento-pool-reaper")
+            .build());
+    reaper.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        mPool.reclaimExpiredLeases();
+        mPool.replenish();
+      }
+    }, REAP_INTERVAL_MS, REAP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+    final File portFile = new File(mPoolDir, PORT_FILE_NAME);
+    final File partialPortFile = new File(mPoolDir, PORT_FILE_NAME + ".partial");
+    Files.write(Integer.toString(mServerSocket.getLocalPort()), partialPortFile, Charsets.UTF_8);
+    if (!partialPortFile.renameTo(portFile)) {
+      throw new IOException("Unable to write " + portFile.getAbsolutePath());
+    }
+    mLog.info(String.format("Cluster pool listening on port %d.", mServerSocket.getLocalPort()));
+
+    try {
+      while (!mServerSocket.isClosed()) {
+        final Socket socket;
+        try {
+          socket = mServerSocket.accept();
+        } catch (IOException ioe) {
+          // The socket was closed by a SHUTDOWN command.
+          break;
+        }
+        mConnectionExecutor.submit(new Runnable() {
+          @Override
+          public void run() {
+            serve(socket);
+          }
+        });
+      }
+    } finally {
+      reaper.shutdownNow();
+      FileUtils.deleteQuietly(portFile);
+    }
+    mPool.shutdown(SHUTDOWN_TIMEOUT_MS);
+    FileUtils.deleteQuietly(getClustersDir());
+    mLog.info("Cluster pool shut down.");
+  }
+
+  /**
+   * Serve the command of one connection.
+   *
+   * @param socket of the connection.
+   */
+  private void serve(Socket socket) {
+    try {
+      try {
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+        final String command = reader.readLine();
+        final String reply = (null == command) ? "ERROR no command" : execute(command.trim());
+        final Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+        writer.write(reply + "\n");
+        writer.flush();
+      } finally {
+        socket.close();
+      }
+    } catch (IOException ioe) {
+      mLog.warn("Unable to serve cluster pool connection: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Execute a command.
+   *
+   * @param command to execute.
+   * @return the reply.
+   */
+  private String execute(String command) {
+    final List<String> words = Splitter.on(' ').omitEmptyStrings().splitToList(command);
+    final String verb = words.isEmpty() ? "" : words.get(0);
+    try {
+      if ("LEASE".equals(verb) && (2 == words.size())) {
+        final ClusterBackend cluster = mPool.lease(Long.parseLong(words.get(1)));
+        return (null == cluster)
+            ? "EMPTY"
+            : String.format("LEASED %s %s", cluster.getBentoName(),
+                getSiteFilesDir(cluster.getBentoName()).getAbsolutePath());
+      } else if ("RENEW".equals(verb) && (2 == words.size())) {
+        return mPool.renew(words.get(1))
+            ? "OK"
+            : "ERROR no cluster named " + words.get(1) + " is leased";
+      } else if ("RELEASE".equals(verb) && (2 == words.size())) {
+        return mPool.release(words.get(1))
+            ? "OK"
+            : "ERROR no cluster named " + words.get(1) + " is leased";
+      } else if ("STATUS".equals(verb)) {
+        return "OK " + mPool.getStatus();
+      } else if ("SHUTDOWN".equals(verb)) {
+        mLog.info("Shutting down the cluster pool.");
+        mServerSocket.close();
+        return "OK";
+      }
+      return "ERROR unknown command: " + command;
+    } catch (Exception e) {
+      return "ERROR " + e;
+    }
+  }
+
+  /** @return the directory holding the site files of the clusters. */
+  private File getClustersDir() {
+    return new File(mPoolDir, "clusters");
+  }
+
+  /**
+   * Locate the site files of a cluster.
+   *
+   * @param clusterName of the cluster.
+   * @return the directory holding its site files.
+   */
+  private File getSiteFilesDir(String clusterName) {
+    return new File(getClustersDir(), clusterName);
+  }
+
+  /** Creates Docker Bento clusters and resets them in place. */
+  private final class BentoProvider implements ClusterPool.Provider {
+    /** How long a cluster may take to start, in milliseconds. */
+    private final long mStartupTimeoutMs;
+
+    /** Supervisor processes which must reach a given state before a cluster is up. */
+    private final List<ServiceRequirement> mRequiredServices;
+
+    /**
+     * Construct a provider.
+     *
+     * @param startupTimeoutMs how long a cluster may take to start.
+     * @param requiredServices which must reach a given state before a cluster is up.
+     */
+    private BentoProvider(long startupTimeoutMs, List<ServiceRequirement> requiredServices) {
+      mStartupTimeoutMs = startupTimeoutMs;
+      mRequiredServices = requiredServices;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ClusterBackend create() throws Exception {
+      final BentoCluster cluster = new BentoCluster(
+          mLog, mBentoDirPath, BentoClusterRegistry.generateBentoName(), mRequiredServices);
+      cluster.setStartupTimeoutMs(mStartupTimeoutMs);
+      final File siteFilesDir = getSiteFilesDir(cluster.getBentoName());
+      try {
+        cluster.start();
+        FileUtils.forceMkdir(siteFilesDir);
+        for (Map.Entry<String, byte[]> siteFile : cluster.getSiteFiles().entrySet()) {
+          Files.write(siteFile.getValue(), new File(siteFilesDir, siteFile.getKey()));
+        }
+      } catch (Exception e) {
+        // The cluster never reaches the pool, which would otherwise stop it.
+        ClusterTasks.discard(mLog, cluster);
+        FileUtils.deleteQuietly(siteFilesDir);
+        throw e;
+      }
+      return cluster;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset(ClusterBackend cluster) throws Exception {
+      final BentoCluster bentoCluster = (BentoCluster) cluster;
+      final ShellResult result = ShellExecUtil.execute(
+          ImmutableList.of("docker", "exec", bentoCluster.getContainerName(),
+              "sh", "-c", RESET_SCRIPT),
+          null,
+          null,
+          null,
+          BentoCluster.DEFAULT_COMMAND_TIMEOUT_MS);
+      if (!result.isSuccess()) {
+        throw new IOException("Reset script failed: " + result);
+      }
+      if (!bentoCluster.isRunning()) {
+        throw new IOException("Cluster is not healthy after the reset.");
+      }
+    }
+  }
+}
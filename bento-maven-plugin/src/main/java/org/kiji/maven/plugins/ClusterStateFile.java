@@ -0,0 +1,138 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Records a Bento cluster that was persisted by the 'stop' goal, so that a later 'start' goal can
+ * reattach to it instead of creating a new cluster. The record holds the cluster name and a
+ * fingerprint of the configuration the cluster was created with.
+ */
+public final class ClusterStateFile {
+  /** Property holding the name of the persisted cluster. */
+  private static final String BENTO_NAME_KEY = "bento.name";
+
+  /** Property holding the configuration fingerprint of the persisted cluster. */
+  private static final String FINGERPRINT_KEY = "bento.fingerprint";
+
+  /** Where the record is stored. */
+  private final File mFile;
+
+  /**
+   * Construct a handle on a state file. The file need not exist.
+   *
+   * @param file where the record is stored.
+   */
+  public ClusterStateFile(File file) {
+    mFile = file;
+  }
+
+  /**
+   * Compute the fingerprint of the configuration a cluster is created with: the location of the
+   * bento-cluster installation and the content of its bento script.
+   *
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @return a hex encoded fingerprint.
+   * @throws IOException if the bento script can not be read.
+   */
+  public static String fingerprint(File bentoDirPath) throws IOException {
+    final Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(bentoDirPath.getCanonicalPath(), Charsets.UTF_8);
+    final File bentoScript = new File(new File(bentoDirPath, "bin"), "bento");
+    if (bentoScript.exists()) {
+      hasher.putBytes(Files.toByteArray(bentoScript));
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Record a persisted cluster.
+   *
+   * @param bentoName name of the persisted Bento cluster container.
+   * @param fingerprint of the configuration the cluster was created with.
+   * @throws IOException if the record can not be written.
+   */
+  public void write(String bentoName, String fingerprint) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty(BENTO_NAME_KEY, bentoName);
+    properties.setProperty(FINGERPRINT_KEY, fingerprint);
+    FileUtils.forceMkdir(mFile.getAbsoluteFile().getParentFile());
+    final OutputStream out = new FileOutputStream(mFile);
+    try {
+      properties.store(out, "Bento cluster persisted by the bento-maven-plugin.");
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Look up the persisted cluster compatible with a configuration.
+   *
+   * @param fingerprint of the configuration the cluster must have been created with.
+   * @return the name of the persisted cluster, or null if there is none or it was created with a
+   *     different configuration.
+   * @throws IOException if the record exists but can not be read.
+   */
+  public String readBentoName(String fingerprint) throws IOException {
+    if (!mFile.exists()) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    final InputStream in = new FileInputStream(mFile);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    if (!fingerprint.equals(properties.getProperty(FINGERPRINT_KEY))) {
+      return null;
+    }
+    return properties.getProperty(BENTO_NAME_KEY);
+  }
+
+  /**
+   * Forget the persisted cluster, if any.
+   *
+   * @throws IOException if the record exists but can not be deleted.
+   */
+  public void clear() throws IOException {
+    if (mFile.exists() && !mFile.delete()) {
+      throw new IOException("Unable to delete Bento cluster state file: " + mFile);
+    }
+  }
+
+  /** @return where the record is stored. */
+  public File getFile() {
+    return mFile;
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs an operation on several clusters concurrently, e.g. to start one cluster per test
+ * fork, and uninterruptibly waits for all of them.
+ */
+public final class ClusterTasks {
+  /** An operation on one cluster. */
+  public interface Task {
+    /**
+     * Run the operation.
+     *
+     * @param cluster to operate on.
+     * @throws Exception if the operation fails.
+     */
+    void run(ClusterBackend cluster) throws Exception;
+  }
+
+  /** Disable default constructor. */
+  private ClusterTasks() {}
+
+  /**
+   * Run an operation on every cluster, each in its own daemon thread, and wait for all of them to
+   * complete, whether they succeed or not.
+   *
+   * @param clusters to operate on.
+   * @param task the operation.
+   * @return the failure of each cluster the operation failed on; empty if all succeeded.
+   */
+  public static Map<ClusterBackend, Exception> runAll(
+      List<ClusterBackend> clusters,
+      final Task task
+  ) {
+    final Map<ClusterBackend, Exception> failures = Maps.newLinkedHashMap();
+    if (clusters.isEmpty()) {
+      return failures;
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        clusters.size(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("bento-cluster-%d")
+            .build());
+    try {
+      final List<Future<Void>> futures = Lists.newArrayList();
+      for (final ClusterBackend cluster : clusters) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            task.run(cluster);
+            return null;
+          }
+        }));
+      }
+      for (int i = 0; i < clusters.size(); i++) {
+        try {
+          Uninterruptibles.getUninterruptibly(futures.get(i));
+        } catch (ExecutionException ee) {
+          failures.put(clusters.get(i), (ee.getCause() instanceof Exception)
+              ? (Exception) ee.getCause()
+              : ee);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return failures;
+  }
+
+  /**
+   * Tear down a cluster which failed to start, so that a partly created container does not outlive
+   * the build. Failures are only logged, so that they do not mask the failure to start.
+   *
+   * @param log the maven log.
+   * @param cluster to tear down.
+   */
+  public static void discard(Log log, ClusterBackend cluster) {
+    if (cluster instanceof BentoCluster) {
+      ((BentoCluster) cluster).discard();
+      return;
+    }
+    try {
+      cluster.stop();
+    } catch (Exception e) {
+      log.warn(String.format(
+          "Unable to stop the cluster '%s': %s", cluster.getBentoName(), e.getMessage()));
+    }
+  }
+}
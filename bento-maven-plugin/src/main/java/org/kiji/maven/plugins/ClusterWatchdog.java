@@ -0,0 +1,267 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watches the components of a running Bento cluster while the integration tests run, and reports
+ * each one that dies. A crash is appended, with a timestamp, to a crash log, and recorded in an
+ * "unhealthy" marker file next to the site files, so that test JVMs can check the marker and
+ * abort right away instead of waiting for their clients to time out.
+ *
+ * The watchdog polls supervisor from a daemon thread with one XML-RPC call per poll. The
+ * components it watches are the ones running when it starts, except for those which are expected
+ * to exit. It can be paused while the components are stopped on purpose. A cluster shared by the
+ * modules of a reactor has one watchdog, which writes a marker next to the site files of each
+ * module.
+ */
+public final class ClusterWatchdog {
+  /** Name of the marker file written next to the site files when the cluster is unhealthy. */
+  public static final String UNHEALTHY_MARKER_FILE_NAME = "bento-unhealthy";
+
+  /** Supervisor state of a process that is up. */
+  private static final String RUNNING = "RUNNING";
+
+  /** How many polls in a row may fail to reach supervisor before the cluster is unhealthy. */
+  private static final int MAX_UNREACHABLE_POLLS = 3;
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Name of the watched cluster. */
+  private final String mBentoName;
+
+  /** Client for the supervisor of the watched cluster. */
+  private final SupervisorClient mSupervisor;
+
+  /** Processes which are expected to exit, and are not watched. */
+  private final Set<String> mIgnoredProcesses;
+
+  /** The unhealthy marker files, one per set of site files of the cluster. */
+  private final List<File> mMarkerFiles = Lists.newArrayList();
+
+  /** The crash log file. */
+  private final File mCrashLogFile;
+
+  /** Runs the polls. */
+  private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-watchdog-%d")
+          .build());
+
+  /** Last observed state of each watched process, by process name; null until the first poll. */
+  private Map<String, String> mLastStates = null;
+
+  /** Processes reported as crashed and not seen running since. */
+  private final Set<String> mCrashed = Sets.newHashSet();
+
+  /** Number of polls in a row which failed to reach supervisor. */
+  private int mUnreachablePolls = 0;
+
+  /** Whether polls are paused. */
+  private boolean mPaused = false;
+
+  /** The crashes reported so far, as written to the markers. */
+  private final StringBuilder mCrashRecords = new StringBuilder();
+
+  /**
+   * Construct a watchdog. It does not poll until started.
+   *
+   * @param log The maven log.
+   * @param bentoName name of the cluster to watch.
+   * @param supervisor client for the supervisor of the cluster.
+   * @param ignoredProcesses processes which are expected to exit, and are not watched.
+   * @param markerFile the unhealthy marker file to write when a component dies.
+   * @param crashLogFile the file to append each crash to.
+   */
+  public ClusterWatchdog(
+      Log log,
+      String bentoName,
+      SupervisorClient supervisor,
+      Set<String> ignoredProcesses,
+      File markerFile,
+      File crashLogFile
+  ) {
+    mLog = log;
+    mBentoName = bentoName;
+    mSupervisor = supervisor;
+    mIgnoredProcesses = ignoredProcesses;
+    mMarkerFiles.add(markerFile);
+    mCrashLogFile = crashLogFile;
+  }
+
+  /**
+   * Clear any unhealthy marker left by an earlier cluster and start polling.
+   *
+   * @param intervalMs between polls, in milliseconds.
+   */
+  public void start(long intervalMs) {
+    synchronized (this) {
+      FileUtils.deleteQuietly(mMarkerFiles.get(0));
+    }
+    mExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          poll();
+        } catch (RuntimeException re) {
+          // An escaping exception would cancel the polls.
+          mLog.warn("Bento cluster watchdog poll failed: " + re);
+        }
+      }
+    }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    mLog.info(String.format("Watching the Bento cluster '%s' every %d ms; crashes are logged to %s",
+        mBentoName, intervalMs, mCrashLogFile.getAbsolutePath()));
+  }
+
+  /**
+   * Also write the unhealthy marker to another file, e.g. next to the site files published by
+   * another module sharing the cluster. Any marker left by an earlier cluster is replaced by the
+   * crashes reported so far, if any.
+   *
+   * @param markerFile the additional unhealthy marker file.
+   */
+  public synchronized void addMarkerFile(File markerFile) {
+    if (mMarkerFiles.contains(markerFile)) {
+      return;
+    }
+    FileUtils.deleteQuietly(markerFile);
+    if (mCrashRecords.length() > 0) {
+      try {
+        FileUtils.write(markerFile, mCrashRecords, Charsets.UTF_8.name());
+      } catch (IOException ioe) {
+        mLog.warn("Unable to record Bento cluster crash: " + ioe.getMessage());
+      }
+    }
+    mMarkerFiles.add(markerFile);
+  }
+
+  /** Stop polling. The unhealthy markers, if any, are left in place. */
+  public void stop() {
+    mExecutor.shutdownNow();
+  }
+
+  /**
+   * Pause polling, e.g. while the cluster components are stopped on purpose. Returns once any
+   * poll in progress completed.
+   */
+  public synchronized void pause() {
+    mPaused = true;
+  }
+
+  /** Resume polling, forgetting the states observed before the pause. */
+  public synchronized void resume() {
+    mLastStates = null;
+    mPaused = false;
+  }
+
+  /**
+   * Poll supervisor once and report the watched processes which left the RUNNING state since the
+   * previous poll. The first poll picks the processes to watch.
+   */
+  public synchronized void poll() {
+    if (mPaused) {
+      return;
+    }
+    final List<SupervisorClient.ProcessInfo> processes;
+    try {
+      processes = mSupervisor.getAllProcessInfo();
+      mUnreachablePolls = 0;
+    } catch (IOException ioe) {
+      mUnreachablePolls++;
+      if (mUnreachablePolls == MAX_UNREACHABLE_POLLS) {
+        reportCrash(String.format("supervisor unreachable for %d polls: %s",
+            mUnreachablePolls, ioe.getMessage()));
+      }
+      return;
+    }
+
+    final Map<String, String> states = Maps.newHashMap();
+    for (SupervisorClient.ProcessInfo process : processes) {
+      states.put(process.getName(), process.getStateName());
+    }
+    if (null == mLastStates) {
+      mLastStates = Maps.newHashMap();
+      for (Map.Entry<String, String> state : states.entrySet()) {
+        if (RUNNING.equals(state.getValue()) && !mIgnoredProcesses.contains(state.getKey())) {
+          mLastStates.put(state.getKey(), state.getValue());
+        }
+      }
+      return;
+    }
+
+    for (String name : ImmutableList.copyOf(mLastStates.keySet())) {
+      final String state = states.containsKey(name) ? states.get(name) : "MISSING";
+      if (RUNNING.equals(state)) {
+        if (mCrashed.remove(name)) {
+          mLog.warn(String.format("Bento cluster '%s' component '%s' is running again.",
+              mBentoName, name));
+        }
+      } else if (!mCrashed.contains(name)) {
+        mCrashed.add(name);
+        reportCrash(String.format("component '%s' went from %s to %s",
+            name, mLastStates.get(name), state));
+      }
+      mLastStates.put(name, state);
+    }
+  }
+
+  /**
+   * Record a crash in the crash log and the unhealthy markers.
+   *
+   * @param description of the crash.
+   */
+  private void reportCrash(String description) {
+    final String record = String.format("%s %s: %s\n",
+        new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ").format(new Date()),
+        mBentoName,
+        description);
+    mLog.error("Bento cluster is unhealthy: " + record.trim());
+    mCrashRecords.append(record);
+    try {
+      FileUtils.write(mCrashLogFile, record, Charsets.UTF_8.name(), true);
+      for (File markerFile : mMarkerFiles) {
+        FileUtils.write(markerFile, record, Charsets.UTF_8.name(), true);
+      }
+    } catch (IOException ioe) {
+      mLog.warn("Unable to record Bento cluster crash: " + ioe.getMessage());
+    }
+  }
+}
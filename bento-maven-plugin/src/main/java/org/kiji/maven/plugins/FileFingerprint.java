@@ -0,0 +1,77 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Computes content fingerprints of sets of files, e.g. the fixture inputs a cluster snapshot was
+ * seeded from. A fingerprint only depends on the paths of the files relative to their root
+ * directory and on their content, so it is the same in every checkout of a project.
+ */
+public final class FileFingerprint {
+  /** Disable default constructor. */
+  private FileFingerprint() {}
+
+  /**
+   * Compute the fingerprint of files and directory trees, and of extra strings.
+   *
+   * @param roots files or directories to fingerprint. Directories are traversed recursively;
+   *     roots which do not exist are fingerprinted as missing.
+   * @param extras strings to include in the fingerprint, e.g. configuration values.
+   * @return a hex encoded SHA-1 fingerprint.
+   * @throws IOException if a file can not be read.
+   */
+  public static String of(Collection<File> roots, Collection<String> extras) throws IOException {
+    final Hasher hasher = Hashing.sha1().newHasher();
+    for (String extra : extras) {
+      hasher.putString(extra, Charsets.UTF_8).putByte((byte) 0);
+    }
+    for (File root : roots) {
+      hasher.putString(root.getName(), Charsets.UTF_8).putByte((byte) 0);
+      if (!root.exists()) {
+        hasher.putString("<missing>", Charsets.UTF_8).putByte((byte) 0);
+        continue;
+      }
+      final List<File> files = root.isDirectory()
+          ? Lists.newArrayList(FileUtils.listFiles(root, null, true))
+          : Lists.newArrayList(root);
+      final String rootPath = root.getAbsolutePath();
+      for (File file : Ordering.natural().sortedCopy(files)) {
+        hasher.putString(file.getAbsolutePath().substring(rootPath.length()), Charsets.UTF_8)
+            .putByte((byte) 0)
+            .putLong(file.length())
+            .putBytes(Files.toByteArray(file));
+      }
+    }
+    return hasher.hash().toString();
+  }
+}
@@ -0,0 +1,411 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HColumnDescriptor;
+import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.HBaseAdmin;
+import org.apache.hadoop.hbase.client.HConnection;
+import org.apache.hadoop.hbase.client.HConnectionManager;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.HTableInterface;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Loads test fixtures into a cluster in bulk: local directories are uploaded to HDFS, and HBase
+ * tables are bulk loaded from prepared HFiles or filled from CSV files. Uploads and writes are
+ * spread over a fixed number of concurrent writers.
+ *
+ * Only Hadoop client APIs are used, so fixtures can be loaded into any cluster a configuration
+ * points to, such as a Bento cluster or Hadoop's in-process mini clusters.
+ */
+public final class FixtureLoader {
+  /** Size of the client-side write buffer of each CSV writer, in bytes. */
+  private static final long WRITE_BUFFER_BYTES = 8L * 1024 * 1024;
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Configuration of the cluster to load fixtures into. */
+  private final Configuration mConf;
+
+  /** Number of concurrent writers. */
+  private final int mWriters;
+
+  /**
+   * Construct a fixture loader.
+   *
+   * @param log The maven log.
+   * @param conf configuration of the cluster to load fixtures into.
+   * @param writers number of concurrent writers.
+   */
+  public FixtureLoader(Log log, Configuration conf, int writers) {
+    mLog = log;
+    mConf = conf;
+    mWriters = writers;
+  }
+
+  /**
+   * Create the configuration of the cluster whose site files are listed in a conf index, as
+   * published by the 'start' goal.
+   *
+   * @param confIndexFile listing the site files.
+   * @return the client configuration of the cluster.
+   * @throws IOException if the conf index can not be read.
+   */
+  public static Configuration createConf(File confIndexFile) throws IOException {
+    final Configuration conf = HBaseConfiguration.create();
+    for (String line : FileUtils.readLines(confIndexFile, Charsets.UTF_8.name())) {
+      final String trimmed = line.trim();
+      if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+        conf.addResource(new Path(new File(trimmed).toURI()));
+      }
+    }
+    return conf;
+  }
+
+  /** Amount of data loaded for one fixture and how long it took. */
+  public static final class LoadResult {
+    /** Description of the fixture. */
+    private final String mFixture;
+
+    /** Number of files or rows loaded. */
+    private final long mItems;
+
+    /** Number of bytes loaded. */
+    private final long mBytes;
+
+    /** How long loading took, in milliseconds. */
+    private final long mElapsedMs;
+
+    /**
+     * Construct a load result.
+     *
+     * @param fixture description of the fixture.
+     * @param items number of files or rows loaded.
+     * @param bytes number of bytes loaded.
+     * @param elapsedMs how long loading took, in milliseconds.
+     */
+    public LoadResult(String fixture, long items, long bytes, long elapsedMs) {
+      mFixture = fixture;
+      mItems = items;
+      mBytes = bytes;
+      mElapsedMs = elapsedMs;
+    }
+
+    /** @return number of files or rows loaded. */
+    public long getItems() {
+      return mItems;
+    }
+
+    /** @return number of bytes loaded. */
+    public long getBytes() {
+      return mBytes;
+    }
+
+    /** @return how long loading took, in milliseconds. */
+    public long getElapsedMs() {
+      return mElapsedMs;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      final double seconds = Math.max(1L, mElapsedMs) / 1000.0;
+      return String.format("%-50s %8d items %10.2f MB %8d ms %8.2f MB/s %10.1f items/s",
+          mFixture,
+          mItems,
+          mBytes / 1048576.0,
+          mElapsedMs,
+          mBytes / 1048576.0 / seconds,
+          mItems / seconds);
+    }
+  }
+
+  /**
+   * Upload the files of a local directory to HDFS, keeping their relative paths. Existing files
+   * are overwritten.
+   *
+   * @param localDir to upload.
+   * @param hdfsDir to upload to.
+   * @return the amount of data uploaded.
+   * @throws IOException if a file can not be uploaded.
+   */
+  public LoadResult loadHdfs(File localDir, final String hdfsDir) throws IOException {
+    final long start = System.currentTimeMillis();
+    final Collection<File> files = FileUtils.listFiles(localDir, null, true);
+    final FileSystem fs = FileSystem.get(mConf);
+    final AtomicLong bytes = new AtomicLong();
+    final String localRoot = localDir.getAbsolutePath();
+    final List<Callable<Void>> uploads = Lists.newArrayList();
+    for (final File file : files) {
+      uploads.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          final String relative = file.getAbsolutePath().substring(localRoot.length() + 1);
+          fs.copyFromLocalFile(
+              false, true, new Path(file.getAbsolutePath()), new Path(hdfsDir + "/" + relative));
+          bytes.addAndGet(file.length());
+          return null;
+        }
+      });
+    }
+    runAll(uploads);
+    return new LoadResult(
+        String.format("%s -> hdfs:%s", localDir, hdfsDir),
+        files.size(),
+        bytes.get(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Load an HBase table from a local source, creating the table if it does not exist.
+   *
+   * A directory is bulk loaded as prepared HFiles: it holds one subdirectory of HFiles per column
+   * family, as written by HFileOutputFormat. It is uploaded to a staging directory in HDFS first.
+   *
+   * A file is read as CSV: the first line names the columns, "rowkey" followed by
+   * "family:qualifier" for each column, and each other line holds a row key and the cell values.
+   * Values may not contain commas. The rows are written by concurrent writers.
+   *
+   * @param source directory of HFiles or CSV file.
+   * @param tableName of the table to load.
+   * @return the amount of data loaded.
+   * @throws IOException if the table can not be loaded.
+   */
+  public LoadResult loadHBase(File source, String tableName) throws IOException {
+    return source.isDirectory()
+        ? loadHFiles(source, tableName)
+        : loadCsv(source, tableName);
+  }
+
+  /**
+   * Bulk load a table from prepared HFiles.
+   *
+   * @param hfileDir holding one subdirectory of HFiles per column family.
+   * @param tableName of the table to load.
+   * @return the amount of data loaded.
+   * @throws IOException if the table can not be loaded.
+   */
+  private LoadResult loadHFiles(File hfileDir, String tableName) throws IOException {
+    final long start = System.currentTimeMillis();
+    final Set<String> families = Sets.newTreeSet();
+    final File[] familyDirs = hfileDir.listFiles();
+    if (null != familyDirs) {
+      for (File familyDir : familyDirs) {
+        if (familyDir.isDirectory() && !familyDir.getName().startsWith("_")) {
+          families.add(familyDir.getName());
+        }
+      }
+    }
+    ensureTable(tableName, families);
+
+    final String stagingDir = "/tmp/bento-bulkload-" + UUID.randomUUID();
+    final LoadResult upload = loadHdfs(hfileDir, stagingDir);
+    final HTable table = new HTable(mConf, tableName);
+    try {
+      new LoadIncrementalHFiles(mConf).doBulkLoad(new Path(stagingDir), table);
+    } catch (Exception e) {
+      throw new IOException("Unable to bulk load HFiles into table " + tableName, e);
+    } finally {
+      table.close();
+      FileSystem.get(mConf).delete(new Path(stagingDir), true);
+    }
+    return new LoadResult(
+        String.format("%s -> hbase:%s", hfileDir, tableName),
+        upload.getItems(),
+        upload.getBytes(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Fill a table from a CSV file.
+   *
+   * @param csvFile holding a header line and one row per line.
+   * @param tableName of the table to load.
+   * @return the amount of data loaded.
+   * @throws IOException if the table can not be loaded.
+   */
+  private LoadResult loadCsv(File csvFile, final String tableName) throws IOException {
+    final long start = System.currentTimeMillis();
+    final List<String> lines = FileUtils.readLines(csvFile, Charsets.UTF_8.name());
+    if (lines.isEmpty()) {
+      throw new IOException("CSV fixture has no header line: " + csvFile);
+    }
+    final List<String> header = Splitter.on(',').trimResults().splitToList(lines.get(0));
+    final List<byte[][]> columns = Lists.newArrayList();
+    final Set<String> families = Sets.newTreeSet();
+    for (String column : header.subList(1, header.size())) {
+      final int colon = column.indexOf(':');
+      if (colon <= 0) {
+        throw new IOException(String.format(
+            "CSV fixture %s column '%s' is not of the form family:qualifier.", csvFile, column));
+      }
+      families.add(column.substring(0, colon));
+      columns.add(new byte[][] {
+          Bytes.toBytes(column.substring(0, colon)),
+          Bytes.toBytes(column.substring(colon + 1)),
+      });
+    }
+    ensureTable(tableName, families);
+
+    final List<String> rows = lines.subList(1, lines.size());
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong rowCount = new AtomicLong();
+    final HConnection connection = HConnectionManager.createConnection(mConf);
+    try {
+      final List<Callable<Void>> writers = Lists.newArrayList();
+      for (int i = 0; i < mWriters; i++) {
+        final int writer = i;
+        writers.add(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            final HTableInterface table = connection.getTable(tableName);
+            try {
+              table.setAutoFlush(false, true);
+              table.setWriteBufferSize(WRITE_BUFFER_BYTES);
+              for (int row = writer; row < rows.size(); row += mWriters) {
+                final String line = rows.get(row);
+                if (line.trim().isEmpty()) {
+                  continue;
+                }
+                final List<String> values = Splitter.on(',').splitToList(line);
+                final Put put = new Put(Bytes.toBytes(values.get(0)));
+                for (int column = 0; column < columns.size(); column++) {
+                  if (column + 1 < values.size()) {
+                    put.add(columns.get(column)[0], columns.get(column)[1],
+                        Bytes.toBytes(values.get(column + 1)));
+                  }
+                }
+                if (!put.isEmpty()) {
+                  table.put(put);
+                  rowCount.incrementAndGet();
+                }
+                bytes.addAndGet(line.length());
+              }
+              table.flushCommits();
+            } finally {
+              table.close();
+            }
+            return null;
+          }
+        });
+      }
+      runAll(writers);
+    } finally {
+      connection.close();
+    }
+    return new LoadResult(
+        String.format("%s -> hbase:%s", csvFile, tableName),
+        rowCount.get(),
+        bytes.get(),
+        System.currentTimeMillis() - start);
+  }
+
+  /**
+   * Create a table with some column families, unless it exists.
+   *
+   * @param tableName of the table.
+   * @param families of the table.
+   * @throws IOException if the table can not be created.
+   */
+  private void ensureTable(String tableName, Set<String> families) throws IOException {
+    final HBaseAdmin admin = new HBaseAdmin(mConf);
+    try {
+      if (admin.tableExists(tableName)) {
+        return;
+      }
+      final HTableDescriptor descriptor = new HTableDescriptor(TableName.valueOf(tableName));
+      for (String family : families) {
+        descriptor.addFamily(new HColumnDescriptor(family));
+      }
+      mLog.info(String.format("Creating table %s with column families %s.", tableName, families));
+      admin.createTable(descriptor);
+    } finally {
+      admin.close();
+    }
+  }
+
+  /**
+   * Run tasks on the concurrent writers and wait for all of them.
+   *
+   * @param tasks to run.
+   * @throws IOException the first task failed with, once all tasks completed.
+   */
+  private void runAll(List<Callable<Void>> tasks) throws IOException {
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        mWriters,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("bento-fixture-writer-%d")
+            .build());
+    try {
+      final List<Future<Void>> futures = Lists.newArrayList();
+      for (Callable<Void> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      IOException failure = null;
+      for (Future<Void> future : futures) {
+        try {
+          Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException ee) {
+          if (null == failure) {
+            failure = (ee.getCause() instanceof IOException)
+                ? (IOException) ee.getCause()
+                : new IOException(ee.getCause());
+          }
+        }
+      }
+      if (null != failure) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
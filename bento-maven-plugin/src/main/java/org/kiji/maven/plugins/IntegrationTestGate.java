@@ -0,0 +1,391 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Decides whether the integration tests of a module need a cluster at all, so that the 'start'
+ * goal can skip booting one. A cluster is not needed when failsafe would run no test class, or
+ * when the inputs of the tests are unchanged since the last run in which they all passed.
+ *
+ * Test classes are found like failsafe does: classes of the test output directory matching the
+ * &lt;includes&gt; and &lt;excludes&gt; patterns of the failsafe executions, by default classes
+ * named IT*, *IT or *ITCase, or the "it.test" filter if one is given.
+ */
+public final class IntegrationTestGate {
+  /** Key of the failsafe plugin in the build plugins of a module. */
+  public static final String FAILSAFE_PLUGIN_KEY =
+      "org.apache.maven.plugins:maven-failsafe-plugin";
+
+  /** Default failsafe include patterns. */
+  private static final List<String> DEFAULT_INCLUDES =
+      ImmutableList.of("**/IT*.java", "**/*IT.java", "**/*ITCase.java");
+
+  /**
+   * Failsafe parameters selecting test classes in ways not mirrored here: the classes they select
+   * can not be found from the patterns alone.
+   */
+  private static final List<String> UNSUPPORTED_PARAMETERS =
+      ImmutableList.of("test", "includesFile", "excludesFile", "dependenciesToScan");
+
+  /** Failsafe goal running the integration tests. */
+  private static final String INTEGRATION_TEST_GOAL = "integration-test";
+
+  /** The include and exclude patterns of a failsafe execution. */
+  public static final class TestFilter {
+    /** Failsafe include patterns, e.g. "**&#47;*IT.java". */
+    private final List<String> mIncludes;
+
+    /** Failsafe exclude patterns. */
+    private final List<String> mExcludes;
+
+    /**
+     * Construct a filter.
+     *
+     * @param includes failsafe include patterns, e.g. "**&#47;*IT.java"; failsafe's default ones
+     *     if empty.
+     * @param excludes failsafe exclude patterns.
+     */
+    public TestFilter(List<String> includes, List<String> excludes) {
+      mIncludes = ImmutableList.copyOf(includes.isEmpty() ? DEFAULT_INCLUDES : includes);
+      mExcludes = ImmutableList.copyOf(excludes);
+    }
+  }
+
+  /** A count in the failsafe summary, e.g. "<failures>0</failures>". */
+  private static final Pattern SUMMARY_COUNT =
+      Pattern.compile("<(completed|errors|failures)>\\s*(\\d+)\\s*</\\1>");
+
+  /** Disable default constructor. */
+  private IntegrationTestGate() {}
+
+  /**
+   * Read the include and exclude patterns of the failsafe executions of a module.
+   *
+   * @param buildPlugins of the module, with their effective configuration.
+   * @return one filter per failsafe execution running the integration tests, or a single one if
+   *     failsafe is only run from the command line. Null if failsafe is not a build plugin of the
+   *     module, or if the patterns can not be read, e.g. because they are regular expressions or
+   *     listed in a file.
+   */
+  public static List<TestFilter> readFailsafeFilters(List<Plugin> buildPlugins) {
+    for (Plugin plugin : buildPlugins) {
+      if (!FAILSAFE_PLUGIN_KEY.equals(plugin.getKey())) {
+        continue;
+      }
+      final List<TestFilter> filters = Lists.newArrayList();
+      for (PluginExecution execution : plugin.getExecutions()) {
+        if (execution.getGoals().contains(INTEGRATION_TEST_GOAL)) {
+          filters.add(readFilter(execution.getConfiguration(), plugin.getConfiguration()));
+        }
+      }
+      if (filters.isEmpty()) {
+        filters.add(readFilter(plugin.getConfiguration()));
+      }
+      return filters.contains(null) ? null : filters;
+    }
+    return null;
+  }
+
+  /**
+   * Read the include and exclude patterns of a failsafe execution.
+   *
+   * @param configurations of the execution, the first ones overriding the next ones, e.g. the
+   *     execution configuration then the plugin configuration. Null entries are ignored.
+   * @return the filter, or null if the patterns can not be read.
+   */
+  private static TestFilter readFilter(Object... configurations) {
+    for (Object configuration : configurations) {
+      if ((null != configuration) && !(configuration instanceof Xpp3Dom)) {
+        return null;
+      }
+    }
+    for (String parameter : UNSUPPORTED_PARAMETERS) {
+      if (null != findParameter(parameter, configurations)) {
+        return null;
+      }
+    }
+    final List<String> includes = readPatterns(findParameter("includes", configurations));
+    final List<String> excludes = readPatterns(findParameter("excludes", configurations));
+    if ((null == includes) || (null == excludes)) {
+      return null;
+    }
+    return new TestFilter(includes, excludes);
+  }
+
+  /**
+   * Find a parameter in the first configuration setting it.
+   *
+   * @param name of the parameter.
+   * @param configurations to search, the first ones overriding the next ones.
+   * @return the parameter, or null if no configuration sets it.
+   */
+  private static Xpp3Dom findParameter(String name, Object... configurations) {
+    for (Object configuration : configurations) {
+      final Xpp3Dom parameter = (null == configuration)
+          ? null
+          : ((Xpp3Dom) configuration).getChild(name);
+      if (null != parameter) {
+        return parameter;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read the patterns of an &lt;includes&gt; or &lt;excludes&gt; parameter.
+   *
+   * @param parameter holding one pattern, or comma separated patterns, per child; or null.
+   * @return the patterns, empty if the parameter is null; or null if a pattern is a regular
+   *     expression or an expression left unresolved.
+   */
+  private static List<String> readPatterns(Xpp3Dom parameter) {
+    final List<String> patterns = Lists.newArrayList();
+    if (null == parameter) {
+      return patterns;
+    }
+    for (Xpp3Dom child : parameter.getChildren()) {
+      if (null == child.getValue()) {
+        continue;
+      }
+      for (String pattern
+          : Splitter.on(',').trimResults().omitEmptyStrings().split(child.getValue())) {
+        if (pattern.startsWith("%regex[") || pattern.contains("${")) {
+          return null;
+        }
+        patterns.add(pattern.replaceFirst("^%ant\\[(.*)\\]$", "$1"));
+      }
+    }
+    return patterns;
+  }
+
+  /**
+   * Find the integration test classes failsafe would run with its default configuration.
+   *
+   * @param testClassesDir the test output directory.
+   * @param itTest the "it.test" filter, see {@link #findTestClasses(File, String, List)}.
+   * @return the relative paths of the test classes, without ".class" suffix, e.g.
+   *     "org/kiji/FooIT"; sorted.
+   */
+  public static List<String> findTestClasses(File testClassesDir, String itTest) {
+    return findTestClasses(testClassesDir, itTest, ImmutableList.of(
+        new TestFilter(ImmutableList.<String>of(), ImmutableList.<String>of())));
+  }
+
+  /**
+   * Find the integration test classes failsafe would run.
+   *
+   * @param testClassesDir the test output directory.
+   * @param itTest the "it.test" filter: comma separated class name patterns, optionally with a
+   *     package path and a "#method" suffix. Patterns starting with "!" exclude classes. Overrides
+   *     the filters of the failsafe executions, as it does in failsafe. Null or empty to run the
+   *     integration test classes selected by the filters.
+   * @param filters of the failsafe executions; a class is run if any execution runs it.
+   * @return the relative paths of the test classes, without ".class" suffix, e.g.
+   *     "org/kiji/FooIT"; sorted.
+   */
+  public static List<String> findTestClasses(
+      File testClassesDir,
+      String itTest,
+      List<TestFilter> filters
+  ) {
+    final List<Pattern> includes = Lists.newArrayList();
+    final List<Pattern> excludes = Lists.newArrayList();
+    if (null != itTest) {
+      for (String filter : Splitter.on(',').trimResults().omitEmptyStrings().split(itTest)) {
+        if (filter.startsWith("!")) {
+          excludes.add(toPattern(filter.substring(1)));
+        } else {
+          includes.add(toPattern(filter));
+        }
+      }
+    }
+    // Without an it.test include, the classes are selected by the failsafe executions.
+    final List<List<Pattern>> executionIncludes = Lists.newArrayList();
+    final List<List<Pattern>> executionExcludes = Lists.newArrayList();
+    for (TestFilter filter : filters) {
+      executionIncludes.add(toPatterns(filter.mIncludes));
+      executionExcludes.add(toPatterns(filter.mExcludes));
+    }
+
+    if (!testClassesDir.isDirectory()) {
+      return Lists.newArrayList();
+    }
+    final Set<String> testClasses = Sets.newHashSet();
+    final String rootPath = testClassesDir.getAbsolutePath();
+    for (File file : FileUtils.listFiles(testClassesDir, new String[] {"class"}, true)) {
+      final String path = file.getAbsolutePath()
+          .substring(rootPath.length() + 1)
+          .replace(File.separatorChar, '/')
+          .replaceFirst("\\.class$", "");
+      final String name = path.substring(path.lastIndexOf('/') + 1);
+      if (name.contains("$")) {
+        // Nested classes are run through their enclosing class.
+        continue;
+      }
+      if (matchesAny(excludes, path)) {
+        continue;
+      }
+      if (!includes.isEmpty()) {
+        if (matchesAny(includes, path)) {
+          testClasses.add(path);
+        }
+        continue;
+      }
+      for (int i = 0; i < executionIncludes.size(); i++) {
+        if (matchesAny(executionIncludes.get(i), path)
+            && !matchesAny(executionExcludes.get(i), path)) {
+          testClasses.add(path);
+        }
+      }
+    }
+    return Ordering.natural().sortedCopy(testClasses);
+  }
+
+  /**
+   * Convert failsafe patterns to regular expressions over class paths.
+   *
+   * @param filters failsafe patterns, e.g. "**&#47;*IT.java".
+   * @return the regular expressions.
+   */
+  private static List<Pattern> toPatterns(List<String> filters) {
+    final List<Pattern> patterns = Lists.newArrayList();
+    for (String filter : filters) {
+      patterns.add(toPattern(filter));
+    }
+    return patterns;
+  }
+
+  /**
+   * Convert an "it.test" or failsafe pattern to a regular expression over class paths. A pattern
+   * without package path matches classes of that simple name in any package.
+   *
+   * @param filter e.g. "FooIT", "Foo*IT#testBar", "org/kiji/*IT" or "**&#47;*IT.java".
+   * @return the regular expression.
+   */
+  private static Pattern toPattern(String filter) {
+    // A qualified class name, e.g. "org.kiji.FooIT", is a path too.
+    final String glob = filter
+        .replaceFirst("#.*$", "")
+        .replaceFirst("\\.(java|class)$", "")
+        .replace('.', '/');
+    final StringBuilder regex = new StringBuilder(glob.contains("/") ? "" : "(?:.*/)?");
+    for (int i = 0; i < glob.length(); i++) {
+      final char c = glob.charAt(i);
+      if (glob.startsWith("**/", i)) {
+        // Any package, including the default one.
+        regex.append("(?:.*/)?");
+        i += 2;
+      } else if ('*' == c) {
+        final boolean anyDepth = (i + 1 < glob.length()) && ('*' == glob.charAt(i + 1));
+        regex.append(anyDepth ? ".*" : "[^/]*");
+        i += anyDepth ? 1 : 0;
+      } else if ('?' == c) {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(Character.toString(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  /**
+   * Check if a class matches any of some patterns.
+   *
+   * @param patterns to match.
+   * @param path of the class, e.g. "org/kiji/FooIT".
+   * @return whether any pattern matches.
+   */
+  private static boolean matchesAny(List<Pattern> patterns, String path) {
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether a failsafe summary reports a run in which tests ran and all of them passed.
+   *
+   * @param summaryFile the failsafe-summary.xml written by the 'integration-test' goal.
+   * @return whether the run was green; false if the summary does not exist.
+   * @throws IOException if the summary can not be read.
+   */
+  public static boolean isGreen(File summaryFile) throws IOException {
+    if (!summaryFile.isFile()) {
+      return false;
+    }
+    final String summary = Files.toString(summaryFile, Charsets.UTF_8);
+    int completed = 0;
+    int failed = 0;
+    final Matcher matcher = SUMMARY_COUNT.matcher(summary);
+    while (matcher.find()) {
+      final int count = Integer.parseInt(matcher.group(2));
+      if ("completed".equals(matcher.group(1))) {
+        completed += count;
+      } else {
+        failed += count;
+      }
+    }
+    return (completed > 0) && (0 == failed);
+  }
+
+  /**
+   * Read the fingerprint of the inputs of the last green run.
+   *
+   * @param recordFile the fingerprint was recorded in.
+   * @return the fingerprint, or null if none was recorded.
+   * @throws IOException if the record can not be read.
+   */
+  public static String readGreenFingerprint(File recordFile) throws IOException {
+    return recordFile.isFile() ? Files.toString(recordFile, Charsets.UTF_8).trim() : null;
+  }
+
+  /**
+   * Record the fingerprint of the inputs of a green run.
+   *
+   * @param recordFile to record the fingerprint in; overwritten.
+   * @param fingerprint of the inputs.
+   * @throws IOException if the record can not be written.
+   */
+  public static void writeGreenFingerprint(File recordFile, String fingerprint)
+      throws IOException {
+    FileUtils.write(recordFile, fingerprint + "\n", Charsets.UTF_8.name());
+  }
+}
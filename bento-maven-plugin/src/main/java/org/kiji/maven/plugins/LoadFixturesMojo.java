@@ -0,0 +1,220 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven goal which bulk loads test fixtures into the Bento cluster, after the 'start' goal
+ * published its site files: local directories are uploaded to HDFS and HBase tables are loaded
+ * from prepared HFiles or CSV files. When the 'start' goal started one cluster per failsafe fork,
+ * the fixtures are loaded into every cluster.
+ *
+ * Hadoop and HBase are not bundled with the plugin, so that fixtures are loaded with the client
+ * versions the project tests against: they must be added to the plugin's dependencies.
+ */
+@Mojo(
+    name = "load-fixtures",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    threadSafe = true
+)
+public class LoadFixturesMojo extends AbstractMojo {
+  /** If true, this goal should be a no-op. */
+  @Parameter(property = "skip", alias = "skip", defaultValue = "false")
+  private boolean mSkip;
+
+  /** The directory the 'start' goal published the site files of the cluster to. */
+  @Parameter(
+      property = "site.files.dir.path",
+      alias = "site.files.dir.path",
+      defaultValue="${project.build.testOutputDirectory}/",
+      required = true
+  )
+  private File mSiteFilesOutputDirPath;
+
+  /**
+   * Local directories to upload to HDFS, as "localDir=hdfsDir", e.g.
+   * "src/test/fixtures/logs=/data/logs". Relative local paths are resolved against the project
+   * base directory.
+   */
+  @Parameter(property = "bento.hdfs.fixtures", alias = "bento.hdfs.fixtures")
+  private List<String> mHdfsFixtures;
+
+  /**
+   * HBase tables to load, as "table=source", where the source is either a directory holding one
+   * subdirectory of HFiles per column family, or a CSV file whose header line is "rowkey" followed
+   * by "family:qualifier" for each column. Missing tables are created.
+   */
+  @Parameter(property = "bento.hbase.fixtures", alias = "bento.hbase.fixtures")
+  private List<String> mHBaseFixtures;
+
+  /** Number of concurrent writers uploading files or writing rows. */
+  @Parameter(
+      property = "bento.fixtures.writers",
+      alias = "bento.fixtures.writers",
+      defaultValue = "4",
+      required = true
+  )
+  private int mWriters;
+
+  /** Base directory of the project, which relative fixture paths are resolved against. */
+  @Parameter(defaultValue = "${project.basedir}", readonly = true)
+  private File mBaseDir;
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (mSkip) {
+      getLog().info("Not loading fixtures because skip=true.");
+      return;
+    }
+    if (mWriters < 1) {
+      throw new MojoExecutionException("bento.fixtures.writers must be at least 1.");
+    }
+    final Map<File, String> hdfsFixtures = parseFixtures(mHdfsFixtures, true);
+    final Map<File, String> hbaseFixtures = parseFixtures(mHBaseFixtures, false);
+    if (hdfsFixtures.isEmpty() && hbaseFixtures.isEmpty()) {
+      getLog().info("No fixtures to load.");
+      return;
+    }
+
+    for (File confIndexFile : findConfIndexFiles()) {
+      getLog().info("Loading fixtures into the cluster of " + confIndexFile.getAbsolutePath());
+      try {
+        load(confIndexFile, hdfsFixtures, hbaseFixtures);
+      } catch (NoClassDefFoundError ncdfe) {
+        throw new MojoExecutionException(
+            "Hadoop and HBase are not on the plugin classpath. Add hadoop-client, hbase-client and"
+            + " hbase-server to the dependencies of the bento-maven-plugin.", ncdfe);
+      } catch (IOException ioe) {
+        throw new MojoExecutionException("Unable to load fixtures: " + ioe.getMessage(), ioe);
+      }
+    }
+  }
+
+  /**
+   * Load every fixture into one cluster and log the throughput of each.
+   *
+   * @param confIndexFile listing the site files of the cluster.
+   * @param hdfsFixtures local directories to upload, mapped to their HDFS directory.
+   * @param hbaseFixtures table sources, mapped to their table name.
+   * @throws IOException if a fixture can not be loaded.
+   */
+  private void load(
+      File confIndexFile,
+      Map<File, String> hdfsFixtures,
+      Map<File, String> hbaseFixtures
+  ) throws IOException {
+    final FixtureLoader loader =
+        new FixtureLoader(getLog(), FixtureLoader.createConf(confIndexFile), mWriters);
+    final List<FixtureLoader.LoadResult> results = Lists.newArrayList();
+    for (Map.Entry<File, String> fixture : hdfsFixtures.entrySet()) {
+      results.add(loader.loadHdfs(fixture.getKey(), fixture.getValue()));
+    }
+    for (Map.Entry<File, String> fixture : hbaseFixtures.entrySet()) {
+      results.add(loader.loadHBase(fixture.getKey(), fixture.getValue()));
+    }
+    final StringBuilder report = new StringBuilder(
+        String.format("Loaded %d fixtures with %d writers:", results.size(), mWriters));
+    for (FixtureLoader.LoadResult result : results) {
+      report.append(String.format("%n  %s", result));
+    }
+    getLog().info(report.toString());
+  }
+
+  /**
+   * Find the conf index of each cluster: the one in the site files directory, or, when one cluster
+   * was started per failsafe fork, the one in each fork directory.
+   *
+   * @return the conf index files.
+   * @throws MojoExecutionException if no conf index exists.
+   */
+  private List<File> findConfIndexFiles() throws MojoExecutionException {
+    final List<File> confIndexFiles = Lists.newArrayList();
+    final File confIndexFile =
+        new File(mSiteFilesOutputDirPath, SiteFilePublisher.CONF_INDEX_FILE_NAME);
+    if (confIndexFile.isFile()) {
+      confIndexFiles.add(confIndexFile);
+    } else {
+      final File[] forkDirs = mSiteFilesOutputDirPath.listFiles();
+      if (null != forkDirs) {
+        for (File forkDir : forkDirs) {
+          final File forkConfIndexFile =
+              new File(forkDir, SiteFilePublisher.CONF_INDEX_FILE_NAME);
+          if (forkDir.getName().startsWith(StartMojo.FORK_DIR_PREFIX)
+              && forkConfIndexFile.isFile()) {
+            confIndexFiles.add(forkConfIndexFile);
+          }
+        }
+      }
+    }
+    if (confIndexFiles.isEmpty()) {
+      throw new MojoExecutionException(String.format(
+          "No conf index in %s. Run the 'start' goal before loading fixtures.",
+          mSiteFilesOutputDirPath.getAbsolutePath()));
+    }
+    return confIndexFiles;
+  }
+
+  /**
+   * Parse fixtures of the form "key=value" into a map from local file to destination.
+   *
+   * @param fixtures to parse, or null.
+   * @param localFirst whether the local path is the key (HDFS) or the value (HBase).
+   * @return the local files, mapped to their destination, in declaration order.
+   * @throws MojoExecutionException if a fixture is malformed or its local file does not exist.
+   */
+  private Map<File, String> parseFixtures(List<String> fixtures, boolean localFirst)
+      throws MojoExecutionException {
+    final Map<File, String> parsed = Maps.newLinkedHashMap();
+    if (null == fixtures) {
+      return parsed;
+    }
+    for (String fixture : fixtures) {
+      final int equals = fixture.indexOf('=');
+      if (equals <= 0 || equals == fixture.length() - 1) {
+        throw new MojoExecutionException(String.format("Malformed fixture '%s', expected %s.",
+            fixture, localFirst ? "localDir=hdfsDir" : "table=source"));
+      }
+      final String key = fixture.substring(0, equals).trim();
+      final String value = fixture.substring(equals + 1).trim();
+      File local = new File(localFirst ? key : value);
+      if (!local.isAbsolute()) {
+        local = new File(mBaseDir, local.getPath());
+      }
+      if (!local.exists() || (localFirst && !local.isDirectory())) {
+        throw new MojoExecutionException("Fixture does not exist: " + local.getAbsolutePath());
+      }
+      parsed.put(local, localFirst ? value : key);
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Rewrites small line-oriented files shared by concurrent builds, e.g. rolling histories under
+ * ~/.bento, while holding both a JVM-wide monitor and a file lock on them. File locks only exclude
+ * other processes: a JVM can not lock a file twice, so the modules of a parallel build are
+ * serialized by a monitor per canonical path.
+ */
+final class LockedFiles {
+  /** Computes the new content of a file from its current content. */
+  interface Update {
+    /**
+     * Compute the new lines of a file.
+     *
+     * @param lines the non-empty lines of the file; may be modified and returned.
+     * @return the lines to write back.
+     */
+    List<String> apply(List<String> lines);
+  }
+
+  /** Monitors serializing the rewrites of this JVM, by canonical path. */
+  private static final Map<String, Object> MONITORS = Maps.newHashMap();
+
+  /** Disable default constructor. */
+  private LockedFiles() {}
+
+  /**
+   * Rewrite a file under lock. The file and its parent directories are created if needed.
+   *
+   * @param file to rewrite.
+   * @param update maps the non-empty lines of the file to the lines to write back.
+   * @throws IOException if the file can not be read or written.
+   */
+  static void rewrite(File file, Update update) throws IOException {
+    FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+    synchronized (monitor(file)) {
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        final FileLock lock = raf.getChannel().lock();
+        try {
+          final byte[] content = new byte[(int) raf.length()];
+          raf.readFully(content);
+          final List<String> lines = update.apply(Lists.newArrayList(
+              Splitter.on('\n').omitEmptyStrings().split(new String(content, Charsets.UTF_8))));
+          raf.seek(0);
+          raf.write((Joiner.on('\n').join(lines) + "\n").getBytes(Charsets.UTF_8));
+          raf.setLength(raf.getFilePointer());
+        } finally {
+          lock.release();
+        }
+      } finally {
+        raf.close();
+      }
+    }
+  }
+
+  /**
+   * Get the monitor serializing the rewrites of a file by this JVM.
+   *
+   * @param file to rewrite.
+   * @return the monitor, the same for every path of the file.
+   * @throws IOException if the canonical path of the file can not be resolved.
+   */
+  private static Object monitor(File file) throws IOException {
+    final String path = file.getCanonicalPath();
+    synchronized (MONITORS) {
+      if (!MONITORS.containsKey(path)) {
+        MONITORS.put(path, new Object());
+      }
+      return MONITORS.get(path);
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.MiniHBaseCluster;
+import org.apache.hadoop.hbase.zookeeper.MiniZooKeeperCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link ClusterBackend} running Hadoop's MiniDFSCluster, a ZooKeeper server and HBase's mini
+ * cluster inside the build JVM. It starts in seconds rather than minutes and needs no Docker, for
+ * test suites which only need HDFS and HBase semantics: there is no MapReduce or YARN. HDFS is
+ * laid out like a fresh Bento cluster, with HBase in /hbase and empty /tmp, /user and /var
+ * directories.
+ *
+ * Its site files hold only what clients need to connect: the HDFS URI in core-site.xml, and the
+ * ZooKeeper quorum and root directory of HBase in hbase-site.xml.
+ *
+ * The mini clusters are not bundled with the plugin: hbase-testing-util and hadoop-minicluster
+ * must be added to the plugin's dependencies.
+ */
+public final class MiniClusterBackend implements ClusterBackend {
+  /** HBase configuration keys copied to the published hbase-site.xml. */
+  private static final String[] HBASE_CLIENT_KEYS = {
+      "hbase.zookeeper.quorum",
+      "hbase.zookeeper.property.clientPort",
+      "zookeeper.znode.parent",
+      "hbase.rootdir",
+  };
+
+  /** HDFS directories created by the hdfs-init service of a Bento cluster. */
+  private static final String[] BENTO_HDFS_DIRS = {"/tmp", "/user", "/var"};
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Name of the cluster. */
+  private final String mName;
+
+  /** Directory the mini clusters keep their data in; deleted when the cluster stops. */
+  private final File mDataDir;
+
+  /** Durations of the lifecycle phases of the cluster. */
+  private volatile PhaseTimings mTimings = new PhaseTimings();
+
+  /** The running HDFS cluster, or null. */
+  private MiniDFSCluster mDfsCluster = null;
+
+  /** The running ZooKeeper server, or null. */
+  private MiniZooKeeperCluster mZooKeeperCluster = null;
+
+  /** The running HBase cluster, or null. */
+  private MiniHBaseCluster mHBaseCluster = null;
+
+  /** Site files of the running cluster, or null if it is not running. */
+  private volatile Map<String, byte[]> mSiteFiles = null;
+
+  /**
+   * Construct a handle on mini clusters. Nothing is started until {@link #start()} is called.
+   *
+   * @param log The maven log.
+   * @param name of the cluster.
+   * @param dataDir directory to keep the cluster data in.
+   */
+  public MiniClusterBackend(Log log, String name, File dataDir) {
+    mLog = log;
+    mName = name;
+    mDataDir = dataDir;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getBentoName() {
+    return mName;
+  }
+
+  /**
+   * Mini clusters start synchronously in the build JVM and fail fast, so the startup timeout is
+   * not enforced.
+   *
+   * @param startupTimeoutMs ignored.
+   */
+  @Override
+  public void setStartupTimeoutMs(long startupTimeoutMs) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void start() throws Exception {
+    if (null != mDfsCluster) {
+      throw new IllegalStateException(
+          String.format("Mini cluster '%s' is already running.", mName));
+    }
+    mLog.info(String.format("Starting the HDFS and HBase mini cluster '%s' in %s...",
+        mName, mDataDir.getAbsolutePath()));
+    FileUtils.deleteQuietly(mDataDir);
+    final Configuration conf = HBaseConfiguration.create();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, new File(mDataDir, "dfs").getAbsolutePath());
+    // Bind every daemon to a free port, so that several mini clusters can run side by side.
+    conf.setInt("hbase.master.port", 0);
+    conf.setInt("hbase.master.info.port", -1);
+    conf.setInt("hbase.regionserver.port", 0);
+    conf.setInt("hbase.regionserver.info.port", -1);
+
+    try {
+      long phaseStart = System.currentTimeMillis();
+      mDfsCluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      final FileSystem fs = mDfsCluster.getFileSystem();
+      conf.set("fs.defaultFS", fs.getUri().toString());
+      for (String dir : BENTO_HDFS_DIRS) {
+        fs.mkdirs(new Path(dir));
+      }
+      fs.setPermission(new Path("/tmp"), new FsPermission((short) 01777));
+      phaseStart = mTimings.recordSince("mini.dfs.start", phaseStart);
+
+      mZooKeeperCluster = new MiniZooKeeperCluster(conf);
+      final int zooKeeperPort = mZooKeeperCluster.startup(new File(mDataDir, "zookeeper"));
+      conf.set("hbase.zookeeper.quorum", "localhost");
+      conf.setInt("hbase.zookeeper.property.clientPort", zooKeeperPort);
+      phaseStart = mTimings.recordSince("mini.zookeeper.start", phaseStart);
+
+      conf.set("hbase.rootdir", fs.getUri() + "/hbase");
+      mHBaseCluster = new MiniHBaseCluster(conf, 1);
+      mTimings.recordSince("mini.hbase.start", phaseStart);
+    } catch (Exception e) {
+      shutdown();
+      throw e;
+    }
+    mSiteFiles = createSiteFiles(conf);
+  }
+
+  /**
+   * Write the client configuration of the running mini clusters as site files.
+   *
+   * @param conf of the running mini clusters.
+   * @return the content of each site file, by file name.
+   * @throws IOException if the site files can not be written.
+   */
+  private static Map<String, byte[]> createSiteFiles(Configuration conf) throws IOException {
+    final Configuration coreSite = new Configuration(false);
+    coreSite.set("fs.defaultFS", conf.get("fs.defaultFS"));
+    final Configuration hbaseSite = new Configuration(false);
+    for (String key : HBASE_CLIENT_KEYS) {
+      if (null != conf.get(key)) {
+        hbaseSite.set(key, conf.get(key));
+      }
+    }
+    return ImmutableMap.of(
+        "core-site.xml", toXml(coreSite),
+        "hbase-site.xml", toXml(hbaseSite));
+  }
+
+  /**
+   * Serialize a configuration as a site file.
+   *
+   * @param conf to serialize.
+   * @return the site file content.
+   * @throws IOException if the configuration can not be serialized.
+   */
+  private static byte[] toXml(Configuration conf) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    conf.writeXml(out);
+    return out.toByteArray();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, byte[]> getSiteFiles() throws IOException {
+    final Map<String, byte[]> siteFiles = mSiteFiles;
+    if (null == siteFiles) {
+      throw new IOException(String.format("Mini cluster '%s' is not running.", mName));
+    }
+    return siteFiles;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PhaseTimings getTimings() {
+    return mTimings;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reportTimings(File reportFile, File historyFile, String goal) {
+    // The next report only covers the phases recorded from now on, e.g. those of the stop.
+    final PhaseTimings timings = mTimings;
+    mTimings = new PhaseTimings();
+    timings.log(mLog, String.format("Mini cluster '%s' %s timings", mName, goal));
+    try {
+      timings.write(
+          reportFile, historyFile, ImmutableMap.of("bento.name", mName, "goal", goal));
+    } catch (IOException ioe) {
+      mLog.warn("Unable to write mini cluster timing report: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Mini clusters run inside the build JVM, whose own log shows their failures, so they are not
+   * watched.
+   *
+   * @param markerFile ignored.
+   * @param crashLogFile ignored.
+   * @param intervalMs ignored.
+   */
+  @Override
+  public void startWatchdog(File markerFile, File crashLogFile, long intervalMs) {
+    mLog.debug(String.format("Mini cluster '%s' is not watched for crashes.", mName));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void stopWatchdog() {}
+
+  /**
+   * Mini clusters run inside the build JVM, so their resource usage is not sampled apart from it.
+   *
+   * @param seriesFile ignored.
+   * @param intervalMs ignored.
+   */
+  @Override
+  public void startSampler(File seriesFile, long intervalMs) {
+    mLog.debug(String.format("Mini cluster '%s' resource usage is not sampled.", mName));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void stopSampler(File summaryFile) {}
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void stop() throws Exception {
+    if (null == mDfsCluster) {
+      mLog.error("Attempting to shut down a mini cluster, but none running.");
+      return;
+    }
+    mLog.info(String.format("Stopping the HDFS and HBase mini cluster '%s'...", mName));
+    final long phaseStart = System.currentTimeMillis();
+    shutdown();
+    mTimings.recordSince("stop", phaseStart);
+  }
+
+  /**
+   * Shut down whichever mini clusters are running, in reverse start order, and delete their data.
+   *
+   * @throws IOException if a mini cluster fails to shut down.
+   */
+  private void shutdown() throws IOException {
+    mSiteFiles = null;
+    try {
+      if (null != mHBaseCluster) {
+        mHBaseCluster.shutdown();
+        mHBaseCluster.waitUntilShutDown();
+      }
+      if (null != mZooKeeperCluster) {
+        mZooKeeperCluster.shutdown();
+      }
+    } finally {
+      mHBaseCluster = null;
+      mZooKeeperCluster = null;
+      if (null != mDfsCluster) {
+        mDfsCluster.shutdown();
+        mDfsCluster = null;
+      }
+      FileUtils.deleteQuietly(mDataDir);
+    }
+  }
+}
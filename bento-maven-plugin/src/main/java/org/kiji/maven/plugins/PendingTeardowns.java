@@ -0,0 +1,206 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Tears down Bento clusters in detached background processes, so that the build does not wait for
+ * 'bento stop' and 'bento rm'. Each teardown is recorded by a marker file in a directory shared by
+ * all builds, which the background process deletes once the container is gone. Markers left
+ * behind by teardowns that failed, or were killed, are reaped by a later build.
+ */
+public final class PendingTeardowns {
+  /** Suffix of the marker files. */
+  private static final String MARKER_SUFFIX = ".properties";
+
+  /** Property holding the name of the cluster to tear down. */
+  private static final String BENTO_NAME_KEY = "bento.name";
+
+  /** Property holding the path to the bento-cluster installation of the cluster. */
+  private static final String BENTO_DIR_KEY = "bento.dir.path";
+
+  /**
+   * Shell script running the script given as its first argument in a new session, so that the
+   * teardown is neither killed by a hangup nor along with the process group of the build, e.g.
+   * when the build is interrupted from the terminal. Falls back to ignoring hangups where setsid
+   * is not available, e.g. on OS X.
+   */
+  private static final String DETACH_SCRIPT = "if command -v setsid >/dev/null 2>&1; "
+      + "then exec setsid sh -c \"$1\"; else exec nohup sh -c \"$1\"; fi";
+
+  /** The docker command found on the PATH. */
+  private static final String DOCKER = "docker";
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Directory holding the markers and the logs of the background teardowns. */
+  private final File mDir;
+
+  /** The docker command checking whether a container is gone. */
+  private final String mDocker;
+
+  /**
+   * Construct a handle on a pending teardowns directory. The directory need not exist.
+   *
+   * @param log The maven log.
+   * @param dir holding the markers and the logs of the background teardowns.
+   */
+  public PendingTeardowns(Log log, File dir) {
+    this(log, dir, DOCKER);
+  }
+
+  /**
+   * Construct a handle on a pending teardowns directory, checking containers with a given docker
+   * command, e.g. a stub in tests.
+   *
+   * @param log The maven log.
+   * @param dir holding the markers and the logs of the background teardowns.
+   * @param docker the docker command.
+   */
+  PendingTeardowns(Log log, File dir, String docker) {
+    mLog = log;
+    mDir = dir;
+    mDocker = docker;
+  }
+
+  /**
+   * Record a pending teardown of a cluster and launch it in a background process which outlives
+   * this JVM, in a session of its own. The process output is written to "&lt;bento-name&gt;.log"
+   * in the markers directory.
+   *
+   * @param cluster to tear down.
+   * @throws IOException if the marker can not be written or the process can not be launched.
+   */
+  public void launch(BentoCluster cluster) throws IOException {
+    final File marker = markerFile(cluster.getBentoName());
+    final Properties properties = new Properties();
+    properties.setProperty(BENTO_NAME_KEY, cluster.getBentoName());
+    properties.setProperty(BENTO_DIR_KEY, cluster.getBentoDirPath().getAbsolutePath());
+    FileUtils.forceMkdir(mDir);
+    final OutputStream out = new FileOutputStream(marker);
+    try {
+      properties.store(out, "Bento cluster teardown pending in the background.");
+    } finally {
+      out.close();
+    }
+
+    final File logFile = new File(mDir, cluster.getBentoName() + ".log");
+    final Process process = new ProcessBuilder(
+        "sh", "-c", DETACH_SCRIPT, "sh", teardownScript(properties, marker))
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+        .start();
+    process.getOutputStream().close();
+    mLog.info(String.format("Tearing down the Bento cluster '%s' in the background; see %s",
+        cluster.getBentoName(), logFile.getAbsolutePath()));
+  }
+
+  /**
+   * Synchronously tear down the clusters whose pending teardown was recorded long enough ago that
+   * its background process must have ended. A marker is deleted once its cluster is gone.
+   *
+   * @param staleAfterMs how old a marker must be to be reaped, in milliseconds.
+   * @param timeoutMs how long the teardown of one cluster may run before it is killed and its
+   *     marker left for a later build, or 0 for no deadline.
+   * @return the number of clusters torn down.
+   */
+  public int reap(long staleAfterMs, long timeoutMs) {
+    final File[] markers = mDir.listFiles();
+    if (null == markers) {
+      return 0;
+    }
+    final long staleBefore = System.currentTimeMillis() - staleAfterMs;
+    int reaped = 0;
+    for (File marker : markers) {
+      if (!marker.getName().endsWith(MARKER_SUFFIX) || (marker.lastModified() > staleBefore)) {
+        continue;
+      }
+      try {
+        final Properties properties = new Properties();
+        final InputStream in = new FileInputStream(marker);
+        try {
+          properties.load(in);
+        } finally {
+          in.close();
+        }
+        mLog.info(String.format("Reaping the Bento cluster '%s' whose teardown did not complete.",
+            properties.getProperty(BENTO_NAME_KEY)));
+        ShellExecUtil.execute(ImmutableList.of(
+            "sh", "-c", teardownScript(properties, marker)), mLog, null, null, timeoutMs);
+        if (marker.exists()) {
+          mLog.warn("Unable to tear down Bento cluster; leaving " + marker.getAbsolutePath());
+        } else {
+          reaped++;
+        }
+      } catch (IOException ioe) {
+        mLog.warn(String.format("Unable to reap %s: %s", marker.getAbsolutePath(), ioe));
+      }
+    }
+    return reaped;
+  }
+
+  /**
+   * Locate the marker of a pending teardown.
+   *
+   * @param bentoName name of the cluster to tear down.
+   * @return the marker file.
+   */
+  private File markerFile(String bentoName) {
+    return new File(mDir, bentoName + MARKER_SUFFIX);
+  }
+
+  /**
+   * Build the shell script tearing down a cluster: stop and remove the container, then delete the
+   * marker if the container is gone, whether it was removed now or earlier. The marker is kept
+   * when docker can not tell, e.g. because its daemon is unreachable, so that a later build
+   * retries the teardown.
+   *
+   * @param properties of the marker.
+   * @param marker file to delete once the cluster is gone.
+   * @return the shell script.
+   */
+  private String teardownScript(Properties properties, File marker) {
+    final String bentoName = properties.getProperty(BENTO_NAME_KEY);
+    final String bento = ShellExecUtil.quote(new File(
+        new File(properties.getProperty(BENTO_DIR_KEY), "bin"), "bento").getPath());
+    return String.format(
+        "%1$s stop -n %2$s; %1$s rm -n %2$s; "
+        + "if ! error=$(%3$s inspect %4$s 2>&1 >/dev/null) "
+        + "&& echo \"$error\" | grep -q -e 'No such object' -e 'No such container'; "
+        + "then rm -f %5$s; fi",
+        bento,
+        ShellExecUtil.quote(bentoName),
+        ShellExecUtil.quote(mDocker),
+        ShellExecUtil.quote("bento-" + bentoName),
+        ShellExecUtil.quote(marker.getAbsolutePath()));
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Durations of the phases of a Bento cluster's lifecycle, e.g. "create" or "site-files.copy".
+ * Timings can be written as a JSON report and appended to a rolling history file with one JSON
+ * record per line, so that boot times can be compared across builds.
+ *
+ * This class is thread-safe.
+ */
+public final class PhaseTimings {
+  /** Maximum number of records kept in a history file. */
+  private static final int MAX_HISTORY_RECORDS = 1000;
+
+  /** Phase durations in milliseconds, in the order the phases were recorded. */
+  private final Map<String, Long> mDurations = Maps.newLinkedHashMap();
+
+  /**
+   * Record the duration of a phase. Recording a phase again replaces its duration.
+   *
+   * @param phase name of the phase.
+   * @param durationMs duration of the phase, in milliseconds.
+   */
+  public synchronized void record(String phase, long durationMs) {
+    mDurations.put(phase, durationMs);
+  }
+
+  /**
+   * Record the duration of a phase which started at a given time and ended now.
+   *
+   * @param phase name of the phase.
+   * @param startTimeMs when the phase started, as returned by System.currentTimeMillis().
+   * @return the current time, so that the next phase can start where this one ended.
+   */
+  public long recordSince(String phase, long startTimeMs) {
+    final long now = System.currentTimeMillis();
+    record(phase, now - startTimeMs);
+    return now;
+  }
+
+  /** @return a snapshot of the phase durations in milliseconds, in recording order. */
+  public synchronized Map<String, Long> getDurations() {
+    return ImmutableMap.copyOf(mDurations);
+  }
+
+  /**
+   * Log the phase durations.
+   *
+   * @param log The maven log.
+   * @param title of the timing summary.
+   */
+  public void log(Log log, String title) {
+    log.info(title + ":");
+    for (Map.Entry<String, Long> entry : getDurations().entrySet()) {
+      log.info(String.format("  %-40s %8d ms", entry.getKey(), entry.getValue()));
+    }
+  }
+
+  /**
+   * Format the timings as a single line JSON object.
+   *
+   * @param attributes string fields to include in the object before the timings, e.g. the
+   *     cluster name.
+   * @return a JSON object.
+   */
+  public String toJson(Map<String, String> attributes) {
+    final StringBuilder json = new StringBuilder("{");
+    json.append(quote("timestamp")).append(':').append(System.currentTimeMillis());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      json.append(',').append(quote(attribute.getKey())).append(':')
+          .append(quote(attribute.getValue()));
+    }
+    json.append(',').append(quote("phases")).append(":{");
+    boolean first = true;
+    for (Map.Entry<String, Long> entry : getDurations().entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      first = false;
+      json.append(quote(entry.getKey())).append(':').append(entry.getValue());
+    }
+    return json.append("}}").toString();
+  }
+
+  /**
+   * Write the timings as a JSON report and append them to a history file. The history file keeps
+   * the most recent {@value #MAX_HISTORY_RECORDS} records. It is shared by concurrent builds, so it
+   * is locked while it is rewritten.
+   *
+   * @param reportFile to write the JSON report to; overwritten.
+   * @param historyFile to append a JSON record to, or null.
+   * @param attributes string fields to include in the record, e.g. the cluster name.
+   * @throws IOException if the report or history file can not be written.
+   */
+  public void write(File reportFile, File historyFile, Map<String, String> attributes)
+      throws IOException {
+    final String json = toJson(attributes);
+    FileUtils.write(reportFile, json + "\n", Charsets.UTF_8.name());
+    if (null == historyFile) {
+      return;
+    }
+    LockedFiles.rewrite(historyFile, new LockedFiles.Update() {
+      @Override
+      public List<String> apply(List<String> records) {
+        records.add(json);
+        return records.subList(
+            Math.max(0, records.size() - MAX_HISTORY_RECORDS), records.size());
+      }
+    });
+  }
+
+  /**
+   * Quote a string as a JSON string literal.
+   *
+   * @param value to quote.
+   * @return the JSON string literal.
+   */
+  private static String quote(String value) {
+    final StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
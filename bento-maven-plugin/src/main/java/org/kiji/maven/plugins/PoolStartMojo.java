@@ -0,0 +1,204 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven goal which launches the warm cluster pool: a {@link ClusterPoolDaemon} in its own JVM,
+ * which outlives the build and keeps a number of Bento clusters booted. Builds run with
+ * bento.pool=true lease a cluster from it in the 'start' goal instead of booting one, and return
+ * it in the 'stop' goal, after which the pool resets it for the next build.
+ */
+@Mojo(
+    name = "pool-start",
+    requiresProject = false,
+    threadSafe = true
+)
+public class PoolStartMojo extends AbstractPoolMojo {
+  /** How long the daemon may take to listen for connections, in milliseconds. */
+  private static final long DAEMON_STARTUP_TIMEOUT_MS = 30000L;
+
+  /** Path to bento-cluster directory containing bin/bento and related executables. */
+  @Parameter(
+      property = "bento.dir.path",
+      alias = "bento.dir.path",
+      required = true
+  )
+  private File mBentoDirPath;
+
+  /** Number of booted clusters the pool keeps available for builds to lease. */
+  @Parameter(
+      property = "bento.pool.size",
+      alias = "bento.pool.size",
+      defaultValue = "2",
+      required = true
+  )
+  private int mPoolSize;
+
+  /**
+   * How long, in seconds, a lease lasts without being renewed. Builds renew the leases of the
+   * clusters they use every minute, so clusters of builds which died without returning them are
+   * reclaimed once their lease expires, while the clusters of running builds are kept. At least
+   * 180 seconds.
+   */
+  @Parameter(
+      property = "bento.pool.lease.timeout.seconds",
+      alias = "bento.pool.lease.timeout.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mLeaseTimeoutSeconds;
+
+  /** How long the cluster components may take to start, in seconds. */
+  @Parameter(
+      property = "bento.startup.timeout.seconds",
+      alias = "bento.startup.timeout.seconds",
+      defaultValue = "120",
+      required = true
+  )
+  private long mStartupTimeoutSeconds;
+
+  /**
+   * Supervisor processes which must reach a given state before a pooled cluster is considered up,
+   * as "process-name:STATE". Defaults to "hdfs-init:EXITED".
+   */
+  @Parameter(property = "bento.required.services", alias = "bento.required.services")
+  private List<String> mRequiredServices;
+
+  /** This plugin, whose classpath the daemon runs with. */
+  @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+  private PluginDescriptor mPlugin;
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (mPoolSize < 1) {
+      throw new MojoExecutionException("bento.pool.size must be at least 1.");
+    }
+    if (TimeUnit.SECONDS.toMillis(mLeaseTimeoutSeconds) < ClusterPoolClient.MIN_LEASE_TIMEOUT_MS) {
+      throw new MojoExecutionException(String.format(
+          "bento.pool.lease.timeout.seconds must be at least %d.",
+          TimeUnit.MILLISECONDS.toSeconds(ClusterPoolClient.MIN_LEASE_TIMEOUT_MS)));
+    }
+    final ClusterPoolClient client = getClient();
+    final File poolDir = getPoolDir();
+    if (client.isDaemonPublished()) {
+      try {
+        getLog().info("Cluster pool is already running: " + client.status());
+        return;
+      } catch (IOException ioe) {
+        getLog().warn("Replacing the unreachable cluster pool: " + ioe.getMessage());
+        FileUtils.deleteQuietly(new File(poolDir, ClusterPoolDaemon.PORT_FILE_NAME));
+      }
+    }
+
+    final File logFile = new File(poolDir, "daemon.log");
+    try {
+      writeProperties(poolDir);
+      final Process process = new ProcessBuilder(
+          new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+          "-cp",
+          getClasspath(),
+          ClusterPoolDaemon.class.getName(),
+          poolDir.getAbsolutePath())
+          .redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile))
+          .start();
+      process.getOutputStream().close();
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to launch the cluster pool daemon.", ioe);
+    }
+
+    final boolean listening;
+    try {
+      listening = new ReadinessWaiter(getLog()).await(
+          "Cluster pool daemon listening",
+          new ReadinessWaiter.Condition() {
+            @Override
+            public boolean isSatisfied() {
+              return client.isDaemonPublished();
+            }
+          },
+          DAEMON_STARTUP_TIMEOUT_MS);
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to launch the cluster pool daemon.", e);
+    }
+    if (!listening) {
+      throw new MojoExecutionException(
+          "Cluster pool daemon did not start; see " + logFile.getAbsolutePath());
+    }
+    getLog().info(String.format("Cluster pool of %d Bento clusters is booting; see %s",
+        mPoolSize, logFile.getAbsolutePath()));
+  }
+
+  /**
+   * Write the configuration of the daemon.
+   *
+   * @param poolDir to write the configuration to.
+   * @throws IOException if the configuration can not be written.
+   */
+  private void writeProperties(File poolDir) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty(ClusterPoolDaemon.BENTO_DIR_KEY, mBentoDirPath.getAbsolutePath());
+    properties.setProperty(ClusterPoolDaemon.SIZE_KEY, Integer.toString(mPoolSize));
+    properties.setProperty(ClusterPoolDaemon.LEASE_TIMEOUT_KEY,
+        Long.toString(TimeUnit.SECONDS.toMillis(mLeaseTimeoutSeconds)));
+    properties.setProperty(ClusterPoolDaemon.STARTUP_TIMEOUT_KEY,
+        Long.toString(TimeUnit.SECONDS.toMillis(mStartupTimeoutSeconds)));
+    properties.setProperty(ClusterPoolDaemon.REQUIRED_SERVICES_KEY,
+        (null == mRequiredServices) ? "" : Joiner.on(',').join(mRequiredServices));
+    FileUtils.forceMkdir(poolDir);
+    final OutputStream out =
+        new FileOutputStream(new File(poolDir, ClusterPoolDaemon.PROPERTIES_FILE_NAME));
+    try {
+      properties.store(out, "Bento cluster pool daemon configuration.");
+    } finally {
+      out.close();
+    }
+  }
+
+  /** @return the classpath of this plugin: its own jar and its runtime dependencies. */
+  private String getClasspath() {
+    final List<String> entries = Lists.newArrayList();
+    entries.add(mPlugin.getPluginArtifact().getFile().getAbsolutePath());
+    for (Artifact artifact : mPlugin.getArtifacts()) {
+      if (null != artifact.getFile()) {
+        entries.add(artifact.getFile().getAbsolutePath());
+      }
+    }
+    return Joiner.on(File.pathSeparator).join(entries);
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.IOException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Maven goal which reports how many clusters of the warm cluster pool are idle, leased, starting
+ * and being reset.
+ */
+@Mojo(
+    name = "pool-status",
+    requiresProject = false,
+    threadSafe = true
+)
+public class PoolStatusMojo extends AbstractPoolMojo {
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    final ClusterPoolClient client = getClient();
+    if (!client.isDaemonPublished()) {
+      getLog().info("No cluster pool is running in " + getPoolDir().getAbsolutePath());
+      return;
+    }
+    try {
+      getLog().info("Cluster pool: " + client.status());
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to query the cluster pool.", ioe);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A {@link ClusterBackend} for a running Bento cluster leased from the {@link ClusterPoolDaemon}.
+ * The cluster is already up, so it is never started, and stopping it returns it to the pool,
+ * which resets it for the next build. Until then, the lease is renewed in the background, so that
+ * the pool does not reclaim the cluster while the build uses it, however long the build runs.
+ */
+public final class PooledCluster implements ClusterBackend {
+  /** Renews the leases of the pooled clusters used by this JVM. */
+  private static final ScheduledExecutorService RENEW_EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("bento-pool-renew")
+              .build());
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Client of the pool the cluster was leased from. */
+  private final ClusterPoolClient mClient;
+
+  /** The lease of the cluster. */
+  private final ClusterPoolClient.Lease mLease;
+
+  /** Handle on the leased Bento cluster, used to watch it. */
+  private final BentoCluster mCluster;
+
+  /** Whether the cluster was returned to the pool. */
+  private boolean mReleased = false;
+
+  /** The scheduled renewals of the lease, until the cluster is returned. */
+  private final ScheduledFuture<?> mRenewal;
+
+  /**
+   * Construct a handle on a leased cluster, and start renewing its lease.
+   *
+   * @param log The maven log.
+   * @param client of the pool the cluster was leased from.
+   * @param lease of the cluster.
+   * @param cluster handle on the leased Bento cluster.
+   */
+  public PooledCluster(
+      Log log,
+      ClusterPoolClient client,
+      ClusterPoolClient.Lease lease,
+      BentoCluster cluster
+  ) {
+    mLog = log;
+    mClient = client;
+    mLease = lease;
+    mCluster = cluster;
+    mRenewal = RENEW_EXECUTOR.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          mClient.renew(mLease.getClusterName());
+        } catch (IOException ioe) {
+          mLog.warn(String.format("Unable to renew the lease of the Bento cluster '%s': %s",
+              mLease.getClusterName(), ioe.getMessage()));
+        }
+      }
+    }, ClusterPoolClient.RENEW_INTERVAL_MS, ClusterPoolClient.RENEW_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getBentoName() {
+    return mLease.getClusterName();
+  }
+
+  /**
+   * A leased cluster is already up.
+   *
+   * @param startupTimeoutMs ignored.
+   */
+  @Override
+  public void setStartupTimeoutMs(long startupTimeoutMs) {}
+
+  /**
+   * A leased cluster is already up.
+   *
+   * @throws IllegalStateException always.
+   */
+  @Override
+  public void start() {
+    throw new IllegalStateException(String.format(
+        "Pooled cluster '%s' is already running.", mLease.getClusterName()));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public Map<String, byte[]> getSiteFiles() throws IOException {
+    final File[] files = mLease.getSiteFilesDir().listFiles();
+    if (null == files) {
+      throw new IOException("Site files of pooled cluster are missing: "
+          + mLease.getSiteFilesDir().getAbsolutePath());
+    }
+    final Map<String, byte[]> siteFiles = Maps.newTreeMap();
+    for (File file : files) {
+      siteFiles.put(file.getName(), Files.toByteArray(file));
+    }
+    return ImmutableMap.copyOf(siteFiles);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public PhaseTimings getTimings() {
+    return mCluster.getTimings();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void reportTimings(File reportFile, File historyFile, String goal) {
+    mCluster.reportTimings(reportFile, historyFile, goal);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void startWatchdog(File markerFile, File crashLogFile, long intervalMs) {
+    mCluster.startWatchdog(markerFile, crashLogFile, intervalMs);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void stopWatchdog() {
+    mCluster.stopWatchdog();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void startSampler(File seriesFile, long intervalMs) {
+    mCluster.startSampler(seriesFile, intervalMs);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void stopSampler(File summaryFile) {
+    mCluster.stopSampler(summaryFile);
+  }
+
+  /**
+   * Return the cluster to the pool, which resets it in the background.
+   *
+   * @throws IOException if the pool can not be reached.
+   */
+  @Override
+  public synchronized void stop() throws IOException {
+    mCluster.stopWatchdog();
+    mCluster.stopSampler(null);
+    if (mReleased) {
+      return;
+    }
+    mRenewal.cancel(false);
+    mLog.info(String.format(
+        "Returning the Bento cluster '%s' to the pool.", mLease.getClusterName()));
+    final long phaseStart = System.currentTimeMillis();
+    mClient.release(mLease.getClusterName());
+    mReleased = true;
+    mCluster.getTimings().recordSince("pool.release", phaseStart);
+  }
+}
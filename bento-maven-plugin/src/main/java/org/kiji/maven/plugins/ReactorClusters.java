@@ -0,0 +1,234 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Thread-safe registry of the clusters shared by the modules of a reactor build, with the
+ * reference counts deciding when they are stopped. The first module to acquire a shared cluster
+ * starts it, and the other modules attach to it. A module releases the cluster in its 'stop' goal,
+ * and the cluster is stopped by the last module to release it: once no module holds it and every
+ * module of the reactor which declared the 'start' goal released it.
+ *
+ * A module which declared the 'start' goal but skips it releases the cluster in its skipped
+ * 'stop' goal, even before another module acquired the cluster. A module which never gets to its
+ * 'stop' goal, because the build failed first, would keep the cluster up; a shutdown hook stops
+ * the clusters still registered when the build JVM exits.
+ *
+ * Like {@link BentoClusterRegistry}, the registry is static so that all modules see it.
+ */
+public final class ReactorClusters {
+  /** A cluster shared by the modules of a reactor. */
+  private static final class SharedCluster {
+    /** The running cluster, or null until a module started it. */
+    private volatile ClusterBackend mCluster = null;
+
+    /** Modules which declared the 'start' goal and did not release the cluster yet. */
+    private final Set<String> mPendingModules = Sets.newHashSet();
+
+    /** Whether the modules which declared the 'start' goal were added to the pending modules. */
+    private boolean mParticipantsKnown = false;
+
+    /** Modules which released the cluster before the participants were known. */
+    private final Set<String> mEarlyReleases = Sets.newHashSet();
+
+    /** Modules holding the cluster. */
+    private final Set<String> mHolders = Sets.newHashSet();
+
+    /** Stops the cluster if the build JVM exits while it is registered, or null. */
+    private Thread mShutdownHook = null;
+  }
+
+  /** Shared clusters, by shared cluster id. */
+  private static final Map<String, SharedCluster> SHARED = Maps.newHashMap();
+
+  /** Disable default constructor. */
+  private ReactorClusters() {}
+
+  /**
+   * Acquire the cluster shared under an id, starting it if no module did. Modules acquiring the
+   * cluster while it starts wait for it.
+   *
+   * @param log The maven log.
+   * @param sharedId identifies the shared cluster within the build JVM.
+   * @param moduleId identifies the acquiring module.
+   * @param participants ids of the modules of the reactor which declared the 'start' goal. Only
+   *     the participants given by the first module acquiring the cluster are retained.
+   * @param starter starts the cluster if it is not running.
+   * @return the running cluster.
+   * @throws Exception if the cluster is not running and the starter fails. A later acquisition
+   *     tries to start it again.
+   */
+  public static ClusterBackend acquire(
+      Log log,
+      String sharedId,
+      String moduleId,
+      Collection<String> participants,
+      Callable<ClusterBackend> starter
+  ) throws Exception {
+    final SharedCluster shared;
+    synchronized (SHARED) {
+      shared = getOrCreate(sharedId);
+      if (!shared.mParticipantsKnown) {
+        shared.mPendingModules.addAll(participants);
+        shared.mPendingModules.removeAll(shared.mEarlyReleases);
+        shared.mParticipantsKnown = true;
+      }
+    }
+    // Modules acquiring the cluster while it starts block here until it is up.
+    synchronized (shared) {
+      if (null == shared.mCluster) {
+        final ClusterBackend cluster = starter.call();
+        shared.mShutdownHook = createShutdownHook(log, cluster);
+        Runtime.getRuntime().addShutdownHook(shared.mShutdownHook);
+        shared.mCluster = cluster;
+      } else {
+        log.info(String.format("Attaching to the Bento cluster '%s' shared by the reactor.",
+            shared.mCluster.getBentoName()));
+      }
+      // The holders are read by the releases, under the lock on the registry.
+      synchronized (SHARED) {
+        shared.mHolders.add(moduleId);
+      }
+      return shared.mCluster;
+    }
+  }
+
+  /**
+   * Release a cluster held by a module. The cluster is unregistered once it is no longer needed,
+   * and must then be stopped by the caller.
+   *
+   * @param log The maven log.
+   * @param cluster to release.
+   * @param moduleId identifies the releasing module.
+   * @return whether the caller must stop the cluster: true if it is not shared, or if this was the
+   *     last module needing it.
+   */
+  public static boolean release(Log log, ClusterBackend cluster, String moduleId) {
+    synchronized (SHARED) {
+      for (Map.Entry<String, SharedCluster> entry : SHARED.entrySet()) {
+        if (cluster == entry.getValue().mCluster) {
+          return release(log, entry.getKey(), entry.getValue(), moduleId);
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Release the cluster shared under an id on behalf of a module which skipped its goals, and so
+   * never acquired it, e.g. because its integration tests were skipped. If no module acquired the
+   * cluster yet, the module is not waited for once one does.
+   *
+   * @param log The maven log.
+   * @param sharedId identifies the shared cluster within the build JVM.
+   * @param moduleId identifies the releasing module.
+   * @return the cluster to stop, if this was the last module needing it; null otherwise.
+   */
+  public static ClusterBackend releaseSkipped(Log log, String sharedId, String moduleId) {
+    synchronized (SHARED) {
+      final SharedCluster shared = getOrCreate(sharedId);
+      if (!shared.mParticipantsKnown) {
+        shared.mEarlyReleases.add(moduleId);
+        return null;
+      }
+      if (null == shared.mCluster) {
+        // A cluster still starting is held by the module starting it, which releases it later.
+        shared.mPendingModules.remove(moduleId);
+        return null;
+      }
+      return release(log, sharedId, shared, moduleId) ? shared.mCluster : null;
+    }
+  }
+
+  /**
+   * Get the cluster shared under an id, registering an empty one if there is none. Must be called
+   * while holding the lock on {@link #SHARED}.
+   *
+   * @param sharedId identifies the shared cluster within the build JVM.
+   * @return the shared cluster.
+   */
+  private static SharedCluster getOrCreate(String sharedId) {
+    if (!SHARED.containsKey(sharedId)) {
+      SHARED.put(sharedId, new SharedCluster());
+    }
+    return SHARED.get(sharedId);
+  }
+
+  /**
+   * Release a running shared cluster held by a module, and unregister it if it is no longer
+   * needed. Must be called while holding the lock on {@link #SHARED}.
+   *
+   * @param log The maven log.
+   * @param sharedId identifies the shared cluster within the build JVM.
+   * @param shared the shared cluster.
+   * @param moduleId identifies the releasing module.
+   * @return whether the caller must stop the cluster.
+   */
+  private static boolean release(Log log, String sharedId, SharedCluster shared, String moduleId) {
+    shared.mHolders.remove(moduleId);
+    shared.mPendingModules.remove(moduleId);
+    if (!shared.mHolders.isEmpty() || !shared.mPendingModules.isEmpty()) {
+      log.info(String.format(
+          "Not stopping the Bento cluster '%s': it is still needed by %s.",
+          shared.mCluster.getBentoName(),
+          Sets.union(shared.mHolders, shared.mPendingModules)));
+      return false;
+    }
+    SHARED.remove(sharedId);
+    try {
+      Runtime.getRuntime().removeShutdownHook(shared.mShutdownHook);
+    } catch (IllegalStateException ise) {
+      // The JVM is shutting down; the hook stops the cluster as well.
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Create a shutdown hook stopping a shared cluster still registered when the build JVM exits.
+   *
+   * @param log The maven log.
+   * @param cluster to stop.
+   * @return the shutdown hook, not registered yet.
+   */
+  private static Thread createShutdownHook(final Log log, final ClusterBackend cluster) {
+    return new Thread(new Runnable() {
+      @Override
+      public void run() {
+        log.warn(String.format("Stopping the Bento cluster '%s' shared by the reactor, since the "
+            + "build ended before every module released it.", cluster.getBentoName()));
+        try {
+          cluster.stop();
+        } catch (Exception e) {
+          log.warn("Unable to stop Bento cluster: " + e);
+        }
+      }
+    }, "bento-reactor-shutdown");
+  }
+}
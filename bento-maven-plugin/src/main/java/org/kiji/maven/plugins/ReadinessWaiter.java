@@ -0,0 +1,130 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Waits for a condition to become true by probing it with an adaptive backoff. Probes are issued
+ * rapidly at first, so that a condition which is almost satisfied is noticed right away, and then
+ * progressively less often, so that a slow condition does not flood the machine with probes.
+ */
+public final class ReadinessWaiter {
+  /** Default delay before the second probe. */
+  public static final long DEFAULT_INITIAL_INTERVAL_MS = 100L;
+
+  /** Default upper bound on the delay between two probes. */
+  public static final long DEFAULT_MAX_INTERVAL_MS = 1000L;
+
+  /** Default factor by which the delay between probes grows. */
+  public static final double DEFAULT_MULTIPLIER = 1.5;
+
+  /**
+   * A condition to wait for.
+   */
+  public interface Condition {
+    /**
+     * Probe the condition once.
+     *
+     * @return true if the condition is satisfied.
+     * @throws Exception if the condition could not be probed.
+     */
+    boolean isSatisfied() throws Exception;
+  }
+
+  /** The maven log used to report wait durations. */
+  private final Log mLog;
+
+  /** Delay before the second probe. */
+  private final long mInitialIntervalMs;
+
+  /** Upper bound on the delay between two probes. */
+  private final long mMaxIntervalMs;
+
+  /** Factor by which the delay between probes grows. */
+  private final double mMultiplier;
+
+  /**
+   * Construct a waiter with the default backoff settings.
+   *
+   * @param log The maven log.
+   */
+  public ReadinessWaiter(Log log) {
+    this(log, DEFAULT_INITIAL_INTERVAL_MS, DEFAULT_MAX_INTERVAL_MS, DEFAULT_MULTIPLIER);
+  }
+
+  /**
+   * Construct a waiter.
+   *
+   * @param log The maven log.
+   * @param initialIntervalMs delay before the second probe.
+   * @param maxIntervalMs upper bound on the delay between two probes.
+   * @param multiplier factor by which the delay between probes grows.
+   */
+  public ReadinessWaiter(Log log, long initialIntervalMs, long maxIntervalMs, double multiplier) {
+    Preconditions.checkArgument(initialIntervalMs > 0, "Initial interval must be positive.");
+    Preconditions.checkArgument(maxIntervalMs >= initialIntervalMs,
+        "Maximum interval must not be smaller than the initial interval.");
+    Preconditions.checkArgument(multiplier >= 1.0, "Multiplier must be at least 1.");
+    mLog = log;
+    mInitialIntervalMs = initialIntervalMs;
+    mMaxIntervalMs = maxIntervalMs;
+    mMultiplier = multiplier;
+  }
+
+  /**
+   * Probe a condition until it is satisfied or the timeout expires. Sleeps between probes are
+   * uninterruptible for the same reason that shell commands are waited for uninterruptibly; see
+   * {@link ShellExecUtil#executeCommand(String)}.
+   *
+   * @param description of the condition, used in log messages.
+   * @param condition to wait for.
+   * @param timeoutMs how long to wait for the condition, in milliseconds.
+   * @return true if the condition was satisfied within the timeout, false otherwise.
+   * @throws Exception if probing the condition fails.
+   */
+  public boolean await(String description, Condition condition, long timeoutMs) throws Exception {
+    final long startTime = System.currentTimeMillis();
+    final long deadline = startTime + timeoutMs;
+    long intervalMs = mInitialIntervalMs;
+    int probes = 0;
+    while (true) {
+      probes++;
+      if (condition.isSatisfied()) {
+        mLog.info(String.format("%s after %d ms (%d probes).",
+            description, System.currentTimeMillis() - startTime, probes));
+        return true;
+      }
+      final long remainingMs = deadline - System.currentTimeMillis();
+      if (remainingMs <= 0) {
+        mLog.warn(String.format("Gave up waiting: %s not reached after %d ms (%d probes).",
+            description, System.currentTimeMillis() - startTime, probes));
+        return false;
+      }
+      Uninterruptibles.sleepUninterruptibly(Math.min(intervalMs, remainingMs),
+          TimeUnit.MILLISECONDS);
+      intervalMs = Math.min(mMaxIntervalMs, (long) (intervalMs * mMultiplier));
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven goal which tears down the Bento clusters whose background teardown, launched by the 'stop'
+ * goal with detach=true, did not complete.
+ */
+@Mojo(
+    name = "reap",
+    requiresProject = false,
+    threadSafe = true
+)
+public class ReapMojo extends AbstractMojo {
+  /** Directory recording the Bento cluster teardowns running in the background. */
+  @Parameter(
+      property = "bento.pending.teardowns.dir.path",
+      alias = "bento.pending.teardowns.dir.path",
+      defaultValue = "${user.home}/.bento/pending-teardowns",
+      required = true
+  )
+  private File mPendingTeardownsDirPath;
+
+  /**
+   * How long, in seconds, a background teardown may run before it is considered to have failed.
+   * Set to 0 to reap every pending teardown.
+   */
+  @Parameter(
+      property = "bento.teardown.stale.seconds",
+      alias = "bento.teardown.stale.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mTeardownStaleSeconds;
+
+  /**
+   * How long, in seconds, the teardown of one cluster may run before it is killed and left for a
+   * later build to reap. 0 for no deadline.
+   */
+  @Parameter(
+      property = "bento.command.timeout.seconds",
+      alias = "bento.command.timeout.seconds",
+      defaultValue = "600",
+      required = true
+  )
+  private long mCommandTimeoutSeconds;
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    final int reaped = new PendingTeardowns(getLog(), mPendingTeardownsDirPath)
+        .reap(
+            TimeUnit.SECONDS.toMillis(mTeardownStaleSeconds),
+            TimeUnit.SECONDS.toMillis(mCommandTimeoutSeconds));
+    getLog().info(String.format("Reaped %d Bento cluster(s).", reaped));
+  }
+}
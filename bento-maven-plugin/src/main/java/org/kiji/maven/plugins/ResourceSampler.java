@@ -0,0 +1,544 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Samples the CPU, memory, block I/O and network I/O of a running Bento cluster container while
+ * the integration tests run, so that a slow suite can be told apart from a starved, swapping or
+ * I/O-bound cluster. Each sample is appended to a CSV time series, and a peak and average summary
+ * is reported when sampling stops.
+ *
+ * Samples are read from a {@link StatsSource}, by default {@link DockerStatsSource}, from a daemon
+ * thread. A sample that can not be read is skipped.
+ */
+public final class ResourceSampler {
+  /** Header of the CSV time series. */
+  public static final String CSV_HEADER =
+      "timestamp_ms,cpu_percent,memory_bytes,memory_limit_bytes,"
+      + "block_read_bytes,block_write_bytes,net_rx_bytes,net_tx_bytes";
+
+  /** Resource usage of a container at one point in time. I/O counters are cumulative. */
+  public static final class Sample {
+    /** When the sample was taken, as returned by System.currentTimeMillis(). */
+    private final long mTimestampMs;
+
+    /** CPU usage, in percent of one core. */
+    private final double mCpuPercent;
+
+    /** Memory in use, in bytes. */
+    private final long mMemoryBytes;
+
+    /** Memory limit of the container, in bytes. */
+    private final long mMemoryLimitBytes;
+
+    /** Bytes read from block devices. */
+    private final long mBlockReadBytes;
+
+    /** Bytes written to block devices. */
+    private final long mBlockWriteBytes;
+
+    /** Bytes received over the network. */
+    private final long mNetRxBytes;
+
+    /** Bytes sent over the network. */
+    private final long mNetTxBytes;
+
+    /**
+     * Construct a sample.
+     *
+     * @param timestampMs when the sample was taken.
+     * @param cpuPercent CPU usage, in percent of one core.
+     * @param memoryBytes memory in use.
+     * @param memoryLimitBytes memory limit of the container.
+     * @param blockReadBytes bytes read from block devices.
+     * @param blockWriteBytes bytes written to block devices.
+     * @param netRxBytes bytes received over the network.
+     * @param netTxBytes bytes sent over the network.
+     */
+    public Sample(
+        long timestampMs,
+        double cpuPercent,
+        long memoryBytes,
+        long memoryLimitBytes,
+        long blockReadBytes,
+        long blockWriteBytes,
+        long netRxBytes,
+        long netTxBytes
+    ) {
+      mTimestampMs = timestampMs;
+      mCpuPercent = cpuPercent;
+      mMemoryBytes = memoryBytes;
+      mMemoryLimitBytes = memoryLimitBytes;
+      mBlockReadBytes = blockReadBytes;
+      mBlockWriteBytes = blockWriteBytes;
+      mNetRxBytes = netRxBytes;
+      mNetTxBytes = netTxBytes;
+    }
+
+    /** @return the sample as a line of the CSV time series, without line terminator. */
+    public String toCsv() {
+      return String.format(Locale.ROOT, "%d,%.2f,%d,%d,%d,%d,%d,%d",
+          mTimestampMs, mCpuPercent, mMemoryBytes, mMemoryLimitBytes,
+          mBlockReadBytes, mBlockWriteBytes, mNetRxBytes, mNetTxBytes);
+    }
+  }
+
+  /** Reads the current resource usage of a container. */
+  public interface StatsSource {
+    /**
+     * Read the current resource usage.
+     *
+     * @return the sample.
+     * @throws IOException if the usage can not be read.
+     */
+    Sample read() throws IOException;
+  }
+
+  /** Reads the resource usage of a container with "docker stats --no-stream". */
+  public static final class DockerStatsSource implements StatsSource {
+    /** Output format requested from docker stats: one line of semicolon separated fields. */
+    private static final String FORMAT = "{{.CPUPerc}};{{.MemUsage}};{{.BlockIO}};{{.NetIO}}";
+
+    /** A size printed by docker, e.g. "1.5GiB" or "12kB". */
+    private static final Pattern SIZE = Pattern.compile("([0-9.]+)\\s*([a-zA-Z]*)");
+
+    /** How long one docker stats call may run before it is killed and the sample skipped. */
+    private static final long READ_TIMEOUT_MS = 30000L;
+
+    /** Name of the container. */
+    private final String mContainerName;
+
+    /**
+     * Construct a source reading the stats of a container.
+     *
+     * @param containerName name of the container.
+     */
+    public DockerStatsSource(String containerName) {
+      mContainerName = containerName;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Sample read() throws IOException {
+      final ShellResult result = ShellExecUtil.execute(ImmutableList.of(
+          "docker", "stats", "--no-stream", "--format", FORMAT, mContainerName),
+          null, null, null, READ_TIMEOUT_MS);
+      if (!result.isSuccess()) {
+        throw new IOException("Unable to read container stats: " + result);
+      }
+      return parse(result.getStdOut().trim(), System.currentTimeMillis());
+    }
+
+    /**
+     * Parse a line of docker stats output, e.g.
+     * "12.5%;1.2GiB / 3.8GiB;10MB / 2.1GB;5kB / 7kB".
+     *
+     * @param line to parse, in the format {@value #FORMAT}.
+     * @param timestampMs when the stats were read.
+     * @return the sample.
+     * @throws IOException if the line is malformed, e.g. because the container is not running.
+     */
+    static Sample parse(String line, long timestampMs) throws IOException {
+      final List<String> fields = Splitter.on(';').trimResults().splitToList(line);
+      if (4 != fields.size()) {
+        throw new IOException("Unexpected container stats: " + line);
+      }
+      final List<String> memory = splitPair(fields.get(1), line);
+      final List<String> block = splitPair(fields.get(2), line);
+      final List<String> net = splitPair(fields.get(3), line);
+      try {
+        return new Sample(
+            timestampMs,
+            Double.parseDouble(fields.get(0).replace("%", "")),
+            parseSize(memory.get(0)),
+            parseSize(memory.get(1)),
+            parseSize(block.get(0)),
+            parseSize(block.get(1)),
+            parseSize(net.get(0)),
+            parseSize(net.get(1)));
+      } catch (IllegalArgumentException iae) {
+        throw new IOException("Unexpected container stats: " + line, iae);
+      }
+    }
+
+    /**
+     * Split a "used / limit" or "in / out" field in two.
+     *
+     * @param field to split.
+     * @param line the field was read from, for error messages.
+     * @return the two halves of the field.
+     * @throws IOException if the field is not a pair.
+     */
+    private static List<String> splitPair(String field, String line) throws IOException {
+      final List<String> pair = Splitter.on('/').trimResults().splitToList(field);
+      if (2 != pair.size()) {
+        throw new IOException("Unexpected container stats: " + line);
+      }
+      return pair;
+    }
+
+    /**
+     * Parse a size printed by docker. Decimal units (kB, MB, GB, TB) are powers of 1000 and
+     * binary units (KiB, MiB, GiB, TiB) powers of 1024.
+     *
+     * @param size to parse, e.g. "1.5GiB".
+     * @return the size in bytes.
+     * @throws IllegalArgumentException if the size is malformed.
+     */
+    static long parseSize(String size) {
+      final Matcher matcher = SIZE.matcher(size.trim());
+      if (!matcher.matches()) {
+        throw new IllegalArgumentException("Malformed size: " + size);
+      }
+      final String unit = matcher.group(2).toLowerCase(Locale.ROOT);
+      final int exponent;
+      if (unit.isEmpty() || "b".equals(unit)) {
+        exponent = 0;
+      } else if (unit.startsWith("k")) {
+        exponent = 1;
+      } else if (unit.startsWith("m")) {
+        exponent = 2;
+      } else if (unit.startsWith("g")) {
+        exponent = 3;
+      } else if (unit.startsWith("t")) {
+        exponent = 4;
+      } else {
+        throw new IllegalArgumentException("Unknown size unit: " + size);
+      }
+      final double base = unit.contains("i") ? 1024.0 : 1000.0;
+      return (long) (Double.parseDouble(matcher.group(1)) * Math.pow(base, exponent));
+    }
+  }
+
+  /** Peak and average resource usage over the samples of a run. */
+  public static final class Summary {
+    /** Number of samples. */
+    private final int mSamples;
+
+    /** Time between the first and last samples, in milliseconds. */
+    private final long mDurationMs;
+
+    /** Average CPU usage, in percent of one core. */
+    private final double mCpuAverage;
+
+    /** Peak CPU usage, in percent of one core. */
+    private final double mCpuPeak;
+
+    /** Average memory in use, in bytes. */
+    private final long mMemoryAverageBytes;
+
+    /** Peak memory in use, in bytes. */
+    private final long mMemoryPeakBytes;
+
+    /** Memory limit of the container at the last sample, in bytes. */
+    private final long mMemoryLimitBytes;
+
+    /** Bytes read from block devices between the first and last samples. */
+    private final long mBlockReadBytes;
+
+    /** Bytes written to block devices between the first and last samples. */
+    private final long mBlockWriteBytes;
+
+    /** Bytes received over the network between the first and last samples. */
+    private final long mNetRxBytes;
+
+    /** Bytes sent over the network between the first and last samples. */
+    private final long mNetTxBytes;
+
+    /**
+     * Summarize a run from its aggregates.
+     *
+     * @param samples number of samples.
+     * @param first sample of the run.
+     * @param last sample of the run.
+     * @param cpuSum sum of the CPU usage of all samples.
+     * @param cpuPeak peak CPU usage.
+     * @param memorySum sum of the memory in use of all samples.
+     * @param memoryPeak peak memory in use.
+     */
+    private Summary(
+        int samples,
+        Sample first,
+        Sample last,
+        double cpuSum,
+        double cpuPeak,
+        long memorySum,
+        long memoryPeak
+    ) {
+      mSamples = samples;
+      mDurationMs = last.mTimestampMs - first.mTimestampMs;
+      mCpuAverage = cpuSum / samples;
+      mCpuPeak = cpuPeak;
+      mMemoryAverageBytes = memorySum / samples;
+      mMemoryPeakBytes = memoryPeak;
+      mMemoryLimitBytes = last.mMemoryLimitBytes;
+      mBlockReadBytes = last.mBlockReadBytes - first.mBlockReadBytes;
+      mBlockWriteBytes = last.mBlockWriteBytes - first.mBlockWriteBytes;
+      mNetRxBytes = last.mNetRxBytes - first.mNetRxBytes;
+      mNetTxBytes = last.mNetTxBytes - first.mNetTxBytes;
+    }
+
+    /** @return the number of samples. */
+    public int getSamples() {
+      return mSamples;
+    }
+
+    /** @return the average CPU usage, in percent of one core. */
+    public double getCpuAverage() {
+      return mCpuAverage;
+    }
+
+    /** @return the peak CPU usage, in percent of one core. */
+    public double getCpuPeak() {
+      return mCpuPeak;
+    }
+
+    /** @return the average memory in use, in bytes. */
+    public long getMemoryAverageBytes() {
+      return mMemoryAverageBytes;
+    }
+
+    /** @return the peak memory in use, in bytes. */
+    public long getMemoryPeakBytes() {
+      return mMemoryPeakBytes;
+    }
+
+    /** @return the bytes written to block devices between the first and last samples. */
+    public long getBlockWriteBytes() {
+      return mBlockWriteBytes;
+    }
+
+    /**
+     * Format the summary as a single line JSON object.
+     *
+     * @param bentoName name of the sampled cluster.
+     * @return a JSON object.
+     */
+    public String toJson(String bentoName) {
+      return String.format(Locale.ROOT, "{\"bento.name\":\"%s\",\"samples\":%d,"
+          + "\"duration_ms\":%d,\"cpu_percent_avg\":%.2f,\"cpu_percent_peak\":%.2f,"
+          + "\"memory_bytes_avg\":%d,\"memory_bytes_peak\":%d,\"memory_limit_bytes\":%d,"
+          + "\"block_read_bytes\":%d,\"block_write_bytes\":%d,"
+          + "\"net_rx_bytes\":%d,\"net_tx_bytes\":%d}",
+          bentoName, mSamples, mDurationMs, mCpuAverage, mCpuPeak,
+          mMemoryAverageBytes, mMemoryPeakBytes, mMemoryLimitBytes,
+          mBlockReadBytes, mBlockWriteBytes, mNetRxBytes, mNetTxBytes);
+    }
+
+    /**
+     * Log the summary.
+     *
+     * @param log to log to.
+     * @param title of the summary.
+     */
+    public void log(Log log, String title) {
+      log.info(String.format("%s (%d samples over %d s):", title, mSamples, mDurationMs / 1000));
+      log.info(String.format(Locale.ROOT, "  %-12s avg %8.1f%%    peak %8.1f%%",
+          "cpu", mCpuAverage, mCpuPeak));
+      log.info(String.format(Locale.ROOT, "  %-12s avg %8d MiB peak %8d MiB of %d MiB",
+          "memory", toMiB(mMemoryAverageBytes), toMiB(mMemoryPeakBytes),
+          toMiB(mMemoryLimitBytes)));
+      log.info(String.format(Locale.ROOT, "  %-12s read %7d MiB write %7d MiB",
+          "block i/o", toMiB(mBlockReadBytes), toMiB(mBlockWriteBytes)));
+      log.info(String.format(Locale.ROOT, "  %-12s rx %9d MiB tx %10d MiB",
+          "network", toMiB(mNetRxBytes), toMiB(mNetTxBytes)));
+    }
+
+    /**
+     * Convert a size to mebibytes.
+     *
+     * @param bytes to convert.
+     * @return the size in MiB, rounded down.
+     */
+    private static long toMiB(long bytes) {
+      return bytes / (1024L * 1024L);
+    }
+  }
+
+  /** The maven log. */
+  private final Log mLog;
+
+  /** Name of the sampled cluster. */
+  private final String mBentoName;
+
+  /** Reads the samples. */
+  private final StatsSource mSource;
+
+  /** CSV file each sample is appended to. */
+  private final File mSeriesFile;
+
+  /** Runs the samples. */
+  private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-sampler-%d")
+          .build());
+
+  /** Number of samples taken. */
+  private int mSamples = 0;
+
+  /** First sample taken, or null. */
+  private Sample mFirst = null;
+
+  /** Last sample taken, or null. */
+  private Sample mLast = null;
+
+  /** Sum of the CPU usage of all samples. */
+  private double mCpuSum = 0.0;
+
+  /** Peak CPU usage. */
+  private double mCpuPeak = 0.0;
+
+  /** Sum of the memory in use of all samples. */
+  private long mMemorySum = 0L;
+
+  /** Peak memory in use. */
+  private long mMemoryPeak = 0L;
+
+  /** Number of samples which could not be read. */
+  private int mFailedSamples = 0;
+
+  /**
+   * Construct a sampler. It does not sample until started.
+   *
+   * @param log The maven log.
+   * @param bentoName name of the sampled cluster.
+   * @param source reads the samples.
+   * @param seriesFile CSV file to append each sample to; overwritten when sampling starts.
+   */
+  public ResourceSampler(Log log, String bentoName, StatsSource source, File seriesFile) {
+    mLog = log;
+    mBentoName = bentoName;
+    mSource = source;
+    mSeriesFile = seriesFile;
+  }
+
+  /**
+   * Start the CSV time series and start sampling, right away and then at a fixed interval.
+   *
+   * @param intervalMs between samples, in milliseconds.
+   * @throws IOException if the time series can not be written.
+   */
+  public void start(long intervalMs) throws IOException {
+    FileUtils.write(mSeriesFile, CSV_HEADER + "\n", Charsets.UTF_8.name());
+    mExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sample();
+        } catch (RuntimeException re) {
+          // An escaping exception would cancel the samples.
+          mLog.warn("Bento cluster resource sample failed: " + re);
+        }
+      }
+    }, 0L, intervalMs, TimeUnit.MILLISECONDS);
+    mLog.info(String.format("Sampling the resource usage of the Bento cluster '%s' every %d ms "
+        + "to %s", mBentoName, intervalMs, mSeriesFile.getAbsolutePath()));
+  }
+
+  /** Take one sample and append it to the time series. A sample that can not be read is skipped. */
+  public synchronized void sample() {
+    final Sample sample;
+    try {
+      sample = mSource.read();
+    } catch (IOException ioe) {
+      mFailedSamples++;
+      mLog.debug("Unable to sample Bento cluster resource usage: " + ioe.getMessage());
+      return;
+    }
+    mSamples++;
+    if (null == mFirst) {
+      mFirst = sample;
+    }
+    mLast = sample;
+    mCpuSum += sample.mCpuPercent;
+    mCpuPeak = Math.max(mCpuPeak, sample.mCpuPercent);
+    mMemorySum += sample.mMemoryBytes;
+    mMemoryPeak = Math.max(mMemoryPeak, sample.mMemoryBytes);
+    try {
+      FileUtils.write(mSeriesFile, sample.toCsv() + "\n", Charsets.UTF_8.name(), true);
+    } catch (IOException ioe) {
+      mLog.warn("Unable to record Bento cluster resource usage: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Stop sampling, waiting briefly for a sample in progress. The sample is not interrupted, so
+   * that it is not lost half written.
+   */
+  public void stop() {
+    mExecutor.shutdown();
+    try {
+      mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** @return the peak and average usage over the samples taken so far, or null if none was. */
+  public synchronized Summary getSummary() {
+    if (0 == mSamples) {
+      return null;
+    }
+    return new Summary(mSamples, mFirst, mLast, mCpuSum, mCpuPeak, mMemorySum, mMemoryPeak);
+  }
+
+  /**
+   * Log the summary of the samples taken and write it as a JSON report. Failing to write the
+   * report only produces a warning.
+   *
+   * @param summaryFile to write the JSON report to; overwritten.
+   */
+  public void report(File summaryFile) {
+    final Summary summary = getSummary();
+    final int failedSamples;
+    synchronized (this) {
+      failedSamples = mFailedSamples;
+    }
+    if (null == summary) {
+      mLog.warn(String.format("No resource usage sample of the Bento cluster '%s' was taken "
+          + "(%d failed).", mBentoName, failedSamples));
+      return;
+    }
+    summary.log(mLog, String.format("Bento cluster '%s' resource usage", mBentoName));
+    try {
+      FileUtils.write(summaryFile, summary.toJson(mBentoName) + "\n", Charsets.UTF_8.name());
+    } catch (IOException ioe) {
+      mLog.warn("Unable to write Bento cluster resource usage report: " + ioe.getMessage());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Maven goal which restores the data directories of a Bento cluster from the snapshot taken by
+ * the 'snapshot' goal with the same fixture inputs, if there is one.
+ *
+ * The project property "bento.fixtures.restored" is set to "true" if a snapshot was restored and
+ * to "false" otherwise, so that later steps can skip seeding the cluster, e.g. by passing it to
+ * the integration tests as a system property.
+ */
+@Mojo(
+    name = "restore",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    threadSafe = true
+)
+public class RestoreMojo extends AbstractSnapshotMojo {
+  /** Project property telling whether a snapshot was restored. */
+  public static final String RESTORED_PROPERTY = "bento.fixtures.restored";
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    getProject().getProperties().setProperty(RESTORED_PROPERTY, "false");
+    if (isSkip()) {
+      getLog().info("Not restoring a Bento cluster because skip=true.");
+      return;
+    }
+
+    final File archive = getSnapshotArchive();
+    if (!archive.exists()) {
+      getLog().info("No Bento cluster snapshot of these fixtures; the cluster must be seeded.");
+      return;
+    }
+    try {
+      getCluster().restore(getDataDirs(), archive);
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to restore Bento cluster snapshot.", e);
+    }
+    getProject().getProperties().setProperty(RESTORED_PROPERTY, "true");
+  }
+}
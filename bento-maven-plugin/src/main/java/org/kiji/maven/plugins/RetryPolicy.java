@@ -0,0 +1,198 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs an operation which may fail transiently, such as a 'bento' command racing the Docker
+ * daemon or a supervisor call made while supervisord is restarting, a bounded number of times.
+ * Attempts are spaced by an exponential backoff with random jitter, so that the clusters of
+ * concurrent builds do not retry in lockstep. The latency and outcome of every attempt is logged.
+ */
+public final class RetryPolicy {
+  /** Default number of attempts: the first one and two retries. */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /** Default delay before the first retry, before jitter. */
+  public static final long DEFAULT_BASE_DELAY_MS = 1000L;
+
+  /** Default upper bound on the delay between two attempts, before jitter. */
+  public static final long DEFAULT_MAX_DELAY_MS = 10000L;
+
+  /** Source of the backoff jitter. */
+  private static final Random JITTER = new Random();
+
+  /**
+   * An operation to attempt.
+   *
+   * @param <T> type of the result of the operation.
+   */
+  public abstract static class Attempt<T> {
+    /**
+     * Make one attempt.
+     *
+     * @param attempt number, starting at 1.
+     * @return the result of the attempt.
+     * @throws Exception if the attempt fails.
+     */
+    public abstract T call(int attempt) throws Exception;
+
+    /**
+     * Check whether a result is a failure worth retrying. Results are never retried by default.
+     *
+     * @param result of an attempt.
+     * @return whether the operation should be attempted again.
+     */
+    public boolean isTransientFailure(T result) {
+      return false;
+    }
+
+    /**
+     * Check whether an exception is a failure worth retrying. By default, commands which timed
+     * out and connections which were refused or timed out are retried.
+     *
+     * @param exception thrown by an attempt.
+     * @return whether the operation should be attempted again.
+     */
+    public boolean isTransientFailure(Exception exception) {
+      return (exception instanceof ShellExecUtil.CommandTimeoutException)
+          || (exception instanceof ConnectException)
+          || (exception instanceof SocketTimeoutException);
+    }
+  }
+
+  /** Maximum number of attempts, including the first one. */
+  private final int mMaxAttempts;
+
+  /** Delay before the first retry, before jitter. */
+  private final long mBaseDelayMs;
+
+  /** Upper bound on the delay between two attempts, before jitter. */
+  private final long mMaxDelayMs;
+
+  /**
+   * Construct a policy with the default backoff settings.
+   *
+   * @param retries how many times a failed operation is retried; 0 to never retry.
+   */
+  public RetryPolicy(int retries) {
+    this(retries + 1, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+  }
+
+  /**
+   * Construct a policy.
+   *
+   * @param maxAttempts maximum number of attempts, including the first one.
+   * @param baseDelayMs delay before the first retry, doubled before each further retry.
+   * @param maxDelayMs upper bound on the delay between two attempts.
+   */
+  public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs) {
+    Preconditions.checkArgument(maxAttempts > 0, "maxAttempts must be positive: %s", maxAttempts);
+    Preconditions.checkArgument(baseDelayMs >= 0, "baseDelayMs must not be negative.");
+    Preconditions.checkArgument(maxDelayMs >= baseDelayMs, "maxDelayMs must be >= baseDelayMs.");
+    mMaxAttempts = maxAttempts;
+    mBaseDelayMs = baseDelayMs;
+    mMaxDelayMs = maxDelayMs;
+  }
+
+  /** @return the maximum number of attempts, including the first one. */
+  public int getMaxAttempts() {
+    return mMaxAttempts;
+  }
+
+  /**
+   * Run an operation until it succeeds, fails permanently or runs out of attempts. Successful
+   * attempts are logged at info level, or at debug level for quiet operations such as status
+   * probes; failed attempts are always logged at warn level.
+   *
+   * @param log the maven log.
+   * @param description of the operation, e.g. "bento create".
+   * @param quiet whether successful attempts are only logged at debug level.
+   * @param attempt the operation.
+   * @param <T> type of the result of the operation.
+   * @return the result of the last attempt, which may be a failure if no attempts are left.
+   * @throws IOException if the last attempt throws one.
+   */
+  public <T> T run(Log log, String description, boolean quiet, Attempt<T> attempt)
+      throws IOException {
+    for (int i = 1; ; i++) {
+      final long startMs = System.currentTimeMillis();
+      boolean retry;
+      String outcome;
+      T result = null;
+      Exception exception = null;
+      try {
+        result = attempt.call(i);
+        retry = attempt.isTransientFailure(result);
+        outcome = retry ? "failed: " + result : "succeeded.";
+      } catch (Exception e) {
+        exception = e;
+        retry = attempt.isTransientFailure(e);
+        outcome = "failed: " + e.getMessage();
+      }
+      final String message = String.format("%s: attempt %d/%d took %d ms and %s",
+          description, i, mMaxAttempts, System.currentTimeMillis() - startMs, outcome);
+      if ((null == exception) && !retry) {
+        if (quiet) {
+          log.debug(message);
+        } else {
+          log.info(message);
+        }
+        return result;
+      }
+      log.warn(message);
+      if (!retry || (i == mMaxAttempts)) {
+        if (null == exception) {
+          return result;
+        } else if (exception instanceof IOException) {
+          throw (IOException) exception;
+        } else if (exception instanceof RuntimeException) {
+          throw (RuntimeException) exception;
+        } else {
+          throw new IOException(description + " failed.", exception);
+        }
+      }
+      final long delayMs = getDelayMs(i);
+      log.info(String.format("Retrying %s in %d ms.", description, delayMs));
+      Uninterruptibles.sleepUninterruptibly(delayMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Get the delay before a retry: exponential in the number of failed attempts, capped, and
+   * jittered down to half of that at random.
+   *
+   * @param failedAttempts the number of attempts which failed so far.
+   * @return the delay before the next attempt.
+   */
+  long getDelayMs(int failedAttempts) {
+    final long delayMs = Math.min(mMaxDelayMs, mBaseDelayMs << Math.min(failedAttempts - 1, 30));
+    return (delayMs / 2) + (long) (JITTER.nextDouble() * (delayMs - (delayMs / 2)));
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Tracks the supervisor states of the required services of a Bento cluster across readiness
+ * probes. Each probe reports the states of all services at once, so every required service is
+ * judged against the same deadline, and a service that can not come up is detected right away:
+ * one that is FATAL, one that keeps cycling through BACKOFF, or one supervisor does not know.
+ */
+public final class ServiceReadinessTracker {
+  /** How many times a service may enter BACKOFF before it is considered unable to start. */
+  private static final int MAX_BACKOFFS = 3;
+
+  /** Supervisor state of a process that could not be started. */
+  private static final String FATAL = "FATAL";
+
+  /** Supervisor state of a process that is waiting to be restarted after a failed start. */
+  private static final String BACKOFF = "BACKOFF";
+
+  /** The services to track. */
+  private final List<ServiceRequirement> mRequirements;
+
+  /** Most recently observed state of each service, by service name. */
+  private final Map<String, SupervisorClient.ProcessInfo> mLastSeen = Maps.newHashMap();
+
+  /** Number of times each service was seen entering BACKOFF, by service name. */
+  private final Map<String, Integer> mBackoffs = Maps.newHashMap();
+
+  /** When each service was first seen in its expected state, by service name. */
+  private final Map<String, Long> mReadyTimes = Maps.newLinkedHashMap();
+
+  /** Why the cluster can not come up as of the latest probe, or null. */
+  private String mFailure = null;
+
+  /**
+   * Construct a tracker.
+   *
+   * @param requirements the services to track.
+   */
+  public ServiceReadinessTracker(List<ServiceRequirement> requirements) {
+    mRequirements = requirements;
+  }
+
+  /**
+   * Record one probe of the supervisor process states. The failure, if any, is judged from this
+   * probe alone, along with the number of times each service entered BACKOFF so far, so that a
+   * service which recovers is no longer held against the cluster.
+   *
+   * @param processes states of all processes managed by supervisor.
+   * @return true if every required service is in its expected state.
+   */
+  public boolean update(List<SupervisorClient.ProcessInfo> processes) {
+    final Map<String, SupervisorClient.ProcessInfo> byName = Maps.newHashMap();
+    for (SupervisorClient.ProcessInfo process : processes) {
+      byName.put(process.getName(), process);
+    }
+
+    mFailure = null;
+    boolean satisfied = true;
+    for (ServiceRequirement requirement : mRequirements) {
+      final String name = requirement.getName();
+      final SupervisorClient.ProcessInfo process = byName.get(name);
+      final SupervisorClient.ProcessInfo previous = mLastSeen.get(name);
+      if (null == process) {
+        mFailure = String.format("Required service '%s' is not managed by supervisor.", name);
+        satisfied = false;
+        continue;
+      }
+      mLastSeen.put(name, process);
+
+      final String state = process.getStateName();
+      if (state.equals(requirement.getExpectedState())) {
+        if (!mReadyTimes.containsKey(name)) {
+          mReadyTimes.put(name, System.currentTimeMillis());
+        }
+        continue;
+      }
+      satisfied = false;
+      if (FATAL.equals(state)) {
+        mFailure = String.format("Required service '%s' is FATAL.", name);
+      } else if (BACKOFF.equals(state)) {
+        final boolean entered = (null == previous) || !BACKOFF.equals(previous.getStateName());
+        final int backoffs =
+            (mBackoffs.containsKey(name) ? mBackoffs.get(name) : 0) + (entered ? 1 : 0);
+        mBackoffs.put(name, backoffs);
+        if (backoffs >= MAX_BACKOFFS) {
+          mFailure = String.format(
+              "Required service '%s' entered BACKOFF %d times.", name, backoffs);
+        }
+      }
+    }
+    return satisfied;
+  }
+
+  /**
+   * @return when each service was first seen in its expected state, as returned by
+   *     System.currentTimeMillis(), by service name.
+   */
+  public Map<String, Long> getReadyTimes() {
+    return mReadyTimes;
+  }
+
+  /** @return why the cluster can not come up, or null if it still may. */
+  public String getFailure() {
+    return mFailure;
+  }
+
+  /** @return a table of the expected and last observed state of each required service. */
+  public String formatStatusTable() {
+    final String rowFormat = "%n  %-24s %-10s %-10s %s";
+    final StringBuilder table = new StringBuilder()
+        .append(String.format(rowFormat, "SERVICE", "EXPECTED", "ACTUAL", "DESCRIPTION"));
+    for (ServiceRequirement requirement : mRequirements) {
+      final SupervisorClient.ProcessInfo process = mLastSeen.get(requirement.getName());
+      table.append(String.format(rowFormat,
+          requirement.getName(),
+          requirement.getExpectedState(),
+          (null == process) ? "UNKNOWN" : process.getStateName(),
+          (null == process) ? "" : process.getDescription()));
+    }
+    return table.toString();
+  }
+}
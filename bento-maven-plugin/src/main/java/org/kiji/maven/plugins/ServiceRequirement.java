@@ -0,0 +1,104 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A supervisor process which must reach a given state before a Bento cluster is considered up,
+ * e.g. "hdfs-init:EXITED" or "hbase-master:RUNNING".
+ */
+public final class ServiceRequirement {
+  /** The requirement used when none are configured: hdfs-init exits once HDFS is up. */
+  public static final List<ServiceRequirement> DEFAULT_REQUIREMENTS =
+      ImmutableList.of(new ServiceRequirement("hdfs-init", "EXITED"));
+
+  /** Name of the supervisor process. */
+  private final String mName;
+
+  /** Supervisor state the process must reach, e.g. RUNNING or EXITED. */
+  private final String mExpectedState;
+
+  /**
+   * Construct a requirement.
+   *
+   * @param name of the supervisor process.
+   * @param expectedState the process must reach.
+   */
+  public ServiceRequirement(String name, String expectedState) {
+    mName = name;
+    mExpectedState = expectedState;
+  }
+
+  /**
+   * Parse a requirement of the form "process-name:STATE". The state defaults to RUNNING.
+   *
+   * @param spec of the requirement.
+   * @return the parsed requirement.
+   */
+  public static ServiceRequirement parse(String spec) {
+    final String trimmed = spec.trim();
+    final int separator = trimmed.lastIndexOf(':');
+    final String name = (separator < 0) ? trimmed : trimmed.substring(0, separator).trim();
+    final String state = (separator < 0)
+        ? "RUNNING"
+        : trimmed.substring(separator + 1).trim().toUpperCase(Locale.ROOT);
+    Preconditions.checkArgument(!name.isEmpty() && !state.isEmpty(),
+        "Invalid required service '%s'; expected 'process-name:STATE'.", spec);
+    return new ServiceRequirement(name, state);
+  }
+
+  /**
+   * Parse a list of requirements. See {@link #parse(String)}.
+   *
+   * @param specs of the requirements, or null.
+   * @return the parsed requirements, or the default requirements if none are given.
+   */
+  public static List<ServiceRequirement> parseAll(List<String> specs) {
+    if ((null == specs) || specs.isEmpty()) {
+      return DEFAULT_REQUIREMENTS;
+    }
+    final ImmutableList.Builder<ServiceRequirement> requirements = ImmutableList.builder();
+    for (String spec : specs) {
+      requirements.add(parse(spec));
+    }
+    return requirements.build();
+  }
+
+  /** @return the name of the supervisor process. */
+  public String getName() {
+    return mName;
+  }
+
+  /** @return the supervisor state the process must reach. */
+  public String getExpectedState() {
+    return mExpectedState;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return mName + ":" + mExpectedState;
+  }
+}
@@ -20,21 +20,57 @@
 package org.kiji.maven.plugins;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.apache.maven.plugin.logging.Log;
 
 /**
  * Utility class to containing methods to execute shell commands.
  */
 public final class ShellExecUtil {
+  /** How many lines of each output stream are kept in a {@link ShellResult}. */
+  private static final int MAX_CAPTURED_LINES = 1000;
+
+  /** How often a command with a deadline is polled for completion. */
+  private static final long POLL_INTERVAL_MS = 20L;
+
+  /** How long the output of a killed command is still drained before it is abandoned. */
+  private static final long KILL_DRAIN_TIMEOUT_MS = 5000L;
+
+  /**
+   * Shared pool of daemon threads which drain the stdout and stderr of child processes. The pool
+   * grows with the number of running commands, so that the output of a command is never queued
+   * behind the drains of other long running commands while the command blocks on a full pipe.
+   * Idle threads time out, so the pool costs nothing between commands and never keeps the JVM
+   * alive.
+   */
+  private static final ExecutorService DRAIN_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("bento-shell-drain-%d")
+          .build());
+
   /** Disable default constructor. */
   private ShellExecUtil() {}
 
@@ -55,10 +91,153 @@ public final class ShellExecUtil {
    * @param command to execute.
    * @return stdout.
    * @throws IOException if the command execution encounters and I/O failure.
-   * @throws ExecutionException if process future can be uninterruptibly acquired.
    */
-  public static String executeCommand(String command) throws IOException, ExecutionException {
-    return ProcessWaitForCallable.executeCommand(command);
+  public static String executeCommand(String command) throws IOException {
+    return execute(command, null).getStdOut();
+  }
+
+  /**
+   * Execute a shell command and uninterruptibly wait for completion. Stdout and stderr are drained
+   * concurrently while the command runs, so a chatty command can never block on a full pipe. If a
+   * log is given, every line is forwarded to it as soon as it is read: stdout at info level and
+   * stderr at warn level.
+   *
+   * The command is split into arguments on whitespace, like {@link Runtime#exec(String)}.
+   *
+   * @param command to execute.
+   * @param log to stream the command output to, or null to only capture it.
+   * @return the exit code and captured output of the command.
+   * @throws IOException if the command execution encounters and I/O failure.
+   */
+  public static ShellResult execute(String command, Log log) throws IOException {
+    return execute(command, log, 0L);
+  }
+
+  /**
+   * Execute a shell command and uninterruptibly wait for completion, up to a deadline. See
+   * {@link #execute(List, Log, File, File, long)}.
+   *
+   * @param command to execute, split into arguments on whitespace.
+   * @param log to stream the command output to, or null to only capture it.
+   * @param timeoutMs how long the command may run, or 0 to wait for it forever.
+   * @return the exit code and captured output of the command.
+   * @throws CommandTimeoutException if the command did not complete within the deadline.
+   * @throws IOException if the command execution encounters and I/O failure.
+   */
+  public static ShellResult execute(String command, Log log, long timeoutMs) throws IOException {
+    final List<String> arguments = Lists.newArrayList();
+    final StringTokenizer tokenizer = new StringTokenizer(command);
+    while (tokenizer.hasMoreTokens()) {
+      arguments.add(tokenizer.nextToken());
+    }
+    return execute(arguments, log, null, null, timeoutMs);
+  }
+
+  /**
+   * Execute a command given as a list of arguments and uninterruptibly wait for completion. See
+   * {@link #execute(String, Log)}.
+   *
+   * @param arguments of the command, starting with the executable.
+   * @param log to stream the command output to, or null to only capture it.
+   * @return the exit code and captured output of the command.
+   * @throws IOException if the command execution encounters and I/O failure.
+   */
+  public static ShellResult execute(List<String> arguments, Log log) throws IOException {
+    return execute(arguments, log, null, null);
+  }
+
+  /**
+   * Execute a command given as a list of arguments with its stdin and/or stdout connected to
+   * files, and uninterruptibly wait for completion. See {@link #execute(String, Log)}. When stdout
+   * is redirected to a file, the result holds no stdout.
+   *
+   * @param arguments of the command, starting with the executable.
+   * @param log to stream the command output to, or null to only capture it.
+   * @param stdInFile file to read stdin from, or null for an empty stdin.
+   * @param stdOutFile file to write stdout to, or null to capture stdout.
+   * @return the exit code and captured output of the command.
+   * @throws IOException if the command execution encounters and I/O failure.
+   */
+  public static ShellResult execute(
+      List<String> arguments,
+      Log log,
+      File stdInFile,
+      File stdOutFile
+  ) throws IOException {
+    return execute(arguments, log, stdInFile, stdOutFile, 0L);
+  }
+
+  /**
+   * Execute a command given as a list of arguments and uninterruptibly wait for completion, up to
+   * a deadline. A command still running at the deadline is killed along with every process it
+   * spawned, so that a hung 'docker' client or a shell pipeline leaves nothing behind. See
+   * {@link #execute(List, Log, File, File)}.
+   *
+   * @param arguments of the command, starting with the executable.
+   * @param log to stream the command output to, or null to only capture it.
+   * @param stdInFile file to read stdin from, or null for an empty stdin.
+   * @param stdOutFile file to write stdout to, or null to capture stdout.
+   * @param timeoutMs how long the command may run, or 0 to wait for it forever.
+   * @return the exit code and captured output of the command.
+   * @throws CommandTimeoutException if the command did not complete within the deadline.
+   * @throws IOException if the command execution encounters and I/O failure.
+   */
+  public static ShellResult execute(
+      List<String> arguments,
+      Log log,
+      File stdInFile,
+      File stdOutFile,
+      long timeoutMs
+  ) throws IOException {
+    final String command = Joiner.on(' ').join(arguments);
+    final ProcessBuilder builder = new ProcessBuilder(arguments);
+    if (null != stdInFile) {
+      builder.redirectInput(stdInFile);
+    }
+    if (null != stdOutFile) {
+      builder.redirectOutput(stdOutFile);
+    }
+    final Process process = builder.start();
+    process.getOutputStream().close();
+
+    final StreamDrainer stdOut = new StreamDrainer(process.getInputStream(), log, false);
+    final StreamDrainer stdErr = new StreamDrainer(process.getErrorStream(), log, true);
+    final Future<Void> stdOutFuture = DRAIN_EXECUTOR.submit(stdOut);
+    final Future<Void> stdErrFuture = DRAIN_EXECUTOR.submit(stdErr);
+
+    if (timeoutMs > 0) {
+      final Integer exitCode = waitForUninterruptibly(process, timeoutMs);
+      if (null == exitCode) {
+        destroyTree(process);
+        // A grandchild which escaped the kill may still hold the pipes open.
+        try {
+          Uninterruptibles.getUninterruptibly(
+              stdOutFuture, KILL_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          Uninterruptibles.getUninterruptibly(
+              stdErrFuture, KILL_DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ee) {
+          // The command is failing anyway; its output is best effort.
+        } catch (TimeoutException te) {
+          // Same.
+        }
+        throw new CommandTimeoutException(command, timeoutMs, stdOut.getCapturedOutput(),
+            stdErr.getCapturedOutput());
+      }
+    }
+
+    final int exitCode = waitForUninterruptibly(process);
+    try {
+      Uninterruptibles.getUninterruptibly(stdOutFuture);
+      Uninterruptibles.getUninterruptibly(stdErrFuture);
+    } catch (ExecutionException ee) {
+      throw new IOException(String.format("Unable to read the output of '%s'.", command), ee);
+    }
+    return new ShellResult(
+        command,
+        exitCode,
+        stdOut.getCapturedOutput(),
+        stdErr.getCapturedOutput(),
+        stdOut.getDroppedLines() + stdErr.getDroppedLines());
   }
 
   /**
@@ -73,63 +252,276 @@ public final class ShellExecUtil {
   }
 
   /**
-   * Execute a process and return its stdout.
+   * Quote a string as a single shell word.
+   *
+   * @param word to quote.
+   * @return the quoted word.
    */
-  public static class ProcessWaitForCallable implements Callable<String> {
-    /** Proces handle. */
-    private Process mProcess;
+  public static String quote(String word) {
+    return "'" + word.replace("'", "'\\''") + "'";
+  }
+
+  /**
+   * Wait for a process to exit, ignoring interrupts. The interrupt status of the current thread
+   * is restored before returning.
+   *
+   * @param process to wait for.
+   * @return exit code of the process.
+   */
+  private static int waitForUninterruptibly(Process process) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return process.waitFor();
+        } catch (InterruptedException ie) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Wait for a process to exit, ignoring interrupts, until a deadline.
+   *
+   * @param process to wait for.
+   * @param timeoutMs how long to wait.
+   * @return exit code of the process, or null if it is still running at the deadline.
+   */
+  private static Integer waitForUninterruptibly(Process process, long timeoutMs) {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    while (true) {
+      try {
+        return process.exitValue();
+      } catch (IllegalThreadStateException itse) {
+        final long remainingMs = deadline - System.currentTimeMillis();
+        if (remainingMs <= 0) {
+          return null;
+        }
+        Uninterruptibles.sleepUninterruptibly(
+            Math.min(POLL_INTERVAL_MS, remainingMs), TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Kill a process and all of its descendants. The descendants are found before anything is
+   * killed, since a killed parent's children are adopted by init and can no longer be traced.
+   * Failing to find the process id degrades to only destroying the process itself.
+   *
+   * @param process to kill.
+   */
+  static void destroyTree(Process process) {
+    final Long pid = getPid(process);
+    final List<String> kill = Lists.newArrayList("kill", "-KILL");
+    if (null != pid) {
+      kill.add(pid.toString());
+      kill.addAll(findDescendants(pid.toString()));
+    }
+    if (kill.size() > 2) {
+      try {
+        waitForUninterruptibly(new ProcessBuilder(kill).redirectErrorStream(true).start());
+      } catch (IOException ioe) {
+        // Fall back to destroying the process itself.
+      }
+    }
+    process.destroy();
+    waitForUninterruptibly(process);
+  }
+
+  /**
+   * Get the operating system id of a process: through Process.pid() on JVMs which have it, or
+   * through the private field of the UNIX process implementation otherwise.
+   *
+   * @param process to get the id of.
+   * @return the process id, or null if it can not be found.
+   */
+  private static Long getPid(Process process) {
+    try {
+      final Method method = Process.class.getMethod("pid");
+      return ((Number) method.invoke(process)).longValue();
+    } catch (Exception e) {
+      // Not available before Java 9.
+    }
+    try {
+      final Field field = process.getClass().getDeclaredField("pid");
+      field.setAccessible(true);
+      return ((Number) field.get(process)).longValue();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Find the descendants of a process, children first.
+   *
+   * @param pid of the process.
+   * @return the ids of its descendant processes; empty if they can not be listed.
+   */
+  private static List<String> findDescendants(String pid) {
+    final List<String> descendants = Lists.newArrayList();
+    final Deque<String> parents = new ArrayDeque<String>();
+    parents.add(pid);
+    while (!parents.isEmpty()) {
+      final String parent = parents.removeFirst();
+      try {
+        final Process pgrep = new ProcessBuilder("pgrep", "-P", parent).start();
+        pgrep.getOutputStream().close();
+        pgrep.getErrorStream().close();
+        final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(pgrep.getInputStream(), Charset.defaultCharset()));
+        try {
+          String line = reader.readLine();
+          while (line != null) {
+            if (!line.trim().isEmpty()) {
+              descendants.add(line.trim());
+              parents.addLast(line.trim());
+            }
+            line = reader.readLine();
+          }
+        } finally {
+          reader.close();
+        }
+        waitForUninterruptibly(pgrep);
+      } catch (IOException ioe) {
+        // pgrep is not available; only the process itself is killed.
+        break;
+      }
+    }
+    return descendants;
+  }
+
+  /**
+   * Thrown when a command does not complete within its deadline. The command and every process it
+   * spawned have been killed by the time this is thrown.
+   */
+  public static final class CommandTimeoutException extends IOException {
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    /** The output the command wrote to stdout before it was killed. */
+    private final String mStdOut;
+
+    /** The output the command wrote to stderr before it was killed. */
+    private final String mStdErr;
 
     /**
-     * Construct process from shell command and run it.
+     * Construct the exception.
      *
-     * @param command to execute.
-     * @throws IOException if running the command fails.
+     * @param command which timed out.
+     * @param timeoutMs the deadline the command exceeded.
+     * @param stdOut captured before the command was killed.
+     * @param stdErr captured before the command was killed.
      */
-    public ProcessWaitForCallable(String command) throws IOException {
-      this.mProcess = Runtime.getRuntime().exec(command);
+    public CommandTimeoutException(
+        String command,
+        long timeoutMs,
+        String stdOut,
+        String stdErr
+    ) {
+      super(String.format("'%s' did not complete within %d ms and was killed.",
+          command, timeoutMs));
+      mStdOut = stdOut;
+      mStdErr = stdErr;
     }
 
+    /** @return the output the command wrote to stdout before it was killed. */
+    public String getStdOut() {
+      return mStdOut;
+    }
+
+    /** @return the output the command wrote to stderr before it was killed. */
+    public String getStdErr() {
+      return mStdErr;
+    }
+  }
+
+  /**
+   * Reads an output stream of a child process line by line until it is closed, optionally
+   * forwarding each line to a maven log, and keeps the most recent lines in a bounded buffer.
+   */
+  private static final class StreamDrainer implements Callable<Void> {
+    /** The stream to drain. */
+    private final InputStream mStream;
+
+    /** Log to forward lines to, or null. */
+    private final Log mLog;
+
+    /** Whether this stream is stderr, which is logged at warn level. */
+    private final boolean mIsStdErr;
+
+    /**
+     * The most recent lines read from the stream. Guarded by itself: the output of a command which
+     * timed out is read while a grandchild holding the pipe open may still write to it.
+     */
+    private final Deque<String> mLines = new ArrayDeque<String>();
+
+    /** Number of lines evicted from the buffer. Guarded by mLines. */
+    private int mDroppedLines = 0;
+
     /**
-     * Wait for shell command to finish and return it's stdout.
+     * Construct a drainer.
      *
-     * @return standard out.
-     * @throws Exception if the process wait fails or the standard out can not be collected.
+     * @param stream to drain.
+     * @param log to forward lines to, or null.
+     * @param isStdErr whether the stream is stderr.
      */
+    private StreamDrainer(InputStream stream, Log log, boolean isStdErr) {
+      mStream = stream;
+      mLog = log;
+      mIsStdErr = isStdErr;
+    }
+
+    /** {@inheritDoc} */
     @Override
-    public String call() throws Exception {
-      mProcess.waitFor();
-      BufferedReader stdOutReader = null;
+    public Void call() throws IOException {
+      final BufferedReader reader =
+          new BufferedReader(new InputStreamReader(mStream, Charset.defaultCharset()));
       try {
-        stdOutReader = new BufferedReader(
-            new InputStreamReader(mProcess.getInputStream(), Charset.defaultCharset()));
-        final StringBuffer stdOut = new StringBuffer();
-        String stdOutLine = stdOutReader.readLine();
-        while (stdOutLine != null) {
-          stdOut.append(stdOutLine + "\n");
-          stdOutLine = stdOutReader.readLine();
+        String line = reader.readLine();
+        while (line != null) {
+          if (null != mLog) {
+            if (mIsStdErr) {
+              mLog.warn(line);
+            } else {
+              mLog.info(line);
+            }
+          }
+          synchronized (mLines) {
+            if (mLines.size() == MAX_CAPTURED_LINES) {
+              mLines.removeFirst();
+              mDroppedLines++;
+            }
+            mLines.addLast(line);
+          }
+          line = reader.readLine();
         }
-        return stdOut.toString();
       } finally {
-        if (null != stdOutReader) {
-          stdOutReader.close();
+        reader.close();
+      }
+      return null;
+    }
+
+    /** @return the captured lines, each terminated by a newline. */
+    private String getCapturedOutput() {
+      final StringBuilder output = new StringBuilder();
+      synchronized (mLines) {
+        for (String line : mLines) {
+          output.append(line).append('\n');
         }
       }
+      return output.toString();
     }
 
-    /**
-     * Execute a shell command, uninterruptibly wait for completion, and return the stdout.
-     *
-     * @param command to execute.
-     * @return standard out.
-     * @throws IOException if running command fails.
-     * @throws ExecutionException if process future can be uninterruptibly acquired.
-     */
-    public static String executeCommand(String command) throws IOException, ExecutionException {
-      FutureTask<String> processFuture =
-          new FutureTask<String>(new ProcessWaitForCallable(command));
-      ExecutorService executor = Executors.newFixedThreadPool(1);
-      executor.execute(processFuture);
-      return Uninterruptibles.getUninterruptibly(processFuture);
+    /** @return the number of lines that did not fit in the buffer. */
+    private int getDroppedLines() {
+      synchronized (mLines) {
+        return mDroppedLines;
+      }
     }
   }
 }
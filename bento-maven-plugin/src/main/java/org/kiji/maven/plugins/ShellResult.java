@@ -0,0 +1,100 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+/**
+ * The outcome of a shell command run by {@link ShellExecUtil}: its exit code and the (possibly
+ * truncated) output it wrote to stdout and stderr.
+ */
+public final class ShellResult {
+  /** The command that was run. */
+  private final String mCommand;
+
+  /** Exit code of the command. */
+  private final int mExitCode;
+
+  /** Captured standard out. */
+  private final String mStdOut;
+
+  /** Captured standard error. */
+  private final String mStdErr;
+
+  /** Number of output lines dropped because they did not fit in the capture buffers. */
+  private final int mDroppedLines;
+
+  /**
+   * Construct a result.
+   *
+   * @param command that was run.
+   * @param exitCode of the command.
+   * @param stdOut captured standard out.
+   * @param stdErr captured standard error.
+   * @param droppedLines number of output lines that were not captured.
+   */
+  public ShellResult(
+      String command,
+      int exitCode,
+      String stdOut,
+      String stdErr,
+      int droppedLines
+  ) {
+    mCommand = command;
+    mExitCode = exitCode;
+    mStdOut = stdOut;
+    mStdErr = stdErr;
+    mDroppedLines = droppedLines;
+  }
+
+  /** @return the command that was run. */
+  public String getCommand() {
+    return mCommand;
+  }
+
+  /** @return the exit code of the command. */
+  public int getExitCode() {
+    return mExitCode;
+  }
+
+  /** @return true if the command exited with code 0. */
+  public boolean isSuccess() {
+    return mExitCode == 0;
+  }
+
+  /** @return the captured standard out. */
+  public String getStdOut() {
+    return mStdOut;
+  }
+
+  /** @return the captured standard error. */
+  public String getStdErr() {
+    return mStdErr;
+  }
+
+  /** @return the number of output lines that did not fit in the capture buffers. */
+  public int getDroppedLines() {
+    return mDroppedLines;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String toString() {
+    return String.format("'%s' exited with code %d", mCommand, mExitCode);
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Publishes the site files generated by the bento script to the location where integration tests
+ * expect them, lists them in a "conf-index.conf" file next to them, and records their checksums in
+ * a "conf-checksums.sha1" manifest.
+ *
+ * Every file is written to a temporary file and atomically renamed into place, so concurrent
+ * readers never see a partially written file. Files whose content is unchanged are not rewritten.
+ * The index is rewritten from scratch on every publication, so it lists each site file exactly
+ * once, one absolute path per line as it always has. The SHA-1 checksum of each site file is kept
+ * in the separate manifest, in the format of 'sha1sum', so that readers of the index are not
+ * affected. Site files are tuned, see {@link SiteFileTuning}, before they are compared and
+ * checksummed.
+ */
+public final class SiteFilePublisher {
+  /**
+   * Where in the bento-cluster environment are the generated site files stored.
+   * TODO: Configure the bento script to write the site files to a pre-specified location.
+   */
+  public static final List<String> SITE_FILE_PATHS_RELATIVE_TO_BENTO_DIR = ImmutableList.of(
+      "client-conf/hbase/hbase-site.xml",
+      "client-conf/hadoop/core-site.xml",
+      "client-conf/hadoop/mapred-site.xml",
+      "client-conf/hadoop/yarn-site.xml"
+  );
+
+  /** Name of the index file listing the published site files. */
+  public static final String CONF_INDEX_FILE_NAME = "conf-index.conf";
+
+  /** Name of the manifest holding the checksums of the published site files. */
+  public static final String CHECKSUMS_FILE_NAME = "conf-checksums.sha1";
+
+  /** The maven log used to communicate with the maven user. */
+  private final Log mLog;
+
+  /** Where on this machine the bento-cluster installation lives. */
+  private final File mBentoDirPath;
+
+  /** The directory to publish the site files to. */
+  private final File mSiteFilesOutputDirPath;
+
+  /** Settings merged into the site files as they are published. */
+  private final SiteFileTuning mTuning;
+
+  /**
+   * Construct a publisher.
+   *
+   * @param log The maven log.
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @param siteFilesOutputDirPath the directory to publish the site files to.
+   */
+  public SiteFilePublisher(Log log, File bentoDirPath, File siteFilesOutputDirPath) {
+    this(log, bentoDirPath, siteFilesOutputDirPath, SiteFileTuning.NONE);
+  }
+
+  /**
+   * Construct a publisher which tunes the site files as it publishes them.
+   *
+   * @param log The maven log.
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @param siteFilesOutputDirPath the directory to publish the site files to.
+   * @param tuning settings to merge into the site files.
+   */
+  public SiteFilePublisher(
+      Log log,
+      File bentoDirPath,
+      File siteFilesOutputDirPath,
+      SiteFileTuning tuning
+  ) {
+    mLog = log;
+    mBentoDirPath = bentoDirPath;
+    mSiteFilesOutputDirPath = siteFilesOutputDirPath;
+    mTuning = tuning;
+  }
+
+  /**
+   * Read the site files generated by the bento script.
+   *
+   * @param bentoDirPath path to the bento-cluster environment installation.
+   * @return the content of each site file, by file name, in publication order.
+   * @throws IOException if a site file can not be read.
+   */
+  public static Map<String, byte[]> readGeneratedSiteFiles(File bentoDirPath) throws IOException {
+    final Map<String, byte[]> siteFiles = Maps.newLinkedHashMap();
+    for (String siteFilePathRelativeToBento : SITE_FILE_PATHS_RELATIVE_TO_BENTO_DIR) {
+      final File generatedSiteFile = new File(bentoDirPath, siteFilePathRelativeToBento);
+      try {
+        siteFiles.put(generatedSiteFile.getName(), Files.toByteArray(generatedSiteFile));
+      } catch (IOException ioe) {
+        throw new IOException(
+            "Unable to read generated site file " + generatedSiteFile.getAbsolutePath(), ioe);
+      }
+    }
+    return siteFiles;
+  }
+
+  /**
+   * Publish all the site files generated by the bento script, then rewrite the index.
+   *
+   * @throws IOException if publishing a site file or writing the index file fails.
+   */
+  public void publishAll() throws IOException {
+    publishAll(readGeneratedSiteFiles(mBentoDirPath));
+  }
+
+  /**
+   * Publish site files captured earlier, e.g. by {@link BentoCluster#getSiteFiles()}, then
+   * rewrite the index.
+   *
+   * @param siteFiles content of each site file, by file name.
+   * @throws IOException if publishing a site file or writing the index file fails.
+   */
+  public void publishAll(Map<String, byte[]> siteFiles) throws IOException {
+    FileUtils.forceMkdir(mSiteFilesOutputDirPath);
+    final Map<File, String> checksums = Maps.newLinkedHashMap();
+    int unchanged = 0;
+    for (Map.Entry<String, byte[]> siteFile : siteFiles.entrySet()) {
+      final byte[] content = mTuning.apply(siteFile.getKey(), siteFile.getValue());
+      final File writtenFile = new File(mSiteFilesOutputDirPath, siteFile.getKey());
+      if (!publish(writtenFile, content)) {
+        unchanged++;
+      }
+      checksums.put(writtenFile, Hashing.sha1().hashBytes(content).toString());
+    }
+
+    final File confIndexFile = new File(mSiteFilesOutputDirPath, CONF_INDEX_FILE_NAME);
+    publish(confIndexFile, formatIndex(checksums).getBytes(Charsets.UTF_8));
+    publish(new File(mSiteFilesOutputDirPath, CHECKSUMS_FILE_NAME),
+        formatChecksums(checksums).getBytes(Charsets.UTF_8));
+    mLog.info(String.format("Published %d site files (%d unchanged) listed in conf index: %s",
+        checksums.size(), unchanged, confIndexFile.getAbsolutePath()));
+  }
+
+  /**
+   * Format the conf index: one absolute site file path per line.
+   *
+   * @param checksums of the published site files.
+   * @return the content of the index file.
+   */
+  private static String formatIndex(Map<File, String> checksums) {
+    final StringBuilder index = new StringBuilder();
+    for (File siteFile : checksums.keySet()) {
+      index.append(siteFile.getAbsolutePath()).append('\n');
+    }
+    return index.toString();
+  }
+
+  /**
+   * Format the checksum manifest: the SHA-1 checksum and name of each site file per line, as
+   * written by 'sha1sum', so that 'sha1sum -c' can check the site files.
+   *
+   * @param checksums of the published site files.
+   * @return the content of the manifest.
+   */
+  private static String formatChecksums(Map<File, String> checksums) {
+    final StringBuilder manifest = new StringBuilder();
+    for (Map.Entry<File, String> entry : checksums.entrySet()) {
+      manifest.append(String.format("%s  %s\n", entry.getValue(), entry.getKey().getName()));
+    }
+    return manifest.toString();
+  }
+
+  /**
+   * Atomically replace the content of a file, unless it already has that content.
+   *
+   * @param target file to write.
+   * @param content to write.
+   * @return true if the file was written, false if its content was already up to date.
+   * @throws IOException if the file can not be written.
+   */
+  private boolean publish(File target, byte[] content) throws IOException {
+    if (target.exists() && Arrays.equals(Files.toByteArray(target), content)) {
+      mLog.debug("Site file is up to date: " + target.getAbsolutePath());
+      return false;
+    }
+    final File temporary =
+        File.createTempFile("." + target.getName() + ".", ".tmp", target.getParentFile());
+    try {
+      Files.write(content, temporary);
+      try {
+        java.nio.file.Files.move(temporary.toPath(), target.toPath(),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException amnse) {
+        java.nio.file.Files.move(temporary.toPath(), target.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException ioe) {
+      FileUtils.deleteQuietly(temporary);
+      throw new IOException(String.format(
+          "Writing site file %s failed.", target.getAbsolutePath()), ioe);
+    }
+    mLog.info("Wrote config site file: " + target.getAbsolutePath());
+    return true;
+  }
+}
@@ -0,0 +1,246 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Hadoop and HBase properties merged into the site files as they are published, so that test
+ * clients get settings suited to tests without editing the bento-cluster installation. Settings
+ * come from named tuning profiles, e.g. "fast-test" or "low-memory", and from overrides given as
+ * "name=value"; later profiles override earlier ones, and overrides win over all profiles.
+ *
+ * Each property is merged into the site file its name belongs to: "hbase.*" and "zookeeper.*" go
+ * to hbase-site.xml, MapReduce properties to mapred-site.xml, other "yarn.*" properties to
+ * yarn-site.xml, and everything else to core-site.xml. Only the site files read by clients are
+ * rewritten, so only client-side settings take effect; the cluster daemons keep their own.
+ */
+public final class SiteFileTuning {
+  /** No tuning: site files are published as generated. */
+  public static final SiteFileTuning NONE =
+      new SiteFileTuning(Collections.<String, Map<String, String>>emptyMap());
+
+  /** Classpath location of the tuning profiles, "&lt;profile&gt;.properties" each. */
+  private static final String PROFILE_RESOURCE_FORMAT = "tuning/%s.properties";
+
+  /** Settings to merge, by site file name, then by property name. */
+  private final Map<String, Map<String, String>> mSettings;
+
+  /**
+   * Construct a tuning.
+   *
+   * @param settings to merge, by site file name, then by property name.
+   */
+  private SiteFileTuning(Map<String, Map<String, String>> settings) {
+    mSettings = settings;
+  }
+
+  /**
+   * Assemble a tuning from profiles and overrides.
+   *
+   * @param profiles names of the tuning profiles to apply, in order; may be null.
+   * @param overrides properties as "name=value", applied after the profiles; may be null.
+   * @return the tuning.
+   * @throws IOException if a profile can not be read.
+   * @throws IllegalArgumentException if a profile does not exist or an override is malformed.
+   */
+  public static SiteFileTuning create(List<String> profiles, List<String> overrides)
+      throws IOException {
+    final Map<String, Map<String, String>> settings = Maps.newLinkedHashMap();
+    if (null != profiles) {
+      for (String profile : profiles) {
+        for (Map.Entry<String, String> setting : loadProfile(profile.trim()).entrySet()) {
+          put(settings, setting.getKey(), setting.getValue());
+        }
+      }
+    }
+    if (null != overrides) {
+      for (String override : overrides) {
+        final int equals = override.indexOf('=');
+        if (equals <= 0) {
+          throw new IllegalArgumentException(String.format(
+              "Site file override '%s' is not of the form name=value.", override));
+        }
+        put(settings, override.substring(0, equals).trim(), override.substring(equals + 1).trim());
+      }
+    }
+    return new SiteFileTuning(settings);
+  }
+
+  /**
+   * Get the site file a property is merged into.
+   *
+   * @param property name of the property.
+   * @return the name of the site file, e.g. "hbase-site.xml".
+   */
+  public static String siteFileFor(String property) {
+    if (property.startsWith("hbase.") || property.startsWith("zookeeper.")) {
+      return "hbase-site.xml";
+    } else if (property.startsWith("mapred.") || property.contains("mapreduce.")) {
+      return "mapred-site.xml";
+    } else if (property.startsWith("yarn.")) {
+      return "yarn-site.xml";
+    } else {
+      return "core-site.xml";
+    }
+  }
+
+  /** @return the settings to merge, by site file name, then by property name. */
+  public Map<String, Map<String, String>> getSettings() {
+    return Collections.unmodifiableMap(mSettings);
+  }
+
+  /**
+   * Merge the settings belonging to a site file into its content. Properties already in the file
+   * have their value replaced; the others are appended.
+   *
+   * @param siteFileName name of the site file, e.g. "hbase-site.xml".
+   * @param content of the site file.
+   * @return the tuned content; the content itself if no setting belongs to the site file.
+   * @throws IOException if the site file is not a Hadoop configuration file.
+   */
+  public byte[] apply(String siteFileName, byte[] content) throws IOException {
+    final Map<String, String> settings = mSettings.get(siteFileName);
+    if ((null == settings) || settings.isEmpty()) {
+      return content;
+    }
+    try {
+      final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+          .parse(new ByteArrayInputStream(content));
+      final Element configuration = document.getDocumentElement();
+      final Map<String, Element> values = Maps.newHashMap();
+      final NodeList properties = configuration.getElementsByTagName("property");
+      for (int i = 0; i < properties.getLength(); i++) {
+        final Element property = (Element) properties.item(i);
+        final Element name = child(property, "name");
+        final Element value = child(property, "value");
+        if ((null != name) && (null != value)) {
+          values.put(name.getTextContent().trim(), value);
+        }
+      }
+      for (Map.Entry<String, String> setting : settings.entrySet()) {
+        final Element existing = values.get(setting.getKey());
+        if (null != existing) {
+          existing.setTextContent(setting.getValue());
+        } else {
+          final Element property = document.createElement("property");
+          property.appendChild(document.createElement("name"))
+              .setTextContent(setting.getKey());
+          property.appendChild(document.createElement("value"))
+              .setTextContent(setting.getValue());
+          configuration.appendChild(property);
+        }
+      }
+
+      final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+      final ByteArrayOutputStream tuned = new ByteArrayOutputStream();
+      transformer.transform(new DOMSource(document), new StreamResult(tuned));
+      return tuned.toByteArray();
+    } catch (ParserConfigurationException pce) {
+      throw new IOException("Unable to tune site file " + siteFileName, pce);
+    } catch (SAXException se) {
+      throw new IOException("Malformed site file " + siteFileName, se);
+    } catch (TransformerException te) {
+      throw new IOException("Unable to tune site file " + siteFileName, te);
+    }
+  }
+
+  /**
+   * Load a tuning profile from the classpath.
+   *
+   * @param profile name of the profile.
+   * @return the properties of the profile, in name order.
+   * @throws IOException if the profile can not be read.
+   */
+  private static Map<String, String> loadProfile(String profile) throws IOException {
+    final InputStream in =
+        SiteFileTuning.class.getResourceAsStream(String.format(PROFILE_RESOURCE_FORMAT, profile));
+    if (null == in) {
+      throw new IllegalArgumentException("Unknown tuning profile: " + profile);
+    }
+    final Properties properties = new Properties();
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    return ImmutableSortedMap.copyOf(Maps.fromProperties(properties));
+  }
+
+  /**
+   * Record a setting under the site file it belongs to.
+   *
+   * @param settings by site file name, then by property name.
+   * @param property name of the property.
+   * @param value of the property.
+   */
+  private static void put(
+      Map<String, Map<String, String>> settings,
+      String property,
+      String value
+  ) {
+    final String siteFileName = siteFileFor(property);
+    if (!settings.containsKey(siteFileName)) {
+      settings.put(siteFileName, Maps.<String, String>newLinkedHashMap());
+    }
+    settings.get(siteFileName).put(property, value);
+  }
+
+  /**
+   * Find the first child element of an element with a given tag name.
+   *
+   * @param parent element.
+   * @param tagName of the child.
+   * @return the child, or null if there is none.
+   */
+  private static Element child(Element parent, String tagName) {
+    for (Node node = parent.getFirstChild(); null != node; node = node.getNextSibling()) {
+      if ((node instanceof Element) && tagName.equals(node.getNodeName())) {
+        return (Element) node;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Maven goal which snapshots the data directories of a seeded Bento cluster, so that later builds
+ * with the same fixture inputs can restore them with the 'restore' goal instead of seeding the
+ * cluster again. Bind it after the step which seeds the cluster.
+ */
+@Mojo(
+    name = "snapshot",
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    threadSafe = true
+)
+public class SnapshotMojo extends AbstractSnapshotMojo {
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (isSkip()) {
+      getLog().info("Not snapshotting a Bento cluster because skip=true.");
+      return;
+    }
+
+    final File archive = getSnapshotArchive();
+    if (archive.exists()) {
+      getLog().info("Bento cluster snapshot of these fixtures already exists: " + archive);
+      return;
+    }
+    try {
+      getCluster().snapshot(getDataDirs(), archive);
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to snapshot Bento cluster.", e);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven goal which starts a Bento cluster in the background and returns right away, so that the
+ * cluster boots while the project is compiled and unit tested. The 'await' goal with the same
+ * cluster id waits for the cluster to be up and generates the site files; the 'stop' goal stops
+ * it as usual.
+ */
+@Mojo(
+    name = "start-async",
+    defaultPhase = LifecyclePhase.INITIALIZE,
+    threadSafe = true
+)
+public class StartAsyncMojo extends AbstractClusterMojo {
+  /** If true, this goal should be a no-op. */
+  @Parameter(property = "skip", alias = "skip", defaultValue = "false")
+  private boolean mSkip;
+
+  /**
+   * Supervisor processes which must reach a given state before the cluster is considered up, as
+   * "process-name:STATE". Defaults to "hdfs-init:EXITED". See the 'start' goal.
+   */
+  @Parameter(property = "bento.required.services", alias = "bento.required.services")
+  private List<String> mRequiredServices;
+
+  /** {@inheritDoc} */
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (mSkip) {
+      getLog().info("Not starting a Bento cluster because skip=true.");
+      return;
+    }
+
+    checkBentoDirPath();
+    reapPendingTeardowns();
+
+    final BentoCluster cluster = new BentoCluster(
+        getLog(),
+        getBentoDirPath(),
+        BentoClusterRegistry.generateBentoName(),
+        ServiceRequirement.parseAll(mRequiredServices)
+    );
+    setCommandPolicy(cluster);
+    cluster.setStartupTimeoutMs(chooseStartupTimeoutMs(getBootStats()));
+    try {
+      BentoClusterRegistry.register(getClusterId(), cluster);
+    } catch (IllegalStateException ise) {
+      throw new MojoExecutionException("Unable to start Bento cluster.", ise);
+    }
+    cluster.startAsync();
+    getLog().info(String.format(
+        "Starting the Bento cluster '%s' in the background.", cluster.getBentoName()));
+  }
+}
@@ -21,45 +21,82 @@ package org.kiji.maven.plugins;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
-import com.google.common.base.Preconditions;
-import org.apache.commons.io.FileUtils;
-import org.apache.maven.plugin.AbstractMojo;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
 
 /**
  * Maven goal for starting Bento cluster.
  */
 @Mojo(
     name = "start",
-    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST
+    defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+    requiresDependencyResolution = ResolutionScope.TEST,
+    threadSafe = true
 )
-public class StartMojo extends AbstractMojo {
+public class StartMojo extends AbstractClusterMojo {
   /**
-   * Where in the bento-cluster environment are the generated site files stored.
-   * TODO: Configure the bento script to write the site files to a pre-specified location.
+   * Project property set to the directory holding the site files. When one cluster is started per
+   * test fork, it holds the placeholder "${surefire.forkNumber}", which failsafe replaces with the
+   * number of each fork in its system properties.
    */
-  private static final String[] SITE_FILE_PATHS_RELATIVE_TO_BENTO_DIR = new String[] {
-      "client-conf/hbase/hbase-site.xml",
-      "client-conf/hadoop/core-site.xml",
-      "client-conf/hadoop/mapred-site.xml",
-      "client-conf/hadoop/yarn-site.xml",
-  };
+  public static final String SITE_FILES_DIR_PROPERTY = "bento.site.files.dir";
+
+  /** Project property set to "true" when the cluster start was skipped by bento.auto.skip. */
+  public static final String AUTO_SKIPPED_PROPERTY = "bento.auto.skipped";
+
+  /**
+   * Project property set to the fingerprint of the integration test inputs when bento.auto.skip
+   * is enabled, for the 'stop' goal to record if the tests pass.
+   */
+  public static final String AUTO_SKIP_FINGERPRINT_PROPERTY = "bento.auto.skip.fingerprint";
+
+  /** Prefix of the site files directory of each test fork, followed by the fork number. */
+  public static final String FORK_DIR_PREFIX = "fork-";
+
+  /** Placeholder failsafe replaces with the fork number. */
+  private static final String FORK_NUMBER_PLACEHOLDER = "${surefire.forkNumber}";
+
+  /** Backend running a Bento cluster in a Docker container. */
+  private static final String DOCKER_BACKEND = "docker";
+
+  /** Backend running HDFS and HBase mini clusters inside the build JVM. */
+  private static final String MINI_BACKEND = "mini";
 
   /** If true, this goal should be a no-op. */
   @Parameter(property = "skip", alias = "skip", defaultValue = "false")
   private boolean mSkip;
 
-  /** Path to bento-cluster directory containing bin/bento and related executables. */
+  /**
+   * How to run the cluster: "docker" for a Bento cluster in a Docker container, or "mini" for
+   * HDFS and HBase mini clusters inside the build JVM, which start in seconds but provide no
+   * MapReduce or YARN. The "mini" backend requires hbase-testing-util and hadoop-minicluster in
+   * the plugin's dependencies, and does not support reuse.
+   */
   @Parameter(
-      property = "bento.dir.path",
-      alias = "bento.dir.path",
+      property = "bento.backend",
+      alias = "bento.backend",
+      defaultValue = DOCKER_BACKEND,
       required = true
   )
-  private File mBentoDirPath;
+  private String mBackend;
 
   /**
    * The directory that will store all the configuration *-site.xml files required to connect to
@@ -74,14 +111,134 @@ public class StartMojo extends AbstractMojo {
   private File mSiteFilesOutputDirPath;
 
   /**
-   * Generate name for Bento cluster container. Bento name is simply the current timestamp. The
-   * underlying container's name has "bento-" prepended to this timestamp.
-   *
-   * @return name for Bento cluster container.
+   * Supervisor processes which must reach a given state before the cluster is considered up, as
+   * "process-name:STATE", e.g. "hdfs-init:EXITED" or "hbase-master:RUNNING". All are waited for
+   * together, and the goal fails as soon as one of them is FATAL or keeps failing to start.
+   * Defaults to "hdfs-init:EXITED".
    */
-  private static String generateBentoName() {
-    return Long.toString(System.currentTimeMillis());
-  }
+  @Parameter(property = "bento.required.services", alias = "bento.required.services")
+  private List<String> mRequiredServices;
+
+  /**
+   * If reuse is true, a running Bento cluster persisted by an earlier build is attached to instead
+   * of creating a new one, provided it was created with the same configuration. Combine with
+   * persist=true on the 'stop' goal.
+   */
+  @Parameter(property = "reuse", defaultValue = "false")
+  private boolean mReuse;
+
+  /**
+   * If true, a running cluster is leased from the warm cluster pool launched by the 'pool-start'
+   * goal instead of booting one, and the 'stop' goal returns it to the pool. When the pool is not
+   * running or has no idle cluster, a cluster is booted as usual. Only applies to the "docker"
+   * backend with a single cluster.
+   */
+  @Parameter(property = "bento.pool", alias = "bento.pool", defaultValue = "false")
+  private boolean mUsePool;
+
+  /** Directory of the warm cluster pool to lease from when bento.pool=true. */
+  @Parameter(
+      property = "bento.pool.dir.path",
+      alias = "bento.pool.dir.path",
+      defaultValue = "${user.home}/.bento/pool",
+      required = true
+  )
+  private File mPoolDirPath;
+
+  /** How long, in seconds, to wait for a pooled cluster to become idle before booting one. */
+  @Parameter(
+      property = "bento.pool.lease.wait.seconds",
+      alias = "bento.pool.lease.wait.seconds",
+      defaultValue = "0",
+      required = true
+  )
+  private long mLeaseWaitSeconds;
+
+  /**
+   * If true, the modules of a multi-module build share one cluster: the first module to run this
+   * goal starts it, the next ones attach to it and publish its site files, and the 'stop' goal of
+   * the last module needing it stops it. Only applies to a single cluster.
+   */
+  @Parameter(property = "bento.reactor.shared", alias = "bento.reactor.shared",
+      defaultValue = "false")
+  private boolean mReactorShared;
+
+  /** File recording the Bento cluster to reuse when reuse=true. */
+  @Parameter(
+      property = "bento.state.file.path",
+      alias = "bento.state.file.path",
+      defaultValue = "${user.home}/.bento/${project.groupId}.${project.artifactId}.properties",
+      required = true
+  )
+  private File mStateFilePath;
+
+  /**
+   * Number of clusters to start concurrently, one per integration test fork, so that tests run
+   * in parallel do not share HDFS paths or HBase tables. Set it to the failsafe forkCount. When
+   * greater than 1, the site files of fork i are written to "fork-i" in the site files directory.
+   */
+  @Parameter(
+      property = "bento.cluster.count",
+      alias = "bento.cluster.count",
+      defaultValue = "1",
+      required = true
+  )
+  private int mClusterCount;
+
+  /** Directory the JSON timing report of the cluster lifecycle phases is written to. */
+  @Parameter(
+      property = "bento.report.dir.path",
+      alias = "bento.report.dir.path",
+      defaultValue = "${project.build.directory}/bento",
+      required = true
+  )
+  private File mReportDirPath;
+
+  /** Rolling history file each timing report is appended to, one JSON record per line. */
+  @Parameter(
+      property = "bento.timing.history.file.path",
+      alias = "bento.timing.history.file.path",
+      defaultValue = "${user.home}/.bento/timing-history.jsonl",
+      required = true
+  )
+  private File mTimingHistoryFilePath;
+
+  /**
+   * If true, no cluster is started, and failsafe is told to skip, when no integration test class
+   * would run, or when the test classes, main classes and test dependencies are unchanged since
+   * the last run in which all integration tests passed.
+   */
+  @Parameter(property = "bento.auto.skip", alias = "bento.auto.skip", defaultValue = "false")
+  private boolean mAutoSkip;
+
+  /** File recording the fingerprint of the inputs of the last green integration test run. */
+  @Parameter(
+      property = "bento.auto.skip.record.file.path",
+      alias = "bento.auto.skip.record.file.path",
+      defaultValue = "${user.home}/.bento/${project.groupId}.${project.artifactId}.green",
+      required = true
+  )
+  private File mGreenRecordFilePath;
+
+  /** The failsafe filter selecting the integration tests to run, if any. */
+  @Parameter(property = "it.test")
+  private String mItTest;
+
+  /** Whether failsafe skips the integration tests. */
+  @Parameter(property = "skipITs", defaultValue = "false")
+  private boolean mSkipITs;
+
+  /** The project being built. */
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject mProject;
+
+  /** The build session, holding the projects of the reactor. */
+  @Parameter(defaultValue = "${session}", readonly = true, required = true)
+  private MavenSession mSession;
+
+  /** This plugin, to find the projects of the reactor declaring its goals. */
+  @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+  private PluginDescriptor mPlugin;
 
   /**
    * Starts the Bento cluster container in a new thread.
@@ -96,55 +253,431 @@ public class StartMojo extends AbstractMojo {
       return;
     }
 
-    // Start the cluster.
+    if (mAutoSkip && isClusterUnneeded()) {
+      mProject.getProperties().setProperty(AUTO_SKIPPED_PROPERTY, "true");
+      mProject.getProperties().setProperty("skipITs", "true");
+      return;
+    }
+
+    if (MINI_BACKEND.equals(mBackend)) {
+      if (mReuse) {
+        throw new MojoExecutionException("reuse=true is not supported by the mini backend.");
+      }
+    } else if (DOCKER_BACKEND.equals(mBackend)) {
+      checkBentoDirPath();
+      reapPendingTeardowns();
+    } else {
+      throw new MojoExecutionException(String.format(
+          "Unknown bento.backend '%s', expected '%s' or '%s'.",
+          mBackend, DOCKER_BACKEND, MINI_BACKEND));
+    }
+
+    if (mReactorShared && (mClusterCount > 1)) {
+      throw new MojoExecutionException(
+          "bento.reactor.shared=true is not supported with bento.cluster.count > 1.");
+    }
+
+    final SiteFileTuning tuning = createTuning();
+    final BootDurationStats bootStats = getBootStats();
+    final long startupTimeoutMs = chooseStartupTimeoutMs(bootStats);
+
+    if (mClusterCount > 1) {
+      final List<ClusterBackend> clusters = startForkClusters(startupTimeoutMs, bootStats);
+      for (int forkNumber = 1; forkNumber <= clusters.size(); forkNumber++) {
+        publishSiteFiles(
+            clusters.get(forkNumber - 1),
+            new File(mSiteFilesOutputDirPath, FORK_DIR_PREFIX + forkNumber),
+            tuning,
+            "-" + FORK_DIR_PREFIX + forkNumber);
+      }
+      mProject.getProperties().setProperty(SITE_FILES_DIR_PROPERTY, new File(
+          mSiteFilesOutputDirPath, FORK_DIR_PREFIX + FORK_NUMBER_PLACEHOLDER).getAbsolutePath());
+    } else {
+      final ClusterBackend cluster = mReactorShared
+          ? acquireSharedCluster(startupTimeoutMs, bootStats)
+          : startCluster(startupTimeoutMs, bootStats);
+      publishSiteFiles(cluster, mSiteFilesOutputDirPath, tuning, "");
+      mProject.getProperties().setProperty(
+          SITE_FILES_DIR_PROPERTY, mSiteFilesOutputDirPath.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Start the cluster, or reuse a persisted one, and register it.
+   *
+   * @param startupTimeoutMs how long the cluster components may take to start.
+   * @param bootStats to record the boot duration in.
+   * @return the running cluster.
+   * @throws MojoExecutionException if the cluster can not be started.
+   */
+  private ClusterBackend startCluster(long startupTimeoutMs, BootDurationStats bootStats)
+      throws MojoExecutionException {
+    ClusterBackend cluster;
     try {
-      BentoCluster.INSTANCE.start(
+      cluster = mReuse ? findPersistedCluster() : null;
+      if ((null == cluster) && mUsePool && DOCKER_BACKEND.equals(mBackend)) {
+        cluster = leasePooledCluster();
+      }
+      if (null != cluster) {
+        BentoClusterRegistry.register(getClusterId(), cluster);
+      } else {
+        cluster = createCluster();
+        cluster.setStartupTimeoutMs(startupTimeoutMs);
+        BentoClusterRegistry.register(getClusterId(), cluster);
+        try {
+          startAndRecord(cluster, bootStats);
+        } catch (Exception e) {
+          // The 'stop' goal does not run once the build failed, so tear down what did start.
+          BentoClusterRegistry.remove(getClusterId());
+          ClusterTasks.discard(getLog(), cluster);
+          throw e;
+        }
+        if (mReuse) {
+          new ClusterStateFile(mStateFilePath).write(
+              cluster.getBentoName(),
+              ClusterStateFile.fingerprint(getBentoDirPath()));
+        }
+      }
+    } catch (Exception e) {
+      throw new MojoExecutionException("Unable to start Bento cluster.", e);
+    }
+    return cluster;
+  }
+
+  /**
+   * Check if the integration tests can do without a cluster: if none would run, or if their inputs
+   * are unchanged since the last green run. Otherwise, the fingerprint of the inputs is left in a
+   * project property for the 'stop' goal to record if the tests pass.
+   *
+   * @return whether the cluster start can be skipped.
+   * @throws MojoExecutionException if the test inputs can not be read.
+   */
+  private boolean isClusterUnneeded() throws MojoExecutionException {
+    if (mSkipITs) {
+      getLog().info("Not starting a Bento cluster because skipITs=true.");
+      return true;
+    }
+    final List<IntegrationTestGate.TestFilter> filters =
+        IntegrationTestGate.readFailsafeFilters(mProject.getBuildPlugins());
+    if (null == filters) {
+      getLog().info("Not skipping the Bento cluster: "
+          + "unable to read which integration tests failsafe runs in this module.");
+      return false;
+    }
+    final File testClassesDir = new File(mProject.getBuild().getTestOutputDirectory());
+    final List<String> testClasses =
+        IntegrationTestGate.findTestClasses(testClassesDir, mItTest, filters);
+    if (testClasses.isEmpty()) {
+      getLog().info(String.format(
+          "Not starting a Bento cluster: no integration test class in %s%s.",
+          testClassesDir.getAbsolutePath(),
+          (null == mItTest) ? "" : " matches it.test=" + mItTest));
+      return true;
+    }
+
+    final List<File> roots = Lists.newArrayList(
+        testClassesDir, new File(mProject.getBuild().getOutputDirectory()));
+    final List<String> extras = Lists.newArrayList(testClasses);
+    for (Artifact artifact : mProject.getArtifacts()) {
+      final File file = artifact.getFile();
+      if ((null != file) && file.isDirectory()) {
+        // The output directory of another module of the reactor.
+        roots.add(file);
+      } else if (null != file) {
+        extras.add(String.format("%s:%d:%d", artifact.getId(), file.length(), file.lastModified()));
+      }
+    }
+    final String fingerprint;
+    final String greenFingerprint;
+    try {
+      fingerprint = FileFingerprint.of(roots, Ordering.natural().sortedCopy(extras));
+      greenFingerprint = IntegrationTestGate.readGreenFingerprint(mGreenRecordFilePath);
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to fingerprint the integration test inputs.", ioe);
+    }
+    if (fingerprint.equals(greenFingerprint)) {
+      getLog().info(String.format("Not starting a Bento cluster: the %d integration test classes "
+          + "and their inputs are unchanged since the last green run.", testClasses.size()));
+      return true;
+    }
+    mProject.getProperties().setProperty(AUTO_SKIP_FINGERPRINT_PROPERTY, fingerprint);
+    return false;
+  }
+
+  /**
+   * Acquire the cluster shared by the modules of the reactor, starting it if this is the first
+   * module to need it, and register it under the cluster id of this module.
+   *
+   * @param startupTimeoutMs how long the cluster components may take to start.
+   * @param bootStats to record the boot duration in.
+   * @return the running cluster.
+   * @throws MojoExecutionException if the cluster can not be started.
+   */
+  private ClusterBackend acquireSharedCluster(
+      final long startupTimeoutMs,
+      final BootDurationStats bootStats
+  ) throws MojoExecutionException {
+    final ClusterBackend cluster;
+    try {
+      cluster = ReactorClusters.acquire(
           getLog(),
-          mBentoDirPath,
-          generateBentoName()
-      );
+          sharedClusterId(mPlugin, mSession),
+          moduleId(mProject),
+          findParticipants(),
+          new Callable<ClusterBackend>() {
+            @Override
+            public ClusterBackend call() throws Exception {
+              return startCluster(startupTimeoutMs, bootStats);
+            }
+          });
+    } catch (MojoExecutionException mee) {
+      throw mee;
     } catch (Exception e) {
       throw new MojoExecutionException("Unable to start Bento cluster.", e);
     }
+    if (cluster != BentoClusterRegistry.get(getClusterId())) {
+      try {
+        BentoClusterRegistry.register(getClusterId(), cluster);
+      } catch (IllegalStateException ise) {
+        ReactorClusters.release(getLog(), cluster, moduleId(mProject));
+        throw new MojoExecutionException("Unable to attach to Bento cluster.", ise);
+      }
+    }
+    return cluster;
+  }
 
-    for (String siteFilePathRelativeToBento : SITE_FILE_PATHS_RELATIVE_TO_BENTO_DIR) {
-      copySiteFile(siteFilePathRelativeToBento);
+  /**
+   * Find the modules of the reactor which declare the 'start' goal of this plugin, and so need the
+   * shared cluster.
+   *
+   * @return the ids of the modules, as returned by {@link #moduleId(MavenProject)}.
+   */
+  private Set<String> findParticipants() {
+    final Set<String> participants = Sets.newHashSet(moduleId(mProject));
+    for (MavenProject project : mSession.getProjects()) {
+      for (Plugin plugin : project.getBuildPlugins()) {
+        if (!mPlugin.getPluginLookupKey().equals(plugin.getKey())) {
+          continue;
+        }
+        for (PluginExecution execution : plugin.getExecutions()) {
+          if (execution.getGoals().contains("start")) {
+            participants.add(moduleId(project));
+          }
+        }
+      }
     }
+    return participants;
+  }
+
+  /**
+   * Get the id of the cluster shared by the modules of a build. The start time of the build tells
+   * apart the builds run one after the other by a JVM, e.g. a Maven daemon.
+   *
+   * @param plugin this plugin.
+   * @param session of the build.
+   * @return the id of the shared cluster.
+   */
+  static String sharedClusterId(PluginDescriptor plugin, MavenSession session) {
+    return String.format("%s@%s@%d",
+        plugin.getPluginLookupKey(),
+        session.getExecutionRootDirectory(),
+        session.getRequest().getStartTime().getTime());
+  }
+
+  /**
+   * Get the id of a module, for the reference counts of shared clusters.
+   *
+   * @param project of the module.
+   * @return the id of the module.
+   */
+  static String moduleId(MavenProject project) {
+    return String.format("%s:%s", project.getGroupId(), project.getArtifactId());
   }
 
   /**
-   * Copy a site file generated by the bento script to the location specified by the plugin
-   * specification.
+   * Concurrently start one cluster per test fork and register each under its fork cluster id. If
+   * any cluster fails to start, all of them are stopped.
    *
-   * @param siteFilePathRelativeToBento the relative path to the site file within the bento package.
-   * @throws MojoExecutionException if copying the site file or writing to the index file fails.
+   * @param startupTimeoutMs how long the cluster components may take to start.
+   * @param bootStats to record the boot durations in.
+   * @return the running clusters, in fork number order.
+   * @throws MojoExecutionException if any cluster can not be started.
    */
-  private void copySiteFile(String siteFilePathRelativeToBento) throws MojoExecutionException {
-    File generatedSiteFile = new File(mBentoDirPath, siteFilePathRelativeToBento);
+  private List<ClusterBackend> startForkClusters(
+      long startupTimeoutMs,
+      final BootDurationStats bootStats
+  ) throws MojoExecutionException {
+    if (mReuse) {
+      throw new MojoExecutionException("reuse=true is not supported with bento.cluster.count > 1.");
+    }
+    final List<ClusterBackend> clusters = Lists.newArrayList();
     try {
-      FileUtils.copyFileToDirectory(generatedSiteFile, mSiteFilesOutputDirPath);
+      for (int forkNumber = 1; forkNumber <= mClusterCount; forkNumber++) {
+        final ClusterBackend cluster = createCluster();
+        cluster.setStartupTimeoutMs(startupTimeoutMs);
+        BentoClusterRegistry.register(
+            BentoClusterRegistry.forkClusterId(getClusterId(), forkNumber), cluster);
+        clusters.add(cluster);
+      }
+    } catch (IllegalStateException ise) {
+      BentoClusterRegistry.removeWithForks(getClusterId());
+      throw new MojoExecutionException("Unable to start Bento clusters.", ise);
+    }
+
+    getLog().info(String.format("Starting %d Bento clusters, one per test fork...", mClusterCount));
+    final Map<ClusterBackend, Exception> failures =
+        ClusterTasks.runAll(clusters, new ClusterTasks.Task() {
+          @Override
+          public void run(ClusterBackend cluster) throws Exception {
+            startAndRecord(cluster, bootStats);
+          }
+        });
+    if (!failures.isEmpty()) {
+      // The 'stop' goal does not run once the build failed, so tear down what did start.
+      BentoClusterRegistry.removeWithForks(getClusterId());
+      ClusterTasks.runAll(clusters, new ClusterTasks.Task() {
+        @Override
+        public void run(ClusterBackend cluster) {
+          ClusterTasks.discard(getLog(), cluster);
+        }
+      });
+      throw new MojoExecutionException(
+          String.format("Unable to start %d of %d Bento clusters.", failures.size(), mClusterCount),
+          failures.values().iterator().next());
+    }
+    return clusters;
+  }
+
+  /**
+   * Create a handle on a new cluster run by the configured backend.
+   *
+   * @return the cluster, not started yet.
+   */
+  private ClusterBackend createCluster() {
+    final String name = BentoClusterRegistry.generateBentoName();
+    if (MINI_BACKEND.equals(mBackend)) {
+      return new MiniClusterBackend(
+          getLog(), name, new File(mProject.getBuild().getDirectory(), "bento-mini-" + name));
+    }
+    return newBentoCluster(name);
+  }
+
+  /**
+   * Create a handle on a Docker Bento cluster, configured with the command deadlines and retries.
+   *
+   * @param bentoName name of the Bento cluster container.
+   * @return the cluster handle.
+   */
+  private BentoCluster newBentoCluster(String bentoName) {
+    final BentoCluster cluster = new BentoCluster(
+        getLog(), getBentoDirPath(), bentoName, ServiceRequirement.parseAll(mRequiredServices));
+    setCommandPolicy(cluster);
+    return cluster;
+  }
+
+  /**
+   * Start a cluster and record how long it took to come up once created, for the adaptive startup
+   * timeout. Only the boots of Docker Bento clusters are recorded. Failing to record the boot
+   * duration only produces a warning.
+   *
+   * @param cluster to start.
+   * @param bootStats to record the boot duration in.
+   * @throws Exception if the cluster can not be started.
+   */
+  private void startAndRecord(ClusterBackend cluster, BootDurationStats bootStats)
+      throws Exception {
+    cluster.start();
+    if (!(cluster instanceof BentoCluster)) {
+      return;
+    }
+    try {
+      bootStats.record(((BentoCluster) cluster).getStartupWaitMs());
     } catch (IOException ioe) {
-      throw new MojoExecutionException(String.format(
-          "Copying site file %s to location %s failed.",
-          generatedSiteFile.getAbsolutePath(),
-          mSiteFilesOutputDirPath.getAbsolutePath()
-      ), ioe);
-    }
-    File writtenFile = new File(mSiteFilesOutputDirPath, generatedSiteFile.getName());
-    Preconditions.checkArgument(writtenFile.exists());
-    getLog().info("Wrote config site file: " + writtenFile.getAbsolutePath());
-
-    // We will also append the "conf-index.conf" file with the path to the newly written config
-    // site file.
-    File confIndexFile = new File(mSiteFilesOutputDirPath, "conf-index.conf");
+      getLog().warn("Unable to record Bento cluster boot duration: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Publish the site files of a cluster, report its start timings, and start its watchdog and
+   * resource usage sampler.
+   *
+   * @param cluster which started.
+   * @param siteFilesDir to publish the site files to.
+   * @param tuning to merge into the site files.
+   * @param reportSuffix appended to the names of the report files of the cluster, e.g. "-fork-2".
+   * @throws MojoExecutionException if the site files can not be published.
+   */
+  private void publishSiteFiles(
+      ClusterBackend cluster,
+      File siteFilesDir,
+      SiteFileTuning tuning,
+      String reportSuffix
+  ) throws MojoExecutionException {
+    final long copyStart = System.currentTimeMillis();
     try {
-      FileUtils.write(confIndexFile, writtenFile.getAbsolutePath() + "\n", true);
+      new SiteFilePublisher(getLog(), getBentoDirPath(), siteFilesDir, tuning)
+          .publishAll(cluster.getSiteFiles());
     } catch (IOException ioe) {
-      throw new MojoExecutionException(String.format(
-          "Unable to write to configuration index file: %s",
-          writtenFile.getAbsolutePath()
-      ), ioe);
+      throw new MojoExecutionException(ioe.getMessage(), ioe);
+    }
+    cluster.getTimings().recordSince("site-files.copy", copyStart);
+    cluster.reportTimings(
+        new File(mReportDirPath, "timings" + reportSuffix + ".json"),
+        mTimingHistoryFilePath,
+        "start");
+    startMonitors(
+        cluster,
+        new File(siteFilesDir, ClusterWatchdog.UNHEALTHY_MARKER_FILE_NAME),
+        new File(mReportDirPath, "crashes" + reportSuffix + ".log"),
+        new File(mReportDirPath, "resources" + reportSuffix + ".csv"));
+  }
+
+  /**
+   * Lease a running cluster from the warm cluster pool. A pool which is not running or can not be
+   * reached only produces a warning.
+   *
+   * @return the leased cluster, or null if none could be leased.
+   */
+  private ClusterBackend leasePooledCluster() {
+    final ClusterPoolClient client = new ClusterPoolClient(mPoolDirPath);
+    if (!client.isDaemonPublished()) {
+      getLog().info("No cluster pool is running in " + mPoolDirPath.getAbsolutePath());
+      return null;
+    }
+    final long leaseStart = System.currentTimeMillis();
+    final ClusterPoolClient.Lease lease;
+    try {
+      lease = client.lease(TimeUnit.SECONDS.toMillis(mLeaseWaitSeconds));
+    } catch (IOException ioe) {
+      getLog().warn("Unable to lease a cluster from the pool: " + ioe.getMessage());
+      return null;
+    }
+    if (null == lease) {
+      getLog().info("No pooled cluster is idle; booting a Bento cluster.");
+      return null;
+    }
+    final BentoCluster cluster = newBentoCluster(lease.getClusterName());
+    cluster.getTimings().recordSince("pool.lease", leaseStart);
+    getLog().info(String.format("Leased the Bento cluster '%s' from the pool in %d ms.",
+        lease.getClusterName(), System.currentTimeMillis() - leaseStart));
+    return new PooledCluster(getLog(), client, lease, cluster);
+  }
+
+  /**
+   * Attach to the Bento cluster recorded in the state file, if it was created with the current
+   * configuration and is still healthy.
+   *
+   * @return the persisted cluster, or null if there is none to reuse.
+   * @throws Exception if the state file or the bento script can not be read.
+   */
+  private BentoCluster findPersistedCluster() throws Exception {
+    final String bentoName = new ClusterStateFile(mStateFilePath)
+        .readBentoName(ClusterStateFile.fingerprint(getBentoDirPath()));
+    if (null == bentoName) {
+      getLog().info("No reusable Bento cluster recorded in " + mStateFilePath.getAbsolutePath());
+      return null;
     }
-    getLog().info("Appended site file path to conf index: " + confIndexFile.getAbsolutePath());
+    final BentoCluster cluster = newBentoCluster(bentoName);
+    return cluster.attach() ? cluster : null;
   }
 }
@@ -19,18 +19,30 @@
 
 package org.kiji.maven.plugins;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 /**
- * A maven goal that stops the Bento cluster started by the 'start' goal.
+ * A maven goal that stops the Bento cluster started by the 'start' goal, or all of the clusters it
+ * started when it started one per test fork. A cluster shared by the reactor is only stopped by
+ * the last module needing it.
  */
 @Mojo(
     name = "stop",
-    defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST
+    defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST,
+    threadSafe = true
 )
 public class StopMojo extends AbstractMojo {
   /** If true, this goal should be a no-op. */
@@ -41,24 +53,258 @@ public class StopMojo extends AbstractMojo {
   @Parameter(property = "persist", defaultValue = "false")
   private boolean mPersist;
 
+  /**
+   * If detach is true, the cluster is torn down by a background process and the build does not
+   * wait for it. Teardowns that fail are retried by the next 'start' goal or the 'reap' goal. Only
+   * Docker Bento clusters are detached; mini clusters live in the build JVM and stop right away.
+   */
+  @Parameter(property = "detach", defaultValue = "false")
+  private boolean mDetach;
+
+  /**
+   * If true, the cluster is shared by the modules of a multi-module build, and only stopped by the
+   * last module needing it. Must match the 'start' goal.
+   */
+  @Parameter(property = "bento.reactor.shared", alias = "bento.reactor.shared",
+      defaultValue = "false")
+  private boolean mReactorShared;
+
+  /** File recording the Bento cluster to reuse, cleared when the cluster is stopped. */
+  @Parameter(
+      property = "bento.state.file.path",
+      alias = "bento.state.file.path",
+      defaultValue = "${user.home}/.bento/${project.groupId}.${project.artifactId}.properties",
+      required = true
+  )
+  private File mStateFilePath;
+
+  /** Identifies the cluster to stop: the one started by the 'start' goal with this cluster id. */
+  @Parameter(
+      property = "bento.cluster.id",
+      alias = "bento.cluster.id",
+      defaultValue = "${project.groupId}:${project.artifactId}",
+      required = true
+  )
+  private String mClusterId;
+
+  /** Directory the JSON timing report of the cluster lifecycle phases is written to. */
+  @Parameter(
+      property = "bento.report.dir.path",
+      alias = "bento.report.dir.path",
+      defaultValue = "${project.build.directory}/bento",
+      required = true
+  )
+  private File mReportDirPath;
+
+  /** Rolling history file each timing report is appended to, one JSON record per line. */
+  @Parameter(
+      property = "bento.timing.history.file.path",
+      alias = "bento.timing.history.file.path",
+      defaultValue = "${user.home}/.bento/timing-history.jsonl",
+      required = true
+  )
+  private File mTimingHistoryFilePath;
+
+  /** Directory recording the Bento cluster teardowns running in the background. */
+  @Parameter(
+      property = "bento.pending.teardowns.dir.path",
+      alias = "bento.pending.teardowns.dir.path",
+      defaultValue = "${user.home}/.bento/pending-teardowns",
+      required = true
+  )
+  private File mPendingTeardownsDirPath;
+
+  /** File recording the fingerprint of the inputs of the last green integration test run. */
+  @Parameter(
+      property = "bento.auto.skip.record.file.path",
+      alias = "bento.auto.skip.record.file.path",
+      defaultValue = "${user.home}/.bento/${project.groupId}.${project.artifactId}.green",
+      required = true
+  )
+  private File mGreenRecordFilePath;
+
+  /** Summary of the integration test run written by failsafe. */
+  @Parameter(
+      property = "bento.failsafe.summary.file.path",
+      alias = "bento.failsafe.summary.file.path",
+      defaultValue = "${project.build.directory}/failsafe-reports/failsafe-summary.xml",
+      required = true
+  )
+  private File mFailsafeSummaryFilePath;
+
+  /** The project being built. */
+  @Parameter(defaultValue = "${project}", readonly = true, required = true)
+  private MavenProject mProject;
+
+  /** The build session. */
+  @Parameter(defaultValue = "${session}", readonly = true, required = true)
+  private MavenSession mSession;
+
+  /** This plugin, to identify the cluster shared by the reactor. */
+  @Parameter(defaultValue = "${plugin}", readonly = true, required = true)
+  private PluginDescriptor mPlugin;
+
   /** {@inheritDoc} */
   @Override
   public void execute() throws MojoExecutionException {
     if (mSkip) {
       getLog().info("Not stopping an Bento cluster because skip=true.");
+      releaseSkippedModule();
       return;
     }
 
-    if (mPersist) {
-      getLog().info("Not stopping an Bento cluster because persist=true.");
+    if (Boolean.parseBoolean(mProject.getProperties().getProperty(
+        StartMojo.AUTO_SKIPPED_PROPERTY))) {
+      getLog().info("Not stopping a Bento cluster because none was needed.");
+      releaseSkippedModule();
+      return;
+    }
+    recordGreenRun();
+
+    final List<ClusterBackend> clusters = BentoClusterRegistry.removeWithForks(mClusterId);
+    if (clusters.isEmpty()) {
+      getLog().error(String.format(
+          "Attempting to shut down the Bento cluster with id '%s', but none was started.",
+          mClusterId));
       return;
     }
 
-    // Start the cluster.
+    // A cluster shared by the reactor is only stopped by the last module needing it, which also
+    // stops its watchdog and sampler.
+    if ((1 == clusters.size())
+        && !ReactorClusters.release(getLog(), clusters.get(0), StartMojo.moduleId(mProject))) {
+      return;
+    }
+
+    // Report the resource usage of the clusters before they go down.
+    for (int i = 0; i < clusters.size(); i++) {
+      clusters.get(i).stopSampler(new File(mReportDirPath,
+          String.format("resources-summary%s.json", reportSuffix(i, clusters.size()))));
+    }
+
+    if (mPersist) {
+      final List<ClusterBackend> persisted = Lists.newArrayList();
+      for (ClusterBackend cluster : clusters) {
+        if (canPersist(cluster)) {
+          cluster.stopWatchdog();
+          persisted.add(cluster);
+        } else {
+          getLog().warn(String.format("Stopping the Bento cluster '%s' although persist=true: "
+              + "it can not outlive the build.", cluster.getBentoName()));
+        }
+      }
+      if (!persisted.isEmpty()) {
+        getLog().info("Not stopping an Bento cluster because persist=true.");
+        clusters.removeAll(persisted);
+      }
+      if (clusters.isEmpty()) {
+        return;
+      }
+    }
+
+    // Stop the clusters, one per test fork if several were started.
+    final PendingTeardowns teardowns = new PendingTeardowns(getLog(), mPendingTeardownsDirPath);
+    final Map<ClusterBackend, Exception> failures =
+        ClusterTasks.runAll(clusters, new ClusterTasks.Task() {
+          @Override
+          public void run(ClusterBackend cluster) throws Exception {
+            if (mDetach && (cluster instanceof BentoCluster)) {
+              ((BentoCluster) cluster).stopDetached(teardowns);
+            } else {
+              cluster.stop();
+            }
+          }
+        });
+    if (!failures.isEmpty()) {
+      throw new MojoExecutionException(
+          "Unable to stop Bento cluster.", failures.values().iterator().next());
+    }
+    try {
+      new ClusterStateFile(mStateFilePath).clear();
+    } catch (IOException ioe) {
+      throw new MojoExecutionException("Unable to stop Bento cluster.", ioe);
+    }
+    for (int i = 0; i < clusters.size(); i++) {
+      final String reportFileName =
+          String.format("timings-stop%s.json", reportSuffix(i, clusters.size()));
+      clusters.get(i).reportTimings(
+          new File(mReportDirPath, reportFileName),
+          mTimingHistoryFilePath,
+          "stop");
+    }
+  }
+
+  /**
+   * Release the cluster shared by the reactor on behalf of this module, which skipped its goals,
+   * so that the cluster is not kept up until the build ends waiting for this module. The cluster
+   * is stopped if this module was the last one needing it.
+   *
+   * @throws MojoExecutionException if the cluster can not be stopped.
+   */
+  private void releaseSkippedModule() throws MojoExecutionException {
+    if (!mReactorShared) {
+      return;
+    }
+    final ClusterBackend cluster = ReactorClusters.releaseSkipped(
+        getLog(), StartMojo.sharedClusterId(mPlugin, mSession), StartMojo.moduleId(mProject));
+    if (null == cluster) {
+      return;
+    }
+    getLog().info(String.format(
+        "Stopping the Bento cluster '%s' shared by the reactor, which no other module needs.",
+        cluster.getBentoName()));
+    cluster.stopSampler(new File(mReportDirPath, "resources-summary.json"));
     try {
-      BentoCluster.INSTANCE.stop();
+      cluster.stop();
     } catch (Exception e) {
       throw new MojoExecutionException("Unable to stop Bento cluster.", e);
     }
   }
+
+  /**
+   * With bento.auto.skip enabled, record the fingerprint of the integration test inputs if the
+   * tests which just ran all passed, so that the next build with the same inputs skips them.
+   * Failing to record it only produces a warning.
+   */
+  private void recordGreenRun() {
+    final String fingerprint =
+        mProject.getProperties().getProperty(StartMojo.AUTO_SKIP_FINGERPRINT_PROPERTY);
+    // A summary older than this build was left by an earlier run.
+    if ((null == fingerprint) || (mFailsafeSummaryFilePath.lastModified()
+        < mSession.getRequest().getStartTime().getTime())) {
+      return;
+    }
+    try {
+      if (IntegrationTestGate.isGreen(mFailsafeSummaryFilePath)) {
+        IntegrationTestGate.writeGreenFingerprint(mGreenRecordFilePath, fingerprint);
+        getLog().info("Recorded the inputs of this green integration test run in "
+            + mGreenRecordFilePath.getAbsolutePath());
+      }
+    } catch (IOException ioe) {
+      getLog().warn("Unable to record the green integration test run: " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Check whether a cluster can be persisted for a later build to reuse. Mini clusters run inside
+   * the build JVM, so they go down with it whether they are stopped or not. Pooled clusters belong
+   * to the pool, so stopping them returns them to it rather than tearing them down.
+   *
+   * @param cluster to persist.
+   * @return whether the cluster can be kept running for a later build.
+   */
+  private static boolean canPersist(ClusterBackend cluster) {
+    return !(cluster instanceof MiniClusterBackend) && !(cluster instanceof PooledCluster);
+  }
+
+  /**
+   * Get the suffix of the names of the report files of a cluster.
+   *
+   * @param index of the cluster.
+   * @param count of clusters started, one per test fork.
+   * @return the suffix, e.g. "-fork-2", or an empty string for a single cluster.
+   */
+  private static String reportSuffix(int index, int count) {
+    return (1 == count) ? "" : String.format("-fork-%d", index + 1);
+  }
 }
@@ -0,0 +1,429 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * A minimal client for the XML-RPC interface of the supervisor daemon running in a Bento cluster
+ * container. Talking to supervisor over HTTP from the JVM is much cheaper than forking
+ * supervisorctl, and the JVM keeps the HTTP connection alive between calls.
+ */
+public final class SupervisorClient {
+  /** Format of the supervisor XML-RPC endpoint of a Bento cluster container. */
+  private static final String BENTO_SUPERVISOR_URL_FORMAT = "http://bento-%s:9001/RPC2";
+
+  /** How long to wait for a connection to supervisor, in milliseconds. */
+  private static final int CONNECT_TIMEOUT_MS = 5000;
+
+  /** How long to wait for a response from supervisor, in milliseconds. */
+  private static final int READ_TIMEOUT_MS = 30000;
+
+  /** The supervisor XML-RPC endpoint. */
+  private final URL mUrl;
+
+  /**
+   * Construct a client for a supervisor XML-RPC endpoint.
+   *
+   * @param url of the supervisor XML-RPC endpoint, e.g. http://localhost:9001/RPC2.
+   */
+  public SupervisorClient(URL url) {
+    mUrl = url;
+  }
+
+  /**
+   * Construct a client for the supervisor of a Bento cluster container.
+   *
+   * @param bentoName name of the Bento cluster container.
+   * @return a client for the supervisor of the container.
+   */
+  public static SupervisorClient forBento(String bentoName) {
+    try {
+      return new SupervisorClient(new URL(String.format(BENTO_SUPERVISOR_URL_FORMAT, bentoName)));
+    } catch (MalformedURLException mue) {
+      throw new IllegalArgumentException("Invalid Bento cluster name: " + bentoName, mue);
+    }
+  }
+
+  /**
+   * The state of one process managed by supervisor.
+   */
+  public static final class ProcessInfo {
+    /** Name of the process. */
+    private final String mName;
+
+    /** Name of the state of the process, e.g. RUNNING or EXITED. */
+    private final String mStateName;
+
+    /** Exit status of the process, if it exited. */
+    private final int mExitStatus;
+
+    /** Description of the process state provided by supervisor. */
+    private final String mDescription;
+
+    /**
+     * Construct a process state.
+     *
+     * @param name of the process.
+     * @param stateName name of the state of the process.
+     * @param exitStatus of the process.
+     * @param description of the process state.
+     */
+    public ProcessInfo(String name, String stateName, int exitStatus, String description) {
+      mName = name;
+      mStateName = stateName;
+      mExitStatus = exitStatus;
+      mDescription = description;
+    }
+
+    /** @return the name of the process. */
+    public String getName() {
+      return mName;
+    }
+
+    /** @return the name of the state of the process, e.g. RUNNING or EXITED. */
+    public String getStateName() {
+      return mStateName;
+    }
+
+    /** @return the exit status of the process, if it exited. */
+    public int getExitStatus() {
+      return mExitStatus;
+    }
+
+    /** @return the description of the process state provided by supervisor. */
+    public String getDescription() {
+      return mDescription;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+      return String.format("%s %s %s", mName, mStateName, mDescription);
+    }
+  }
+
+  /**
+   * Query the state of one process.
+   *
+   * @param processName name of the process.
+   * @return the state of the process.
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  public ProcessInfo getProcessInfo(String processName) throws IOException {
+    return toProcessInfo(call("supervisor.getProcessInfo", processName));
+  }
+
+  /**
+   * Query the state of all processes.
+   *
+   * @return the state of every process managed by supervisor.
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  public List<ProcessInfo> getAllProcessInfo() throws IOException {
+    final Object result = call("supervisor.getAllProcessInfo");
+    if (!(result instanceof List)) {
+      throw new IOException("Unexpected response from supervisor: " + result);
+    }
+    final ImmutableList.Builder<ProcessInfo> processes = ImmutableList.builder();
+    for (Object process : (List<?>) result) {
+      processes.add(toProcessInfo(process));
+    }
+    return processes.build();
+  }
+
+  /**
+   * Stop all processes, waiting until they are stopped.
+   *
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  public void stopAllProcesses() throws IOException {
+    stopAllProcesses(READ_TIMEOUT_MS);
+  }
+
+  /**
+   * Stop all processes, waiting until they are stopped. Supervisor only answers once every
+   * process has stopped, which may take longer than the default read timeout.
+   *
+   * @param timeoutMs how long to wait for supervisor's answer, or 0 for no deadline.
+   * @throws IOException if supervisor can not be reached, reports an error or does not answer in
+   *     time.
+   */
+  public void stopAllProcesses(long timeoutMs) throws IOException {
+    call(timeoutMs, "supervisor.stopAllProcesses", Boolean.TRUE);
+  }
+
+  /**
+   * Start all processes, waiting until they are started.
+   *
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  public void startAllProcesses() throws IOException {
+    startAllProcesses(READ_TIMEOUT_MS);
+  }
+
+  /**
+   * Start all processes, waiting until they are started. Supervisor only answers once every
+   * process has started, which may take longer than the default read timeout.
+   *
+   * @param timeoutMs how long to wait for supervisor's answer, or 0 for no deadline.
+   * @throws IOException if supervisor can not be reached, reports an error or does not answer in
+   *     time.
+   */
+  public void startAllProcesses(long timeoutMs) throws IOException {
+    call(timeoutMs, "supervisor.startAllProcesses", Boolean.TRUE);
+  }
+
+  /**
+   * Convert an XML-RPC process info struct.
+   *
+   * @param struct returned by supervisor.
+   * @return the process state.
+   * @throws IOException if the struct is not a process info struct.
+   */
+  private static ProcessInfo toProcessInfo(Object struct) throws IOException {
+    if (!(struct instanceof Map)) {
+      throw new IOException("Unexpected response from supervisor: " + struct);
+    }
+    final Map<?, ?> fields = (Map<?, ?>) struct;
+    final Object exitStatus = fields.get("exitstatus");
+    return new ProcessInfo(
+        String.valueOf(fields.get("name")),
+        String.valueOf(fields.get("statename")),
+        (exitStatus instanceof Integer) ? (Integer) exitStatus : 0,
+        String.valueOf(fields.get("description")));
+  }
+
+  /**
+   * Call an XML-RPC method with string and boolean parameters.
+   *
+   * @param methodName of the method to call.
+   * @param params of the call, Strings or Booleans.
+   * @return the decoded return value.
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  private Object call(String methodName, Object... params) throws IOException {
+    return call(READ_TIMEOUT_MS, methodName, params);
+  }
+
+  /**
+   * Call an XML-RPC method with string and boolean parameters.
+   *
+   * @param readTimeoutMs how long to wait for the response, or 0 for no deadline.
+   * @param methodName of the method to call.
+   * @param params of the call, Strings or Booleans.
+   * @return the decoded return value.
+   * @throws IOException if supervisor can not be reached or reports an error.
+   */
+  private Object call(long readTimeoutMs, String methodName, Object... params)
+      throws IOException {
+    final StringBuilder request = new StringBuilder()
+        .append("<?xml version=\"1.0\"?><methodCall><methodName>")
+        .append(methodName)
+        .append("</methodName><params>");
+    for (Object param : params) {
+      request.append("<param><value>");
+      if (param instanceof Boolean) {
+        request.append("<boolean>").append((Boolean) param ? 1 : 0).append("</boolean>");
+      } else {
+        request.append("<string>").append(escapeXml(param.toString())).append("</string>");
+      }
+      request.append("</value></param>");
+    }
+    request.append("</params></methodCall>");
+    final byte[] body = request.toString().getBytes(Charsets.UTF_8);
+
+    final HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    connection.setReadTimeout((int) Math.min(readTimeoutMs, Integer.MAX_VALUE));
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "text/xml");
+    connection.setFixedLengthStreamingMode(body.length);
+    connection.setDoOutput(true);
+    final OutputStream out = connection.getOutputStream();
+    try {
+      out.write(body);
+    } finally {
+      out.close();
+    }
+    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      // Reading the error body lets the connection be reused.
+      final InputStream error = connection.getErrorStream();
+      if (null != error) {
+        try {
+          ByteStreams.toByteArray(error);
+        } finally {
+          error.close();
+        }
+      }
+      throw new IOException(String.format("Supervisor at %s answered %s with: %d %s.",
+          mUrl, methodName, connection.getResponseCode(),
+          connection.getResponseMessage()));
+    }
+    // The response must be read fully and closed for the connection to be kept alive.
+    final byte[] response;
+    final InputStream in = connection.getInputStream();
+    try {
+      response = ByteStreams.toByteArray(in);
+    } finally {
+      in.close();
+    }
+    return parseResponse(methodName, response);
+  }
+
+  /**
+   * Escape the characters of a string that are special in XML character data.
+   *
+   * @param text to escape.
+   * @return the escaped text.
+   */
+  private static String escapeXml(String text) {
+    return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+  }
+
+  /**
+   * Decode an XML-RPC method response.
+   *
+   * @param methodName of the method that was called.
+   * @param response body.
+   * @return the decoded return value.
+   * @throws IOException if the response is malformed or a fault.
+   */
+  private static Object parseResponse(String methodName, byte[] response) throws IOException {
+    final Document document;
+    try {
+      final DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      document = builder.parse(new ByteArrayInputStream(response));
+    } catch (ParserConfigurationException pce) {
+      throw new IOException("Unable to parse supervisor response.", pce);
+    } catch (SAXException se) {
+      throw new IOException("Malformed supervisor response to " + methodName, se);
+    }
+    final Element root = document.getDocumentElement();
+    final Element fault = firstChildElement(root, "fault");
+    if (null != fault) {
+      final Object faultStruct = parseValue(firstChildElement(fault, "value"));
+      throw new IOException(String.format("Supervisor fault in %s: %s", methodName, faultStruct));
+    }
+    final Element params = firstChildElement(root, "params");
+    final Element param = (null == params) ? null : firstChildElement(params, "param");
+    if (null == param) {
+      throw new IOException("Supervisor response to " + methodName + " has no return value.");
+    }
+    return parseValue(firstChildElement(param, "value"));
+  }
+
+  /**
+   * Decode an XML-RPC value element.
+   *
+   * @param value element.
+   * @return a String, Integer, Boolean, Double, List or Map.
+   * @throws IOException if the value is malformed.
+   */
+  private static Object parseValue(Element value) throws IOException {
+    if (null == value) {
+      throw new IOException("Missing value in supervisor response.");
+    }
+    final Element typed = firstChildElement(value, null);
+    if (null == typed) {
+      // A value without a type element is a string.
+      return value.getTextContent();
+    }
+    final String type = typed.getTagName();
+    final String text = typed.getTextContent().trim();
+    try {
+      if ("string".equals(type)) {
+        return typed.getTextContent();
+      } else if ("int".equals(type) || "i4".equals(type)) {
+        return Integer.valueOf(text);
+      } else if ("boolean".equals(type)) {
+        return "1".equals(text);
+      } else if ("double".equals(type)) {
+        return Double.valueOf(text);
+      } else if ("array".equals(type)) {
+        final List<Object> elements = Lists.newArrayList();
+        final Element data = firstChildElement(typed, "data");
+        if (null != data) {
+          for (Node child = data.getFirstChild(); null != child; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+              elements.add(parseValue((Element) child));
+            }
+          }
+        }
+        return elements;
+      } else if ("struct".equals(type)) {
+        final Map<String, Object> members = Maps.newHashMap();
+        for (Node child = typed.getFirstChild(); null != child; child = child.getNextSibling()) {
+          if (child instanceof Element) {
+            final Element member = (Element) child;
+            members.put(
+                firstChildElement(member, "name").getTextContent(),
+                parseValue(firstChildElement(member, "value")));
+          }
+        }
+        return members;
+      } else {
+        // Dates and base64 blobs are not used by the calls we make; keep their text.
+        return typed.getTextContent();
+      }
+    } catch (NumberFormatException nfe) {
+      throw new IOException("Malformed number in supervisor response: " + text, nfe);
+    }
+  }
+
+  /**
+   * Find the first child element of an element.
+   *
+   * @param parent element.
+   * @param tagName of the child element, or null for any element.
+   * @return the first matching child element, or null if there is none.
+   */
+  private static Element firstChildElement(Element parent, String tagName) {
+    for (Node child = parent.getFirstChild(); null != child; child = child.getNextSibling()) {
+      if ((child instanceof Element)
+          && ((null == tagName) || tagName.equals(((Element) child).getTagName()))) {
+        return (Element) child;
+      }
+    }
+    return null;
+  }
+}
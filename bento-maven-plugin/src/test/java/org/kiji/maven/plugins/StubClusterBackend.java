@@ -0,0 +1,90 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A cluster which is always up, for tests of the code handing clusters around. Records whether it
+ * was stopped.
+ */
+final class StubClusterBackend implements ClusterBackend {
+  private final String mName;
+  private final PhaseTimings mTimings = new PhaseTimings();
+  private final AtomicBoolean mStopped = new AtomicBoolean();
+
+  /**
+   * Construct a stub cluster.
+   *
+   * @param name of the cluster.
+   */
+  StubClusterBackend(String name) {
+    mName = name;
+  }
+
+  /** @return set once the cluster was stopped. */
+  AtomicBoolean getStopped() {
+    return mStopped;
+  }
+
+  @Override
+  public String getBentoName() {
+    return mName;
+  }
+
+  @Override
+  public void setStartupTimeoutMs(long startupTimeoutMs) {}
+
+  @Override
+  public void start() {}
+
+  @Override
+  public Map<String, byte[]> getSiteFiles() {
+    return ImmutableMap.of();
+  }
+
+  @Override
+  public PhaseTimings getTimings() {
+    return mTimings;
+  }
+
+  @Override
+  public void reportTimings(File reportFile, File historyFile, String goal) {}
+
+  @Override
+  public void startWatchdog(File markerFile, File crashLogFile, long intervalMs) {}
+
+  @Override
+  public void stopWatchdog() {}
+
+  @Override
+  public void startSampler(File seriesFile, long intervalMs) {}
+
+  @Override
+  public void stopSampler(File summaryFile) {}
+
+  @Override
+  public void stop() {
+    mStopped.set(true);
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the 'start-async' and 'await' goals against a fake bento script.
+ */
+public class TestAwaitMojo {
+  private static final String CLUSTER_ID = "org.kiji:test-await";
+
+  private File mDir;
+  private File mBentoDir;
+
+  @Before
+  public void setUp() throws Exception {
+    mDir = Files.createTempDir();
+    mBentoDir = new File(mDir, "bento");
+    final File script = new File(mBentoDir, "bin/bento");
+    Files.createParentDirs(script);
+    // Records each command; the container never starts because 'create' fails.
+    Files.write("#!/bin/sh\n"
+        + "echo \"$1\" >> \"$(dirname \"$0\")/../commands.log\"\n"
+        + "case \"$1\" in\n"
+        + "  status) echo \"bento-$3 stopped\" ;;\n"
+        + "  create) exit 1 ;;\n"
+        + "esac\n",
+        script, Charsets.UTF_8);
+    script.setExecutable(true);
+  }
+
+  @After
+  public void tearDown() {
+    BentoClusterRegistry.remove(CLUSTER_ID);
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  /** @return a 'start-async' goal configured with the defaults of its parameters. */
+  private StartAsyncMojo createStartAsyncMojo() throws Exception {
+    final StartAsyncMojo mojo = new StartAsyncMojo();
+    TestStartMojo.setClusterFields(mojo, mDir, mBentoDir, CLUSTER_ID);
+    TestStartMojo.setField(mojo, "mCommandRetries", 0);
+    return mojo;
+  }
+
+  /** @return an 'await' goal configured with the defaults of its parameters. */
+  private AwaitMojo createAwaitMojo() throws Exception {
+    final AwaitMojo mojo = new AwaitMojo();
+    TestStartMojo.setClusterFields(mojo, mDir, mBentoDir, CLUSTER_ID);
+    TestStartMojo.setField(mojo, "mSiteFilesOutputDirPath", new File(mDir, "target/test-classes"));
+    TestStartMojo.setField(mojo, "mReportDirPath", new File(mDir, "target/bento"));
+    TestStartMojo.setField(mojo, "mTimingHistoryFilePath", new File(mDir, "timing-history.jsonl"));
+    return mojo;
+  }
+
+  @Test
+  public void testFailedAwaitRemovesContainer() throws Exception {
+    createStartAsyncMojo().execute();
+    try {
+      createAwaitMojo().execute();
+      fail("The await should fail.");
+    } catch (MojoExecutionException mee) {
+      // Expected: the fake bento script can not create the container.
+    }
+    assertNull(BentoClusterRegistry.get(CLUSTER_ID));
+    assertEquals("status\ncreate\nstop\nrm\n",
+        Files.toString(new File(mBentoDir, "commands.log"), Charsets.UTF_8));
+  }
+}
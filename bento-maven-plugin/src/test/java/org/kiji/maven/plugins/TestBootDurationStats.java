@@ -0,0 +1,116 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the adaptive startup timeout derived from recorded boot durations.
+ */
+public class TestBootDurationStats {
+  private File mDir;
+  private BootDurationStats mStats;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+    mStats = new BootDurationStats(new File(mDir, "boot-durations.txt"));
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testPercentile() {
+    assertEquals(5L, BootDurationStats.percentile(Arrays.asList(3L, 1L, 5L, 2L, 4L), 95.0));
+    assertEquals(3L, BootDurationStats.percentile(Arrays.asList(3L, 1L, 5L, 2L, 4L), 50.0));
+    assertEquals(1L, BootDurationStats.percentile(Arrays.asList(3L, 1L, 5L, 2L, 4L), 0.0));
+  }
+
+  @Test
+  public void testFallbackUntilEnoughBoots() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      mStats.record(60000L);
+    }
+    assertEquals(120000L, mStats.chooseTimeoutMs(new SystemStreamLog(), 120000L, 2.0, 600000L));
+  }
+
+  @Test
+  public void testAdaptiveTimeout() throws Exception {
+    for (long durationMs : new long[] {50000L, 60000L, 55000L, 70000L, 65000L}) {
+      mStats.record(durationMs);
+    }
+    assertEquals(140000L, mStats.chooseTimeoutMs(new SystemStreamLog(), 120000L, 2.0, 600000L));
+    assertEquals(100000L, mStats.chooseTimeoutMs(new SystemStreamLog(), 120000L, 2.0, 100000L));
+    assertEquals(30000L, mStats.chooseTimeoutMs(new SystemStreamLog(), 120000L, 0.1, 600000L));
+  }
+
+  @Test
+  public void testKeepsRecentBoots() throws Exception {
+    for (long i = 0; i < 60; i++) {
+      mStats.record(i);
+    }
+    assertEquals(50, mStats.read().size());
+    assertEquals(Long.valueOf(10L), mStats.read().get(0));
+  }
+
+  @Test
+  public void testConcurrentRecords() throws Exception {
+    final File file = new File(mDir, "stats/boot-durations.txt");
+    final List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      // Each module of a parallel build has its own handle on the shared file.
+      final BootDurationStats stats = new BootDurationStats(file);
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (long j = 0; j < 8; j++) {
+            try {
+              stats.record(60000L + j);
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40, new BootDurationStats(file).read().size());
+  }
+}
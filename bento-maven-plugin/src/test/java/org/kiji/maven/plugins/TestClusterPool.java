@@ -0,0 +1,197 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests leasing, returning and replenishing the clusters of a pool, with stub clusters.
+ */
+public class TestClusterPool {
+  private final StubProvider mProvider = new StubProvider();
+  private ClusterPool mPool;
+
+  @After
+  public void tearDown() {
+    if (null != mPool) {
+      mPool.shutdown(5000L);
+    }
+  }
+
+  @Test
+  public void testLeaseReplenishes() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 60000L);
+    mPool.replenish();
+    final ClusterBackend first = mPool.lease(5000L);
+    assertNotNull(first);
+    final ClusterBackend second = mPool.lease(5000L);
+    assertNotNull(second);
+    assertNotSame(first, second);
+    // The second lease starts a third cluster in the background, which may already be created.
+    assertTrue(mProvider.mCreated.get() >= 2);
+  }
+
+  @Test
+  public void testLeaseTimesOutWhenEmpty() throws Exception {
+    mProvider.mFailCreate.set(true);
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 60000L);
+    mPool.replenish();
+    assertNull(mPool.lease(200L));
+  }
+
+  @Test
+  public void testReleaseResetsAndStopsSurplus() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 60000L);
+    mPool.replenish();
+    final StubClusterBackend leased = (StubClusterBackend) mPool.lease(5000L);
+    assertFalse(mPool.release("unknown"));
+    assertTrue(mPool.release(leased.getBentoName()));
+    awaitTrue(leased.getStopped());
+    // The replacement started at lease time already filled the pool, so the returned cluster was
+    // reset and then stopped.
+    assertEquals(1, mProvider.mReset.get());
+  }
+
+  @Test
+  public void testReleasedClusterIsLeasedAgain() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 2, 60000L);
+    mPool.replenish();
+    awaitStatus("idle=2");
+    mProvider.mFailCreate.set(true);
+    final ClusterBackend first = mPool.lease(5000L);
+    mPool.lease(5000L);
+    awaitStatus("starting=0");
+    assertTrue(mPool.release(first.getBentoName()));
+    awaitStatus("idle=1");
+    assertSame(first, mPool.lease(5000L));
+    assertEquals(2, mProvider.mCreated.get());
+  }
+
+  @Test
+  public void testFailedResetIsReplaced() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 60000L);
+    mPool.replenish();
+    final StubClusterBackend leased = (StubClusterBackend) mPool.lease(5000L);
+    mProvider.mFailReset.set(true);
+    mPool.release(leased.getBentoName());
+    awaitTrue(leased.getStopped());
+    assertNotSame(leased, mPool.lease(5000L));
+  }
+
+  @Test
+  public void testExpiredLeaseIsReclaimed() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 0L);
+    mPool.replenish();
+    final ClusterBackend leased = mPool.lease(5000L);
+    assertEquals(1, mPool.reclaimExpiredLeases());
+    assertFalse(mPool.release(leased.getBentoName()));
+  }
+
+  @Test
+  public void testRenewedLeaseIsKept() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 1000L);
+    mPool.replenish();
+    final ClusterBackend leased = mPool.lease(5000L);
+    Thread.sleep(700L);
+    assertTrue(mPool.renew(leased.getBentoName()));
+    Thread.sleep(600L);
+    // The lease is older than the lease timeout, but was renewed since.
+    assertEquals(0, mPool.reclaimExpiredLeases());
+    assertTrue(mPool.release(leased.getBentoName()));
+    assertFalse(mPool.renew(leased.getBentoName()));
+  }
+
+  @Test
+  public void testShutdownStopsClusters() throws Exception {
+    mPool = new ClusterPool(new SystemStreamLog(), mProvider, 1, 60000L);
+    mPool.replenish();
+    final StubClusterBackend leased = (StubClusterBackend) mPool.lease(5000L);
+    final StubClusterBackend idle = (StubClusterBackend) mPool.lease(5000L);
+    mPool.release(idle.getBentoName());
+    mPool.shutdown(5000L);
+    assertTrue(leased.getStopped().get());
+    assertNull(mPool.lease(100L));
+  }
+
+  /**
+   * Wait up to 5 seconds for a flag to be set.
+   *
+   * @param flag to wait for.
+   * @throws InterruptedException if interrupted.
+   */
+  private static void awaitTrue(AtomicBoolean flag) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000L;
+    while (!flag.get() && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10L);
+    }
+    assertTrue(flag.get());
+  }
+
+  /**
+   * Wait up to 5 seconds for the status of the pool to contain a fragment.
+   *
+   * @param fragment of the status, e.g. "idle=1".
+   * @throws InterruptedException if interrupted.
+   */
+  private void awaitStatus(String fragment) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5000L;
+    while (!mPool.getStatus().contains(fragment) && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10L);
+    }
+    assertTrue(mPool.getStatus(), mPool.getStatus().contains(fragment));
+  }
+
+  /** Creates stub clusters, optionally failing to create or reset them. */
+  private static final class StubProvider implements ClusterPool.Provider {
+    private final AtomicInteger mCreated = new AtomicInteger();
+    private final AtomicInteger mReset = new AtomicInteger();
+    private final AtomicBoolean mFailCreate = new AtomicBoolean();
+    private final AtomicBoolean mFailReset = new AtomicBoolean();
+
+    @Override
+    public ClusterBackend create() throws Exception {
+      if (mFailCreate.get()) {
+        throw new IllegalStateException("create failed");
+      }
+      return new StubClusterBackend("stub-" + mCreated.incrementAndGet());
+    }
+
+    @Override
+    public void reset(ClusterBackend cluster) throws Exception {
+      mReset.incrementAndGet();
+      if (mFailReset.get()) {
+        throw new IllegalStateException("reset failed");
+      }
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the cluster watchdog against a stub supervisor.
+ */
+public class TestClusterWatchdog {
+  private HttpServer mServer;
+  private File mDir;
+  private File mMarkerFile;
+  private File mCrashLogFile;
+  private ClusterWatchdog mWatchdog;
+  private final AtomicReference<String> mResponse = new AtomicReference<String>();
+
+  @Before
+  public void setUp() throws Exception {
+    mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    mServer.createContext("/RPC2", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        ByteStreams.toByteArray(exchange.getRequestBody());
+        final byte[] body = mResponse.get().getBytes(Charsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    mServer.start();
+    mDir = Files.createTempDir();
+    mMarkerFile = new File(mDir, ClusterWatchdog.UNHEALTHY_MARKER_FILE_NAME);
+    mCrashLogFile = new File(mDir, "crashes.log");
+    mWatchdog = new ClusterWatchdog(
+        new SystemStreamLog(),
+        "test",
+        new SupervisorClient(
+            new URL(String.format("http://localhost:%d/RPC2", mServer.getAddress().getPort()))),
+        ImmutableSet.of("hdfs-init"),
+        mMarkerFile,
+        mCrashLogFile);
+  }
+
+  @After
+  public void tearDown() {
+    mWatchdog.stop();
+    mServer.stop(0);
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  private void setStates(String... namesAndStates) {
+    final StringBuilder values = new StringBuilder();
+    for (int i = 0; i < namesAndStates.length; i += 2) {
+      values.append("<value><struct>")
+          .append("<member><name>name</name><value>").append(namesAndStates[i])
+          .append("</value></member>")
+          .append("<member><name>statename</name><value>").append(namesAndStates[i + 1])
+          .append("</value></member>")
+          .append("</struct></value>");
+    }
+    mResponse.set("<?xml version='1.0'?><methodResponse><params><param><value><array><data>"
+        + values + "</data></array></value></param></params></methodResponse>");
+  }
+
+  @Test
+  public void testHealthyCluster() throws Exception {
+    setStates("hdfs-init", "EXITED", "hbase-master", "RUNNING");
+    mWatchdog.poll();
+    mWatchdog.poll();
+    assertFalse(mMarkerFile.exists());
+  }
+
+  @Test
+  public void testCrash() throws Exception {
+    setStates("hdfs-init", "RUNNING", "hbase-regionserver", "RUNNING");
+    mWatchdog.poll();
+    setStates("hdfs-init", "EXITED", "hbase-regionserver", "FATAL");
+    mWatchdog.poll();
+    assertTrue(mMarkerFile.exists());
+    final String crashes = FileUtils.readFileToString(mCrashLogFile, Charsets.UTF_8.name());
+    assertTrue(crashes.contains("'hbase-regionserver' went from RUNNING to FATAL"));
+    assertFalse(crashes.contains("hdfs-init"));
+  }
+
+  @Test
+  public void testAddedMarkerFile() throws Exception {
+    final File otherMarkerFile = new File(mDir, "other-module.unhealthy");
+    setStates("hbase-master", "RUNNING");
+    mWatchdog.poll();
+    setStates("hbase-master", "FATAL");
+    mWatchdog.poll();
+    // A module joining after the crash still sees it, as do the modules watched before.
+    mWatchdog.addMarkerFile(otherMarkerFile);
+    assertTrue(mMarkerFile.exists());
+    assertTrue(FileUtils.readFileToString(otherMarkerFile, Charsets.UTF_8.name())
+        .contains("'hbase-master' went from RUNNING to FATAL"));
+  }
+
+  @Test
+  public void testPaused() throws Exception {
+    setStates("hbase-master", "RUNNING");
+    mWatchdog.poll();
+    mWatchdog.pause();
+    setStates("hbase-master", "STOPPED");
+    mWatchdog.poll();
+    setStates("hbase-master", "RUNNING");
+    mWatchdog.resume();
+    mWatchdog.poll();
+    mWatchdog.poll();
+    assertFalse(mMarkerFile.exists());
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests fingerprinting fixture files.
+ */
+public class TestFileFingerprint {
+  private static final List<String> NO_EXTRAS = Collections.emptyList();
+
+  private File mDir;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  /**
+   * Write a file under the temporary directory, creating its parent directories.
+   *
+   * @param path relative to the temporary directory.
+   * @param content of the file.
+   * @return the file.
+   * @throws Exception if the file can not be written.
+   */
+  private File write(String path, String content) throws Exception {
+    final File file = new File(mDir, path);
+    Files.createParentDirs(file);
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+
+  @Test
+  public void testSameContentInAnotherCheckout() throws Exception {
+    write("a/fixtures/data.csv", "1,2,3");
+    write("a/fixtures/nested/schema.ddl", "CREATE TABLE t;");
+    write("b/fixtures/data.csv", "1,2,3");
+    write("b/fixtures/nested/schema.ddl", "CREATE TABLE t;");
+
+    assertEquals(
+        FileFingerprint.of(ImmutableList.of(new File(mDir, "a/fixtures")), NO_EXTRAS),
+        FileFingerprint.of(ImmutableList.of(new File(mDir, "b/fixtures")), NO_EXTRAS));
+  }
+
+  @Test
+  public void testContentChangesFingerprint() throws Exception {
+    final File file = write("fixtures/data.csv", "1,2,3");
+    final List<File> roots = ImmutableList.of(new File(mDir, "fixtures"));
+    final String before = FileFingerprint.of(roots, NO_EXTRAS);
+    Files.write("1,2,4", file, Charsets.UTF_8);
+
+    assertFalse(before.equals(FileFingerprint.of(roots, NO_EXTRAS)));
+  }
+
+  @Test
+  public void testRenameChangesFingerprint() throws Exception {
+    final File file = write("fixtures/data.csv", "1,2,3");
+    final List<File> roots = ImmutableList.of(new File(mDir, "fixtures"));
+    final String before = FileFingerprint.of(roots, NO_EXTRAS);
+    Files.move(file, new File(file.getParentFile(), "other.csv"));
+
+    assertFalse(before.equals(FileFingerprint.of(roots, NO_EXTRAS)));
+  }
+
+  @Test
+  public void testExtrasChangeFingerprint() throws Exception {
+    final List<File> roots = ImmutableList.of(write("schema.ddl", "CREATE TABLE t;"));
+
+    assertFalse(FileFingerprint.of(roots, ImmutableList.of("tables=t")).equals(
+        FileFingerprint.of(roots, ImmutableList.of("tables=u"))));
+  }
+
+  @Test
+  public void testMissingRootDiffersFromEmptyDirectory() throws Exception {
+    final File root = new File(mDir, "fixtures");
+    final String missing = FileFingerprint.of(ImmutableList.of(root), NO_EXTRAS);
+    FileUtils.forceMkdir(root);
+
+    assertFalse(missing.equals(FileFingerprint.of(ImmutableList.of(root), NO_EXTRAS)));
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests loading fixtures into Hadoop's in-process HDFS and HBase mini clusters.
+ */
+public class TestFixtureLoader {
+  private static HBaseTestingUtility sUtility;
+  private static File sDir;
+
+  @BeforeClass
+  public static void setUpClass() throws Exception {
+    sDir = Files.createTempDir();
+    sUtility = new HBaseTestingUtility();
+    sUtility.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void tearDownClass() throws Exception {
+    sUtility.shutdownMiniCluster();
+    FileUtils.deleteQuietly(sDir);
+  }
+
+  @Test
+  public void testLoadHdfs() throws Exception {
+    final File localDir = new File(sDir, "logs");
+    for (int i = 0; i < 10; i++) {
+      FileUtils.write(new File(localDir, "day-" + i + "/part-0"), "line " + i, Charsets.UTF_8);
+    }
+    final FixtureLoader.LoadResult result =
+        new FixtureLoader(new SystemStreamLog(), sUtility.getConfiguration(), 4)
+            .loadHdfs(localDir, "/fixtures/logs");
+
+    assertEquals(10L, result.getItems());
+    assertEquals(60L, result.getBytes());
+    final FileSystem fs = FileSystem.get(sUtility.getConfiguration());
+    for (int i = 0; i < 10; i++) {
+      assertTrue(fs.exists(new Path("/fixtures/logs/day-" + i + "/part-0")));
+    }
+  }
+
+  @Test
+  public void testLoadCsv() throws Exception {
+    final File csvFile = new File(sDir, "users.csv");
+    final StringBuilder csv = new StringBuilder("rowkey,info:name,info:age\n");
+    for (int i = 0; i < 100; i++) {
+      csv.append(String.format("user-%d,name-%d,%d%n", i, i, 20 + i));
+    }
+    FileUtils.write(csvFile, csv, Charsets.UTF_8);
+    final FixtureLoader.LoadResult result =
+        new FixtureLoader(new SystemStreamLog(), sUtility.getConfiguration(), 3)
+            .loadHBase(csvFile, "users");
+
+    assertEquals(100L, result.getItems());
+    final HTable table = new HTable(sUtility.getConfiguration(), "users");
+    try {
+      assertEquals("name-42", Bytes.toString(table.get(new Get(Bytes.toBytes("user-42")))
+          .getValue(Bytes.toBytes("info"), Bytes.toBytes("name"))));
+      assertEquals("119", Bytes.toString(table.get(new Get(Bytes.toBytes("user-99")))
+          .getValue(Bytes.toBytes("info"), Bytes.toBytes("age"))));
+    } finally {
+      table.close();
+    }
+  }
+}
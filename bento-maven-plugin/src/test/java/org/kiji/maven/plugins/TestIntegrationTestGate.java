@@ -0,0 +1,198 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests finding the integration test classes failsafe would run, and reading its summary.
+ */
+public class TestIntegrationTestGate {
+  private File mDir;
+
+  @Before
+  public void setUp() throws Exception {
+    mDir = Files.createTempDir();
+    for (String path : ImmutableList.of(
+        "org/kiji/FooIT.class",
+        "org/kiji/FooIT$Helper.class",
+        "org/kiji/ITBar.class",
+        "org/kiji/other/BazITCase.class",
+        "org/kiji/TestFoo.class",
+        "org/kiji/Fixtures.class",
+        "log4j.properties")) {
+      final File file = new File(mDir, path);
+      Files.createParentDirs(file);
+      Files.touch(file);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testDefaultIncludes() throws Exception {
+    assertEquals(
+        ImmutableList.of("org/kiji/FooIT", "org/kiji/ITBar", "org/kiji/other/BazITCase"),
+        IntegrationTestGate.findTestClasses(mDir, null));
+  }
+
+  @Test
+  public void testItTestFilter() throws Exception {
+    assertEquals(ImmutableList.of("org/kiji/FooIT"),
+        IntegrationTestGate.findTestClasses(mDir, "FooIT#testSomething"));
+    assertEquals(ImmutableList.of("org/kiji/FooIT", "org/kiji/ITBar"),
+        IntegrationTestGate.findTestClasses(mDir, "Foo*, IT*"));
+    assertEquals(ImmutableList.of("org/kiji/other/BazITCase"),
+        IntegrationTestGate.findTestClasses(mDir, "org/kiji/other/*"));
+    assertEquals(ImmutableList.of("org/kiji/ITBar"),
+        IntegrationTestGate.findTestClasses(mDir, "org.kiji.ITBar"));
+    assertEquals(ImmutableList.of("org/kiji/ITBar", "org/kiji/other/BazITCase"),
+        IntegrationTestGate.findTestClasses(mDir, "!FooIT"));
+    assertTrue(IntegrationTestGate.findTestClasses(mDir, "NoSuchIT").isEmpty());
+  }
+
+  /**
+   * Build a failsafe configuration.
+   *
+   * @param parameter name of the list parameter, e.g. "includes".
+   * @param patterns of the list.
+   * @return the configuration.
+   */
+  private static Xpp3Dom configuration(String parameter, String... patterns) {
+    final Xpp3Dom list = new Xpp3Dom(parameter);
+    for (String pattern : patterns) {
+      final Xpp3Dom child = new Xpp3Dom(parameter.replaceFirst("s$", ""));
+      child.setValue(pattern);
+      list.addChild(child);
+    }
+    final Xpp3Dom configuration = new Xpp3Dom("configuration");
+    configuration.addChild(list);
+    return configuration;
+  }
+
+  /**
+   * Build a failsafe plugin.
+   *
+   * @param configuration of the plugin, or null.
+   * @param executionConfigurations of its executions running the integration tests.
+   * @return the plugin.
+   */
+  private static Plugin failsafe(Xpp3Dom configuration, Xpp3Dom... executionConfigurations) {
+    final Plugin plugin = new Plugin();
+    plugin.setGroupId("org.apache.maven.plugins");
+    plugin.setArtifactId("maven-failsafe-plugin");
+    plugin.setConfiguration(configuration);
+    for (Xpp3Dom executionConfiguration : executionConfigurations) {
+      final PluginExecution execution = new PluginExecution();
+      execution.addGoal("integration-test");
+      execution.setConfiguration(executionConfiguration);
+      plugin.addExecution(execution);
+    }
+    return plugin;
+  }
+
+  @Test
+  public void testFailsafeFilters() throws Exception {
+    final List<IntegrationTestGate.TestFilter> defaults =
+        IntegrationTestGate.readFailsafeFilters(ImmutableList.of(failsafe(null)));
+    assertEquals(
+        ImmutableList.of("org/kiji/FooIT", "org/kiji/ITBar", "org/kiji/other/BazITCase"),
+        IntegrationTestGate.findTestClasses(mDir, null, defaults));
+
+    final List<IntegrationTestGate.TestFilter> includes = IntegrationTestGate.readFailsafeFilters(
+        ImmutableList.of(failsafe(configuration("includes", "**/Test*.java, **/Fixtures"))));
+    assertEquals(ImmutableList.of("org/kiji/Fixtures", "org/kiji/TestFoo"),
+        IntegrationTestGate.findTestClasses(mDir, null, includes));
+    // The it.test filter overrides the patterns of the executions.
+    assertEquals(ImmutableList.of("org/kiji/FooIT"),
+        IntegrationTestGate.findTestClasses(mDir, "FooIT", includes));
+
+    // The execution configuration overrides the plugin one; the executions run their union.
+    final List<IntegrationTestGate.TestFilter> executions = IntegrationTestGate.readFailsafeFilters(
+        ImmutableList.of(failsafe(
+            configuration("excludes", "**/other/**"),
+            configuration("includes", "**/ITBar.java"),
+            configuration("excludes", "**/ITBar.java, **/FooIT.java"))));
+    assertEquals(ImmutableList.of("org/kiji/ITBar", "org/kiji/other/BazITCase"),
+        IntegrationTestGate.findTestClasses(mDir, null, executions));
+  }
+
+  @Test
+  public void testUnreadableFailsafeFilters() throws Exception {
+    assertNull(IntegrationTestGate.readFailsafeFilters(ImmutableList.<Plugin>of()));
+    assertNull(IntegrationTestGate.readFailsafeFilters(ImmutableList.of(
+        failsafe(configuration("includes", "%regex[.*IT.*]")))));
+    assertNull(IntegrationTestGate.readFailsafeFilters(ImmutableList.of(
+        failsafe(null, configuration("excludes", "${it.excludes}")))));
+    assertNull(IntegrationTestGate.readFailsafeFilters(ImmutableList.of(
+        failsafe(configuration("dependenciesToScan", "org.kiji:tests")))));
+  }
+
+  @Test
+  public void testMissingDirectory() throws Exception {
+    assertTrue(IntegrationTestGate.findTestClasses(new File(mDir, "missing"), null).isEmpty());
+  }
+
+  @Test
+  public void testIsGreen() throws Exception {
+    final File summary = new File(mDir, "failsafe-summary.xml");
+    assertFalse(IntegrationTestGate.isGreen(summary));
+    Files.write("<failsafe-summary result=\"254\" timeout=\"false\"><completed>3</completed>"
+        + "<errors>0</errors><failures>0</failures><skipped>1</skipped></failsafe-summary>",
+        summary, Charsets.UTF_8);
+    assertTrue(IntegrationTestGate.isGreen(summary));
+    Files.write("<failsafe-summary><completed>3</completed>"
+        + "<errors>0</errors><failures>1</failures></failsafe-summary>",
+        summary, Charsets.UTF_8);
+    assertFalse(IntegrationTestGate.isGreen(summary));
+    Files.write("<failsafe-summary><completed>0</completed>"
+        + "<errors>0</errors><failures>0</failures></failsafe-summary>",
+        summary, Charsets.UTF_8);
+    assertFalse(IntegrationTestGate.isGreen(summary));
+  }
+
+  @Test
+  public void testGreenFingerprint() throws Exception {
+    final File record = new File(mDir, "records/module.green");
+    assertNull(IntegrationTestGate.readGreenFingerprint(record));
+    IntegrationTestGate.writeGreenFingerprint(record, "abc123");
+    assertEquals("abc123", IntegrationTestGate.readGreenFingerprint(record));
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests rewriting files shared by concurrent builds.
+ */
+public class TestLockedFiles {
+  private File mDir;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testConcurrentRewritesThroughDistinctPaths() throws Exception {
+    final List<Thread> threads = Lists.newArrayList();
+    final List<Throwable> failures = Lists.newCopyOnWriteArrayList();
+    for (int i = 0; i < 4; i++) {
+      // The same file, spelled differently by each module of a parallel build.
+      final File file = new File(mDir, String.format("module-%d/../shared/history.txt", i));
+      new File(mDir, "module-" + i).mkdirs();
+      final String line = "module-" + i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10; j++) {
+            try {
+              LockedFiles.rewrite(file, new LockedFiles.Update() {
+                @Override
+                public List<String> apply(List<String> lines) {
+                  lines.add(line);
+                  return lines;
+                }
+              });
+            } catch (Throwable t) {
+              failures.add(t);
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Lists.newArrayList(), failures);
+    assertEquals(40, Files.readLines(
+        new File(mDir, "shared/history.txt"), Charsets.UTF_8).size());
+  }
+}
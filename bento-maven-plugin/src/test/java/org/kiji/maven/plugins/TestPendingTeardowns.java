@@ -0,0 +1,147 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reaping the Bento cluster teardowns which did not complete in the background.
+ */
+public class TestPendingTeardowns {
+  private File mDir;
+  private File mMarker;
+
+  @Before
+  public void setUp() throws Exception {
+    mDir = Files.createTempDir();
+    mMarker = new File(mDir, "pending/hung.properties");
+    Files.createParentDirs(mMarker);
+    Files.write("bento.name=hung\nbento.dir.path=" + mDir.getAbsolutePath() + "\n",
+        mMarker, Charsets.UTF_8);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  /**
+   * Install a fake bento script.
+   *
+   * @param body of the script.
+   */
+  private void writeBentoScript(String body) throws Exception {
+    final File script = new File(mDir, "bin/bento");
+    Files.createParentDirs(script);
+    Files.write("#!/bin/sh\n" + body + "\n", script, Charsets.UTF_8);
+    script.setExecutable(true);
+  }
+
+  /**
+   * Install a fake docker script.
+   *
+   * @param body of the script.
+   * @return the path to the script.
+   */
+  private String writeDockerScript(String body) throws Exception {
+    final File script = new File(mDir, "docker");
+    Files.write("#!/bin/sh\n" + body + "\n", script, Charsets.UTF_8);
+    script.setExecutable(true);
+    return script.getAbsolutePath();
+  }
+
+  /**
+   * Install a fake docker script reporting that no container exists.
+   *
+   * @return the path to the script.
+   */
+  private String writeMissingContainerDockerScript() throws Exception {
+    return writeDockerScript("echo \"Error: No such object: $2\" >&2; exit 1");
+  }
+
+  @Test
+  public void testHungTeardownIsKilledAtDeadline() throws Exception {
+    writeBentoScript("sleep 30");
+    final long startMs = System.currentTimeMillis();
+    final int reaped = new PendingTeardowns(new SystemStreamLog(), new File(mDir, "pending"))
+        .reap(0L, 500L);
+    assertTrue(System.currentTimeMillis() - startMs < 10000L);
+    assertEquals(0, reaped);
+    assertTrue(mMarker.exists());
+  }
+
+  @Test
+  public void testStaleTeardownIsReaped() throws Exception {
+    writeBentoScript("exit 0");
+    final PendingTeardowns teardowns = new PendingTeardowns(
+        new SystemStreamLog(), new File(mDir, "pending"), writeMissingContainerDockerScript());
+    // Not stale yet.
+    assertEquals(0, teardowns.reap(60000L, 10000L));
+    assertTrue(mMarker.exists());
+    // No 'bento-hung' container exists, so the teardown is complete.
+    assertEquals(1, teardowns.reap(0L, 10000L));
+    assertFalse(mMarker.exists());
+  }
+
+  @Test
+  public void testMarkerIsKeptWhenDockerFails() throws Exception {
+    writeBentoScript("exit 0");
+    final PendingTeardowns teardowns = new PendingTeardowns(
+        new SystemStreamLog(),
+        new File(mDir, "pending"),
+        writeDockerScript("echo 'Cannot connect to the Docker daemon.' >&2; exit 1"));
+    // The container may still exist, so a later build must retry the teardown.
+    assertEquals(0, teardowns.reap(0L, 10000L));
+    assertTrue(mMarker.exists());
+  }
+
+  @Test
+  public void testTeardownRunsInItsOwnSession() throws Exception {
+    final File sessionFile = new File(mDir, "session");
+    writeBentoScript(String.format("ps -o sid= -p $$ | tr -d ' ' > '%s'", sessionFile));
+    final Log log = new SystemStreamLog();
+    final File pending = new File(mDir, "pending");
+    new PendingTeardowns(log, pending, writeMissingContainerDockerScript()).launch(
+        new BentoCluster(log, mDir, "detached", ServiceRequirement.parseAll(null)));
+    final File marker = new File(pending, "detached.properties");
+    for (int i = 0; (i < 100) && marker.exists(); i++) {
+      Thread.sleep(100L);
+    }
+    assertFalse(marker.exists());
+
+    final String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    final String ownSession = ShellExecUtil.executeCommand("ps -o sid= -p " + pid).trim();
+    assertFalse(ownSession.equals(Files.toString(sessionFile, Charsets.UTF_8).trim()));
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the timing reports and the history shared by concurrent builds.
+ */
+public class TestPhaseTimings {
+  private File mDir;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testConcurrentHistoryAppends() throws Exception {
+    final File history = new File(mDir, "history/timing-history.jsonl");
+    final List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 8; i++) {
+      final int module = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10; j++) {
+            final PhaseTimings timings = new PhaseTimings();
+            timings.record("create", j);
+            try {
+              timings.write(new File(mDir, String.format("timings-%d.json", module)), history,
+                  ImmutableMap.of("module", Integer.toString(module)));
+            } catch (Exception e) {
+              throw new RuntimeException(e);
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    final List<String> records = Files.readLines(history, Charsets.UTF_8);
+    assertEquals(80, records.size());
+    for (String record : records) {
+      assertTrue(record, record.startsWith("{") && record.endsWith("}}"));
+    }
+  }
+
+  @Test
+  public void testReportCoversPhasesSinceLastReport() throws Exception {
+    final BentoCluster cluster =
+        new BentoCluster(new SystemStreamLog(), new File(mDir, "bento"), "timings");
+    cluster.getTimings().record("create", 10L);
+    cluster.reportTimings(new File(mDir, "timings.json"), null, "start");
+    cluster.getTimings().record("stop", 20L);
+    cluster.reportTimings(new File(mDir, "timings-stop.json"), null, "stop");
+
+    final Map<String, Long> durations = cluster.getTimings().getDurations();
+    assertTrue(durations.isEmpty());
+    final String start = Files.toString(new File(mDir, "timings.json"), Charsets.UTF_8);
+    final String stop = Files.toString(new File(mDir, "timings-stop.json"), Charsets.UTF_8);
+    assertTrue(start.contains("\"create\":10"));
+    assertFalse(start.contains("\"stop\""));
+    assertTrue(stop.contains("\"stop\":20"));
+    assertFalse(stop.contains("\"create\""));
+  }
+}
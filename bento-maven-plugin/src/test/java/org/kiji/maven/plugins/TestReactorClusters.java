@@ -0,0 +1,121 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+/**
+ * Tests the reference counts of the clusters shared by the modules of a reactor.
+ */
+public class TestReactorClusters {
+  private static final Log LOG = new SystemStreamLog();
+
+  private final AtomicInteger mStarts = new AtomicInteger();
+
+  private final Callable<ClusterBackend> mStarter = new Callable<ClusterBackend>() {
+    @Override
+    public ClusterBackend call() {
+      return new StubClusterBackend("stub-" + mStarts.incrementAndGet());
+    }
+  };
+
+  @Test
+  public void testSequentialModules() throws Exception {
+    final ClusterBackend first = ReactorClusters.acquire(
+        LOG, "sequential", "g:a", ImmutableList.of("g:a", "g:b"), mStarter);
+    assertFalse(ReactorClusters.release(LOG, first, "g:a"));
+    final ClusterBackend second = ReactorClusters.acquire(
+        LOG, "sequential", "g:b", ImmutableList.of("g:a", "g:b"), mStarter);
+    assertSame(first, second);
+    assertEquals(1, mStarts.get());
+    assertTrue(ReactorClusters.release(LOG, second, "g:b"));
+  }
+
+  @Test
+  public void testConcurrentModules() throws Exception {
+    final ClusterBackend first = ReactorClusters.acquire(
+        LOG, "concurrent", "g:a", ImmutableList.of("g:a"), mStarter);
+    // A module declaring the goal differently than the participants found still holds it.
+    final ClusterBackend second = ReactorClusters.acquire(
+        LOG, "concurrent", "g:b", ImmutableList.of("g:a", "g:b"), mStarter);
+    assertSame(first, second);
+    assertFalse(ReactorClusters.release(LOG, first, "g:a"));
+    assertTrue(ReactorClusters.release(LOG, second, "g:b"));
+  }
+
+  @Test
+  public void testFailedStartIsRetried() throws Exception {
+    try {
+      ReactorClusters.acquire(LOG, "failed", "g:a", ImmutableList.of("g:a", "g:b"),
+          new Callable<ClusterBackend>() {
+            @Override
+            public ClusterBackend call() {
+              throw new IllegalStateException("start failed");
+            }
+          });
+      fail();
+    } catch (IllegalStateException ise) {
+      // Expected.
+    }
+    final ClusterBackend cluster = ReactorClusters.acquire(
+        LOG, "failed", "g:b", ImmutableList.of("g:a", "g:b"), mStarter);
+    assertEquals(1, mStarts.get());
+    assertFalse(ReactorClusters.release(LOG, cluster, "g:b"));
+    assertTrue(ReactorClusters.release(LOG, cluster, "g:a"));
+  }
+
+  @Test
+  public void testSkippedBeforeStart() throws Exception {
+    // The skipping module releases before any module found the participants.
+    assertNull(ReactorClusters.releaseSkipped(LOG, "skipped-early", "g:b"));
+    final ClusterBackend cluster = ReactorClusters.acquire(
+        LOG, "skipped-early", "g:a", ImmutableList.of("g:a", "g:b"), mStarter);
+    assertTrue(ReactorClusters.release(LOG, cluster, "g:a"));
+  }
+
+  @Test
+  public void testSkippedLast() throws Exception {
+    final ClusterBackend cluster = ReactorClusters.acquire(
+        LOG, "skipped-last", "g:a", ImmutableList.of("g:a", "g:b", "g:c"), mStarter);
+    assertFalse(ReactorClusters.release(LOG, cluster, "g:a"));
+    assertNull(ReactorClusters.releaseSkipped(LOG, "skipped-last", "g:b"));
+    assertSame(cluster, ReactorClusters.releaseSkipped(LOG, "skipped-last", "g:c"));
+    // The cluster is no longer shared once released by all of its modules.
+    assertTrue(ReactorClusters.release(LOG, cluster, "g:a"));
+  }
+
+  @Test
+  public void testUnsharedCluster() throws Exception {
+    assertTrue(ReactorClusters.release(LOG, new StubClusterBackend("unshared"), "g:a"));
+  }
+}
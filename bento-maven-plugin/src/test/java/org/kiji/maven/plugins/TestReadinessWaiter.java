@@ -0,0 +1,109 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.Lists;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+/**
+ * Tests waiting for a condition with an adaptive backoff and a deadline.
+ */
+public class TestReadinessWaiter {
+  /** Times at which the condition was probed. */
+  private final List<Long> mProbeTimes = Lists.newArrayList();
+
+  /**
+   * Get a condition which is satisfied from a given probe on, recording the probe times.
+   *
+   * @param satisfiedProbe number of the first probe to succeed, starting at 1.
+   * @return the condition.
+   */
+  private ReadinessWaiter.Condition satisfiedAt(final int satisfiedProbe) {
+    return new ReadinessWaiter.Condition() {
+      @Override
+      public boolean isSatisfied() {
+        mProbeTimes.add(System.currentTimeMillis());
+        return mProbeTimes.size() >= satisfiedProbe;
+      }
+    };
+  }
+
+  @Test
+  public void testSatisfiedRightAway() throws Exception {
+    final ReadinessWaiter waiter = new ReadinessWaiter(new SystemStreamLog());
+    assertTrue(waiter.await("ready", satisfiedAt(1), 0L));
+    assertEquals(1, mProbeTimes.size());
+  }
+
+  @Test
+  public void testBackoffGrowsUpToMaximum() throws Exception {
+    final ReadinessWaiter waiter = new ReadinessWaiter(new SystemStreamLog(), 20L, 80L, 2.0);
+    assertTrue(waiter.await("ready", satisfiedAt(6), 10000L));
+    assertEquals(6, mProbeTimes.size());
+    // Expected delays: 20, 40, 80, 80, 80 ms.
+    final long[] expectedMs = {20L, 40L, 80L, 80L, 80L};
+    for (int i = 0; i < expectedMs.length; i++) {
+      final long delayMs = mProbeTimes.get(i + 1) - mProbeTimes.get(i);
+      assertTrue("delay " + delayMs, delayMs >= expectedMs[i]);
+      assertTrue("delay " + delayMs, delayMs < expectedMs[i] + 500L);
+    }
+  }
+
+  @Test
+  public void testGivesUpAtDeadline() throws Exception {
+    final ReadinessWaiter waiter = new ReadinessWaiter(new SystemStreamLog(), 50L, 1000L, 1.5);
+    final long startMs = System.currentTimeMillis();
+    assertFalse(waiter.await("ready", satisfiedAt(Integer.MAX_VALUE), 300L));
+    final long elapsedMs = System.currentTimeMillis() - startMs;
+    // The last sleep is cut short by the deadline rather than taking a full interval.
+    assertTrue("elapsed " + elapsedMs, elapsedMs >= 300L && elapsedMs < 800L);
+    assertTrue(mProbeTimes.size() > 2);
+  }
+
+  @Test
+  public void testProbeFailureIsPropagated() throws Exception {
+    final ReadinessWaiter waiter = new ReadinessWaiter(new SystemStreamLog());
+    try {
+      waiter.await("ready", new ReadinessWaiter.Condition() {
+        @Override
+        public boolean isSatisfied() throws Exception {
+          throw new IOException("unreachable");
+        }
+      }, 1000L);
+      fail("The probe failure should be propagated.");
+    } catch (IOException ioe) {
+      assertEquals("unreachable", ioe.getMessage());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBackoff() {
+    new ReadinessWaiter(new SystemStreamLog(), 100L, 50L, 2.0);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the resource usage sampler against a stub stats source.
+ */
+public class TestResourceSampler {
+  private static final long MIB = 1024L * 1024L;
+
+  private final ConcurrentLinkedDeque<ResourceSampler.Sample> mSamples =
+      new ConcurrentLinkedDeque<ResourceSampler.Sample>();
+  private File mDir;
+  private File mSeriesFile;
+  private ResourceSampler mSampler;
+
+  @Before
+  public void setUp() throws Exception {
+    mDir = Files.createTempDir();
+    mSeriesFile = new File(mDir, "resources.csv");
+    mSampler = new ResourceSampler(
+        new SystemStreamLog(),
+        "test",
+        new ResourceSampler.StatsSource() {
+          @Override
+          public ResourceSampler.Sample read() throws IOException {
+            final ResourceSampler.Sample sample = mSamples.pollFirst();
+            if (null == sample) {
+              throw new IOException("container is not running");
+            }
+            return sample;
+          }
+        },
+        mSeriesFile);
+  }
+
+  @After
+  public void tearDown() {
+    mSampler.stop();
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testSummary() throws Exception {
+    mSamples.add(new ResourceSampler.Sample(1000L, 50.0, 100 * MIB, 1024 * MIB, 0, 10, 0, 0));
+    mSamples.add(new ResourceSampler.Sample(2000L, 150.0, 300 * MIB, 1024 * MIB, 0, 30, 5, 5));
+    mSamples.add(new ResourceSampler.Sample(3000L, 100.0, 200 * MIB, 1024 * MIB, 0, 70, 9, 9));
+    mSampler.sample();
+    mSampler.sample();
+    mSampler.sample();
+    // A failed sample is skipped.
+    mSampler.sample();
+
+    final ResourceSampler.Summary summary = mSampler.getSummary();
+    assertEquals(3, summary.getSamples());
+    assertEquals(100.0, summary.getCpuAverage(), 0.001);
+    assertEquals(150.0, summary.getCpuPeak(), 0.001);
+    assertEquals(200 * MIB, summary.getMemoryAverageBytes());
+    assertEquals(300 * MIB, summary.getMemoryPeakBytes());
+    assertEquals(60L, summary.getBlockWriteBytes());
+
+    final File summaryFile = new File(mDir, "resources-summary.json");
+    mSampler.report(summaryFile);
+    final String json = Files.toString(summaryFile, Charsets.UTF_8);
+    assertTrue(json, json.contains("\"cpu_percent_peak\":150.00"));
+    assertTrue(json, json.contains("\"memory_bytes_peak\":" + (300 * MIB)));
+  }
+
+  @Test
+  public void testSeries() throws Exception {
+    mSamples.add(new ResourceSampler.Sample(1000L, 12.5, 1L, 2L, 3L, 4L, 5L, 6L));
+    mSampler.start(60000L);
+    final long deadline = System.currentTimeMillis() + 5000L;
+    while (!mSamples.isEmpty() && (System.currentTimeMillis() < deadline)) {
+      Thread.sleep(10L);
+    }
+    mSampler.stop();
+    final List<String> lines = Files.readLines(mSeriesFile, Charsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertEquals(ResourceSampler.CSV_HEADER, lines.get(0));
+    assertEquals("1000,12.50,1,2,3,4,5,6", lines.get(1));
+  }
+
+  @Test
+  public void testNoSamples() throws Exception {
+    mSampler.sample();
+    assertNull(mSampler.getSummary());
+    final File summaryFile = new File(mDir, "resources-summary.json");
+    mSampler.report(summaryFile);
+    assertFalse(summaryFile.exists());
+  }
+
+  @Test
+  public void testParseDockerStats() throws Exception {
+    final ResourceSampler.Sample sample = ResourceSampler.DockerStatsSource.parse(
+        "180.25%;1.5GiB / 4GiB;10MB / 2.5GB;512B / 3kB", 1000L);
+    assertEquals("1000,180.25,1610612736,4294967296,10000000,2500000000,512,3000", sample.toCsv());
+  }
+
+  @Test(expected = IOException.class)
+  public void testParseStoppedContainer() throws Exception {
+    ResourceSampler.DockerStatsSource.parse("--;-- / --;-- / --;-- / --", 1000L);
+  }
+}
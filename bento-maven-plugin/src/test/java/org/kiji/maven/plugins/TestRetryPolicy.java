@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+/**
+ * Tests the retries of transiently failing operations.
+ */
+public class TestRetryPolicy {
+  private final AtomicInteger mAttempts = new AtomicInteger();
+
+  @Test
+  public void testRetriesTransientFailureUntilSuccess() throws Exception {
+    final boolean succeeded = new RetryPolicy(3, 1L, 2L).run(
+        new SystemStreamLog(), "flaky", false, new RetryPolicy.Attempt<Boolean>() {
+          @Override
+          public Boolean call(int attempt) {
+            assertEquals(mAttempts.incrementAndGet(), attempt);
+            return 3 == attempt;
+          }
+
+          @Override
+          public boolean isTransientFailure(Boolean result) {
+            return !result;
+          }
+        });
+    assertTrue(succeeded);
+    assertEquals(3, mAttempts.get());
+  }
+
+  @Test
+  public void testStopsAtMaxAttempts() throws Exception {
+    final boolean succeeded = new RetryPolicy(2, 1L, 2L).run(
+        new SystemStreamLog(), "broken", false, new RetryPolicy.Attempt<Boolean>() {
+          @Override
+          public Boolean call(int attempt) {
+            mAttempts.incrementAndGet();
+            return false;
+          }
+
+          @Override
+          public boolean isTransientFailure(Boolean result) {
+            return !result;
+          }
+        });
+    assertFalse(succeeded);
+    assertEquals(2, mAttempts.get());
+
+    try {
+      new RetryPolicy(2, 1L, 2L).run(
+          new SystemStreamLog(), "hung", false, new RetryPolicy.Attempt<Void>() {
+            @Override
+            public Void call(int attempt) throws Exception {
+              mAttempts.incrementAndGet();
+              throw new ShellExecUtil.CommandTimeoutException("hung", 1L, "", "");
+            }
+          });
+      fail("The last timeout should be rethrown.");
+    } catch (ShellExecUtil.CommandTimeoutException cte) {
+      assertEquals(4, mAttempts.get());
+    }
+  }
+
+  @Test
+  public void testPermanentFailureIsNotRetried() throws Exception {
+    try {
+      new RetryPolicy(3, 1L, 2L).run(
+          new SystemStreamLog(), "invalid", false, new RetryPolicy.Attempt<Void>() {
+            @Override
+            public Void call(int attempt) {
+              mAttempts.incrementAndGet();
+              throw new IllegalStateException("invalid");
+            }
+          });
+      fail("The failure should be rethrown.");
+    } catch (IllegalStateException ise) {
+      assertEquals(1, mAttempts.get());
+    }
+  }
+
+  @Test
+  public void testDelayIsJitteredAndCapped() {
+    final RetryPolicy policy = new RetryPolicy(5, 100L, 300L);
+    for (int i = 0; i < 20; i++) {
+      final long first = policy.getDelayMs(1);
+      assertTrue(first >= 50L && first <= 100L);
+      final long capped = policy.getDelayMs(4);
+      assertTrue(capped >= 150L && capped <= 300L);
+    }
+  }
+}
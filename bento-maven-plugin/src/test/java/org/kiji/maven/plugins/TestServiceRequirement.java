@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+/**
+ * Tests parsing the required services of a cluster and tracking their states across probes.
+ */
+public class TestServiceRequirement {
+  /**
+   * Build the states of supervisor processes.
+   *
+   * @param namesAndStates alternating process names and states.
+   * @return the process states.
+   */
+  private static List<SupervisorClient.ProcessInfo> processes(String... namesAndStates) {
+    final ImmutableList.Builder<SupervisorClient.ProcessInfo> processes = ImmutableList.builder();
+    for (int i = 0; i < namesAndStates.length; i += 2) {
+      processes.add(
+          new SupervisorClient.ProcessInfo(namesAndStates[i], namesAndStates[i + 1], 0, ""));
+    }
+    return processes.build();
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals("hbase-master:RUNNING", ServiceRequirement.parse(" hbase-master ").toString());
+    assertEquals("hdfs-init:EXITED", ServiceRequirement.parse("hdfs-init : exited").toString());
+    assertEquals(ServiceRequirement.DEFAULT_REQUIREMENTS, ServiceRequirement.parseAll(null));
+    assertEquals(2, ServiceRequirement.parseAll(ImmutableList.of("a", "b:EXITED")).size());
+  }
+
+  @Test
+  public void testParseUnderTurkishLocale() {
+    final Locale locale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      assertEquals("EXITED", ServiceRequirement.parse("hdfs-init:exited").getExpectedState());
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParseInvalid() {
+    ServiceRequirement.parse(":RUNNING");
+  }
+
+  @Test
+  public void testTrackerReady() {
+    final ServiceReadinessTracker tracker = new ServiceReadinessTracker(
+        ServiceRequirement.parseAll(ImmutableList.of("hdfs-init:EXITED", "hbase-master")));
+    assertFalse(tracker.update(processes("hdfs-init", "RUNNING", "hbase-master", "STARTING")));
+    assertNull(tracker.getFailure());
+    assertFalse(tracker.update(processes("hdfs-init", "EXITED", "hbase-master", "STARTING")));
+    assertEquals(ImmutableList.of("hdfs-init"),
+        ImmutableList.copyOf(tracker.getReadyTimes().keySet()));
+    assertTrue(tracker.update(processes("hdfs-init", "EXITED", "hbase-master", "RUNNING")));
+    assertEquals(2, tracker.getReadyTimes().size());
+  }
+
+  @Test
+  public void testTrackerFatal() {
+    final ServiceReadinessTracker tracker =
+        new ServiceReadinessTracker(ServiceRequirement.parseAll(ImmutableList.of("hbase-master")));
+    assertFalse(tracker.update(processes("hbase-master", "FATAL")));
+    assertNotNull(tracker.getFailure());
+    assertTrue(tracker.formatStatusTable().contains("FATAL"));
+  }
+
+  @Test
+  public void testTrackerBackoffs() {
+    final ServiceReadinessTracker tracker =
+        new ServiceReadinessTracker(ServiceRequirement.parseAll(ImmutableList.of("hbase-master")));
+    for (int i = 0; i < 2; i++) {
+      tracker.update(processes("hbase-master", "BACKOFF"));
+      // Staying in BACKOFF across probes counts once.
+      tracker.update(processes("hbase-master", "BACKOFF"));
+      assertNull(tracker.getFailure());
+      tracker.update(processes("hbase-master", "STARTING"));
+    }
+    tracker.update(processes("hbase-master", "BACKOFF"));
+    assertNotNull(tracker.getFailure());
+  }
+
+  @Test
+  public void testTrackerFailureIsNotSticky() {
+    final ServiceReadinessTracker tracker =
+        new ServiceReadinessTracker(ServiceRequirement.parseAll(ImmutableList.of("hbase-master")));
+    assertFalse(tracker.update(processes("hdfs-init", "RUNNING")));
+    assertNotNull(tracker.getFailure());
+    assertTrue(tracker.update(processes("hbase-master", "RUNNING")));
+    assertNull(tracker.getFailure());
+  }
+}
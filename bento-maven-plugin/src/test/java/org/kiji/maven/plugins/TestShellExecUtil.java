@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+/**
+ * Tests running shell commands within a deadline.
+ */
+public class TestShellExecUtil {
+  @Test
+  public void testCommandWithinDeadline() throws Exception {
+    final ShellResult result = ShellExecUtil.execute("echo hello", null, 10000L);
+    assertTrue(result.isSuccess());
+    assertEquals("hello\n", result.getStdOut());
+  }
+
+  @Test
+  public void testTimeoutKillsProcessTree() throws Exception {
+    final long startMs = System.currentTimeMillis();
+    final String childPid;
+    try {
+      ShellExecUtil.execute(
+          ImmutableList.of("sh", "-c", "sleep 30 & echo $!; wait"), null, null, null, 500L);
+      fail("The command should time out.");
+      return;
+    } catch (ShellExecUtil.CommandTimeoutException cte) {
+      childPid = cte.getStdOut().trim();
+    }
+    assertTrue(System.currentTimeMillis() - startMs < 10000L);
+    assertFalse(childPid.isEmpty());
+
+    // The orphaned child may linger as a zombie until it is reaped, but must not be running.
+    final String state = ShellExecUtil.execute(
+        ImmutableList.of("ps", "-o", "stat=", "-p", childPid), null).getStdOut().trim();
+    assertTrue(state, state.isEmpty() || state.startsWith("Z"));
+  }
+
+  @Test
+  public void testTimeoutWithEscapedWriter() throws Exception {
+    final File pidFile = File.createTempFile("writer", ".pid");
+    try {
+      // A grandchild leaving the process tree keeps writing to stdout after the kill.
+      ShellExecUtil.execute(ImmutableList.of("sh", "-c", String.format(
+          "(sh -c 'echo $$ > %s; while :; do echo line; done' &); sleep 30",
+          pidFile.getAbsolutePath())), null, null, null, 500L);
+      fail("The command should time out.");
+    } catch (ShellExecUtil.CommandTimeoutException cte) {
+      // The output is read while the writer still fills the buffer.
+      assertTrue(cte.getStdOut().startsWith("line\n"));
+    } finally {
+      ShellExecUtil.execute(ImmutableList.of("sh", "-c", String.format(
+          "kill $(cat %s)", pidFile.getAbsolutePath())), null);
+      pidFile.delete();
+    }
+  }
+
+  @Test
+  public void testOutputIsNotQueuedBehindOtherCommands() throws Exception {
+    // Enough concurrent commands to occupy more drain threads than a fixed size pool would have.
+    final ExecutorService executor = Executors.newFixedThreadPool(12);
+    try {
+      final List<Future<ShellResult>> sleepers = Lists.newArrayList();
+      for (int i = 0; i < 12; i++) {
+        sleepers.add(executor.submit(new Callable<ShellResult>() {
+          @Override
+          public ShellResult call() throws Exception {
+            return ShellExecUtil.execute("sleep 3", null);
+          }
+        }));
+      }
+      Thread.sleep(200L);
+
+      // Writes more than a pipe buffer, so it blocks unless its output is drained right away.
+      final long startMs = System.currentTimeMillis();
+      final ShellResult chatty = ShellExecUtil.execute("seq 1 100000", null);
+      assertTrue(chatty.isSuccess());
+      assertTrue(System.currentTimeMillis() - startMs < 2000L);
+      for (Future<ShellResult> sleeper : sleepers) {
+        assertTrue(sleeper.get().isSuccess());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
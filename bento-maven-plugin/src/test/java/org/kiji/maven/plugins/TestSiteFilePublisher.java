@@ -0,0 +1,78 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests publishing site files along with their conf index and checksum manifest.
+ */
+public class TestSiteFilePublisher {
+  private File mDir;
+
+  @Before
+  public void setUp() {
+    mDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  @Test
+  public void testIndexListsOnlyPaths() throws Exception {
+    final Map<String, byte[]> siteFiles = ImmutableMap.of(
+        "hbase-site.xml", "<configuration/>".getBytes(Charsets.UTF_8),
+        "core-site.xml", "<configuration></configuration>".getBytes(Charsets.UTF_8));
+    final SiteFilePublisher publisher =
+        new SiteFilePublisher(new SystemStreamLog(), new File(mDir, "bento"), mDir);
+    // Publishing twice must not duplicate the index entries.
+    publisher.publishAll(siteFiles);
+    publisher.publishAll(siteFiles);
+
+    assertEquals(
+        ImmutableList.of(
+            new File(mDir, "hbase-site.xml").getAbsolutePath(),
+            new File(mDir, "core-site.xml").getAbsolutePath()),
+        Files.readLines(
+            new File(mDir, SiteFilePublisher.CONF_INDEX_FILE_NAME), Charsets.UTF_8));
+    assertEquals(
+        ImmutableList.of(
+            Hashing.sha1().hashBytes(siteFiles.get("hbase-site.xml")) + "  hbase-site.xml",
+            Hashing.sha1().hashBytes(siteFiles.get("core-site.xml")) + "  core-site.xml"),
+        Files.readLines(
+            new File(mDir, SiteFilePublisher.CHECKSUMS_FILE_NAME), Charsets.UTF_8));
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+/**
+ * Tests merging tuning profiles and overrides into site files.
+ */
+public class TestSiteFileTuning {
+  private static final String HBASE_SITE =
+      "<?xml version=\"1.0\"?>\n"
+      + "<configuration>\n"
+      + "  <property><name>hbase.zookeeper.quorum</name><value>bento-1</value></property>\n"
+      + "  <property><name>hbase.client.retries.number</name><value>35</value></property>\n"
+      + "</configuration>\n";
+
+  private static boolean hasProperty(String siteFile, String name, String value) {
+    return siteFile.matches(
+        "(?s).*<name>" + name + "</name>\\s*<value>" + value + "</value>.*");
+  }
+
+  @Test
+  public void testSiteFileFor() {
+    assertEquals("hbase-site.xml", SiteFileTuning.siteFileFor("hbase.client.pause"));
+    assertEquals("hbase-site.xml", SiteFileTuning.siteFileFor("zookeeper.recovery.retry"));
+    assertEquals("mapred-site.xml", SiteFileTuning.siteFileFor("mapreduce.map.memory.mb"));
+    assertEquals(
+        "mapred-site.xml", SiteFileTuning.siteFileFor("yarn.app.mapreduce.am.resource.mb"));
+    assertEquals("yarn-site.xml", SiteFileTuning.siteFileFor("yarn.resourcemanager.address"));
+    assertEquals("core-site.xml", SiteFileTuning.siteFileFor("dfs.replication"));
+  }
+
+  @Test
+  public void testApply() throws Exception {
+    final SiteFileTuning tuning = SiteFileTuning.create(
+        Arrays.asList("fast-test"),
+        Arrays.asList("hbase.client.pause=75", "hbase.custom=a=b"));
+    final String tuned = new String(
+        tuning.apply("hbase-site.xml", HBASE_SITE.getBytes(Charsets.UTF_8)), Charsets.UTF_8);
+    assertTrue(tuned.contains("<value>bento-1</value>"));
+    assertTrue(hasProperty(tuned, "hbase.client.retries.number", "3"));
+    assertTrue(hasProperty(tuned, "hbase.client.pause", "75"));
+    assertTrue(tuned.contains("<value>a=b</value>"));
+  }
+
+  @Test
+  public void testUntouchedSiteFile() throws Exception {
+    final byte[] content = HBASE_SITE.getBytes(Charsets.UTF_8);
+    final SiteFileTuning tuning =
+        SiteFileTuning.create(null, Collections.singletonList("dfs.replication=1"));
+    assertSame(content, tuning.apply("hbase-site.xml", content));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownProfile() throws Exception {
+    SiteFileTuning.create(Arrays.asList("no-such-profile"), null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedOverride() throws Exception {
+    SiteFileTuning.create(null, Arrays.asList("hbase.client.pause"));
+  }
+}
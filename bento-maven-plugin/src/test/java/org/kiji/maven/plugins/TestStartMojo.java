@@ -0,0 +1,170 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.File;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the 'start' goal against a fake bento script.
+ */
+public class TestStartMojo {
+  private static final String CLUSTER_ID = "org.kiji:test-start";
+
+  private File mDir;
+  private File mBentoDir;
+
+  @Before
+  public void setUp() throws Exception {
+    mDir = Files.createTempDir();
+    mBentoDir = new File(mDir, "bento");
+    final File script = new File(mBentoDir, "bin/bento");
+    Files.createParentDirs(script);
+    // Records each command; the container never starts because 'create' fails.
+    Files.write("#!/bin/sh\n"
+        + "echo \"$1\" >> \"$(dirname \"$0\")/../commands.log\"\n"
+        + "case \"$1\" in\n"
+        + "  status) echo \"bento-$3 stopped\" ;;\n"
+        + "  create) exit 1 ;;\n"
+        + "esac\n",
+        script, Charsets.UTF_8);
+    script.setExecutable(true);
+  }
+
+  @After
+  public void tearDown() {
+    BentoClusterRegistry.removeWithForks(CLUSTER_ID);
+    FileUtils.deleteQuietly(mDir);
+  }
+
+  /**
+   * Set a field of a mojo, as maven does when it injects a parameter.
+   *
+   * @param mojo to configure.
+   * @param name of the field.
+   * @param value to inject.
+   */
+  static void setField(Object mojo, String name, Object value) throws Exception {
+    for (Class<?> type = mojo.getClass(); null != type; type = type.getSuperclass()) {
+      try {
+        final Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+        return;
+      } catch (NoSuchFieldException nsfe) {
+        // Declared by a superclass.
+      }
+    }
+    throw new NoSuchFieldException(name);
+  }
+
+  /**
+   * Configure the parameters shared by the goals starting or awaiting a cluster with their
+   * defaults, as maven does.
+   *
+   * @param mojo to configure.
+   * @param dir holding the files of the test.
+   * @param bentoDir the fake bento-cluster directory.
+   * @param clusterId of the cluster.
+   */
+  static void setClusterFields(AbstractClusterMojo mojo, File dir, File bentoDir, String clusterId)
+      throws Exception {
+    setField(mojo, "mBentoDirPath", bentoDir);
+    setField(mojo, "mClusterId", clusterId);
+    setField(mojo, "mPendingTeardownsDirPath", new File(dir, "pending-teardowns"));
+    setField(mojo, "mTeardownStaleSeconds", 600L);
+    setField(mojo, "mCommandTimeoutSeconds", 60L);
+    setField(mojo, "mProbeTimeoutSeconds", 30L);
+    setField(mojo, "mStartupTimeoutSeconds", 5L);
+    setField(mojo, "mStartupTimeoutFactor", 2.0);
+    setField(mojo, "mMaxStartupTimeoutSeconds", 600L);
+    setField(mojo, "mBootStatsFilePath", new File(dir, "boot-durations.txt"));
+    setField(mojo, "mWatchdogIntervalSeconds", 5L);
+    setField(mojo, "mSamplerIntervalSeconds", 10L);
+  }
+
+  /** @return a 'start' goal configured with the defaults of its parameters. */
+  private StartMojo createMojo() throws Exception {
+    final MavenProject project = new MavenProject();
+    project.setGroupId("org.kiji");
+    project.setArtifactId("test-start");
+    final Build build = new Build();
+    build.setDirectory(new File(mDir, "target").getAbsolutePath());
+    build.setOutputDirectory(new File(mDir, "target/classes").getAbsolutePath());
+    build.setTestOutputDirectory(new File(mDir, "target/test-classes").getAbsolutePath());
+    project.setBuild(build);
+
+    final StartMojo mojo = new StartMojo();
+    setClusterFields(mojo, mDir, mBentoDir, CLUSTER_ID);
+    setField(mojo, "mProject", project);
+    setField(mojo, "mBackend", "docker");
+    setField(mojo, "mSiteFilesOutputDirPath", new File(mDir, "target/test-classes"));
+    setField(mojo, "mPoolDirPath", new File(mDir, "pool"));
+    setField(mojo, "mStateFilePath", new File(mDir, "state.properties"));
+    setField(mojo, "mClusterCount", 1);
+    setField(mojo, "mReportDirPath", new File(mDir, "target/bento"));
+    setField(mojo, "mTimingHistoryFilePath", new File(mDir, "timing-history.jsonl"));
+    setField(mojo, "mGreenRecordFilePath", new File(mDir, "test-start.green"));
+    return mojo;
+  }
+
+  @Test
+  public void testFailedCreateRemovesContainer() throws Exception {
+    final StartMojo mojo = createMojo();
+    setField(mojo, "mCommandRetries", 0);
+    try {
+      mojo.execute();
+      fail("The start should fail.");
+    } catch (MojoExecutionException mee) {
+      // Expected: the fake bento script can not create the container.
+    }
+    assertNull(BentoClusterRegistry.get(CLUSTER_ID));
+    assertEquals("status\ncreate\nstop\nrm\n",
+        Files.toString(new File(mBentoDir, "commands.log"), Charsets.UTF_8));
+  }
+
+  @Test
+  public void testFailedCreateIsRetried() throws Exception {
+    final StartMojo mojo = createMojo();
+    setField(mojo, "mCommandRetries", 1);
+    try {
+      mojo.execute();
+      fail("The start should fail.");
+    } catch (MojoExecutionException mee) {
+      // Expected: the fake bento script can not create the container.
+    }
+    assertEquals("status\ncreate\nrm\ncreate\nstop\nrm\n",
+        Files.toString(new File(mBentoDir, "commands.log"), Charsets.UTF_8));
+  }
+}
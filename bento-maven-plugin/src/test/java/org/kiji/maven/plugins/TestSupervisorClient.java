@@ -0,0 +1,144 @@
+/**
+ * (c) Copyright 2014 WibiData, Inc.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kiji.maven.plugins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the supervisor XML-RPC client against a stub HTTP server.
+ */
+public class TestSupervisorClient {
+  private static final String HDFS_INIT_INFO =
+      "<struct>"
+      + "<member><name>name</name><value><string>hdfs-init</string></value></member>"
+      + "<member><name>group</name><value><string>hdfs-init</string></value></member>"
+      + "<member><name>statename</name><value><string>EXITED</string></value></member>"
+      + "<member><name>state</name><value><int>100</int></value></member>"
+      + "<member><name>exitstatus</name><value><int>0</int></value></member>"
+      + "<member><name>description</name><value><string>Oct 17 10:00 AM</string></value></member>"
+      + "</struct>";
+
+  private static final String ZOOKEEPER_INFO =
+      "<struct>"
+      + "<member><name>name</name><value>zookeeper</value></member>"
+      + "<member><name>statename</name><value><string>RUNNING</string></value></member>"
+      + "<member><name>exitstatus</name><value><i4>0</i4></value></member>"
+      + "<member><name>description</name><value><string>pid 42</string></value></member>"
+      + "</struct>";
+
+  private HttpServer mServer;
+  private SupervisorClient mClient;
+  private final AtomicReference<String> mResponse = new AtomicReference<String>();
+  private final AtomicReference<String> mLastRequest = new AtomicReference<String>();
+
+  @Before
+  public void setUp() throws Exception {
+    mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    mServer.createContext("/RPC2", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        mLastRequest.set(
+            new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8));
+        final byte[] body = mResponse.get().getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    mServer.start();
+    mClient = new SupervisorClient(
+        new URL(String.format("http://localhost:%d/RPC2", mServer.getAddress().getPort())));
+  }
+
+  @After
+  public void tearDown() {
+    mServer.stop(0);
+  }
+
+  private static String response(String value) {
+    return "<?xml version='1.0'?><methodResponse><params><param><value>"
+        + value
+        + "</value></param></params></methodResponse>";
+  }
+
+  @Test
+  public void testGetProcessInfo() throws Exception {
+    mResponse.set(response(HDFS_INIT_INFO));
+    final SupervisorClient.ProcessInfo info = mClient.getProcessInfo("hdfs-init");
+    assertEquals("hdfs-init", info.getName());
+    assertEquals("EXITED", info.getStateName());
+    assertEquals(0, info.getExitStatus());
+    assertTrue(mLastRequest.get().contains("<methodName>supervisor.getProcessInfo</methodName>"));
+    assertTrue(mLastRequest.get().contains("<string>hdfs-init</string>"));
+  }
+
+  @Test
+  public void testGetAllProcessInfo() throws Exception {
+    mResponse.set(response(
+        "<array><data><value>" + HDFS_INIT_INFO + "</value><value>" + ZOOKEEPER_INFO
+        + "</value></data></array>"));
+    final List<SupervisorClient.ProcessInfo> infos = mClient.getAllProcessInfo();
+    assertEquals(2, infos.size());
+    assertEquals("zookeeper", infos.get(1).getName());
+    assertEquals("RUNNING", infos.get(1).getStateName());
+  }
+
+  @Test
+  public void testRepeatedCalls() throws Exception {
+    mResponse.set(response(HDFS_INIT_INFO));
+    for (int i = 0; i < 20; i++) {
+      assertEquals("EXITED", mClient.getProcessInfo("hdfs-init").getStateName());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testFault() throws Exception {
+    mResponse.set("<?xml version='1.0'?><methodResponse><fault><value><struct>"
+        + "<member><name>faultCode</name><value><int>10</int></value></member>"
+        + "<member><name>faultString</name><value><string>BAD_NAME: nope</string></value></member>"
+        + "</struct></value></fault></methodResponse>");
+    mClient.getProcessInfo("nope");
+  }
+
+  @Test(expected = IOException.class)
+  public void testUnreachable() throws Exception {
+    mServer.stop(0);
+    mClient.getProcessInfo("hdfs-init");
+  }
+}